@@ -0,0 +1,98 @@
+package com.example.android.myinventoryapp;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Checks that bitmaps the {@link ImageLoader} decodes can go to the {@link BitmapPool}, and
+ * that the pool hands them back out for a decode of the same size.
+ */
+public class BitmapPoolTest extends AndroidTestCase {
+
+    private File mImage;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mImage = new File(getContext().getCacheDir(), "bitmap_pool_test.png");
+        Bitmap bitmap = Bitmap.createBitmap(120, 90, Bitmap.Config.ARGB_8888);
+        OutputStream output = new FileOutputStream(mImage);
+        try {
+            assertTrue(bitmap.compress(Bitmap.CompressFormat.PNG, 100, output));
+        } finally {
+            output.close();
+            bitmap.recycle();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mImage.delete();
+        super.tearDown();
+    }
+
+    public void testRecycledBitmapIsHandedBackOut() {
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        Bitmap bitmap = Bitmap.createBitmap(120, 90, Bitmap.Config.ARGB_8888);
+        pool.put(bitmap);
+        assertNull(pool.get(90, 120, Bitmap.Config.ARGB_8888));
+        assertNull(pool.get(120, 90, Bitmap.Config.RGB_565));
+        assertSame(bitmap, pool.get(120, 90, Bitmap.Config.ARGB_8888));
+        assertNull(pool.get(120, 90, Bitmap.Config.ARGB_8888));
+    }
+
+    public void testImmutableBitmapIsNotKept() {
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        Bitmap bitmap = BitmapFactory.decodeFile(mImage.getPath());
+        assertFalse(bitmap.isMutable());
+        pool.put(bitmap);
+        assertNull(pool.get(120, 90, Bitmap.Config.ARGB_8888));
+    }
+
+    public void testDecodedBitmapIsReusedByNextDecode() throws IOException {
+        ImageLoader loader = ImageLoader.getInstance(getContext());
+        // Decoded as the loader decodes an image it has no thumbnail of yet.
+        Bitmap decoded = loader.decodeSampled(Uri.fromFile(mImage), 120, 90);
+        assertTrue(decoded.isMutable());
+        assertSame(decoded, ImageLoader.scaleToCover(decoded, 120, 90));
+        Bitmap scaled = ImageLoader.scaleToCover(decoded, 60, 45);
+        assertTrue(scaled.isMutable());
+
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        pool.put(scaled);
+        // As decodeThumbnail reads a thumbnail of the same size back from disk.
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = true;
+        options.inBitmap = pool.get(60, 45, Bitmap.Config.ARGB_8888);
+        assertSame(scaled, options.inBitmap);
+        File thumbnail = new File(getContext().getCacheDir(), "bitmap_pool_test_thumbnail.png");
+        try {
+            OutputStream output = new FileOutputStream(thumbnail);
+            try {
+                assertTrue(scaled.compress(Bitmap.CompressFormat.PNG, 100, output));
+            } finally {
+                output.close();
+            }
+            assertSame(scaled, BitmapFactory.decodeFile(thumbnail.getPath(), options));
+        } finally {
+            thumbnail.delete();
+        }
+    }
+
+    public void testEvictsOldestWhenFull() {
+        Bitmap first = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        BitmapPool pool = new BitmapPool(first.getByteCount());
+        pool.put(first);
+        pool.put(second);
+        assertSame(second, pool.get(100, 100, Bitmap.Config.ARGB_8888));
+        assertNull(pool.get(100, 100, Bitmap.Config.ARGB_8888));
+    }
+}
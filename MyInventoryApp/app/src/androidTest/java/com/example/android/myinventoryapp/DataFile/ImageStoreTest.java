@@ -0,0 +1,254 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ImageRefEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the image reference counts kept by triggers, importing into an {@link ImageStore} in
+ * a scratch directory, and which files collecting garbage deletes.
+ */
+public class ImageStoreTest extends ItemProviderTestCase {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private File mDir;
+    private ImageStore mStore;
+    // The callbacks received, e.g. "imported file:///.../<hash>", in order.
+    private final BlockingQueue<String> mEvents = new LinkedBlockingQueue<>();
+    private final ImageStore.Callback mCallback = new ImageStore.Callback() {
+        @Override
+        public void onImageImported(Uri source, Uri image) {
+            mEvents.add("imported " + image);
+        }
+
+        @Override
+        public void onImageImportFailed(Uri source) {
+            mEvents.add("failed " + source);
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDir = new File(getContext().getCacheDir(), "image_store_test");
+        deleteFiles(mDir);
+        assertTrue(mDir.mkdirs());
+        mStore = new ImageStore(getContext(), mDir);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteFiles(mDir);
+        super.tearDown();
+    }
+
+    public void testRefCountsFollowItems() {
+        long laptop = insertItem("Laptop", 45000, 10, "Acme", "file:///a");
+        insertItem("Desk", 12000, 2, "Acme", "file:///a");
+        long lamp = insertItem("Lamp", 1500, 7, "Acme", "");
+        assertEquals(2, queryRefCount("file:///a"));
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM " + ImageRefEntry.TABLE_NAME + " WHERE "
+                + ImageRefEntry.COLUMN_IMAGE + " = ''"));
+
+        setImage(laptop, "file:///b");
+        setImage(lamp, "file:///b");
+        assertEquals(1, queryRefCount("file:///a"));
+        assertEquals(2, queryRefCount("file:///b"));
+
+        // Price alone doesn't touch the counts.
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_ITEM_PRICE, 40000);
+        mResolver.update(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, laptop), values, null, null);
+        mResolver.delete(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, lamp), null, null);
+        setImage(laptop, "");
+        assertEquals(1, queryRefCount("file:///a"));
+        // Kept at zero until collected, so the image isn't forgotten in the middle of an edit.
+        assertEquals(0, queryRefCount("file:///b"));
+    }
+
+    public void testImportStoresImageOnceWithVariant() throws Exception {
+        File source = new File(getContext().getCacheDir(), "image_store_source.jpg");
+        writeImage(source, 1200, 960);
+        try {
+            mStore.importImage(Uri.fromFile(source), mCallback);
+            mStore.importImage(Uri.fromFile(source), mCallback);
+            String first = nextEvent();
+            assertTrue(first, first.startsWith("imported "));
+            assertEquals(first, nextEvent());
+        } finally {
+            source.delete();
+        }
+        File[] files = mDir.listFiles();
+        assertEquals(2, files.length);
+
+        Uri image = Uri.parse(storedImage(files));
+        assertTrue(mStore.contains(image));
+        assertEquals(image, mStore.forSize(image, 1200, 960));
+        Uri variant = mStore.forSize(image, 200, 200);
+        assertEquals(image.getPath() + "_" + ImageStore.VARIANT_SIZE, variant.getPath());
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(variant.getPath(), options);
+        assertEquals(ImageStore.VARIANT_SIZE, Math.min(options.outWidth, options.outHeight));
+        assertFalse(mStore.contains(Uri.fromFile(source)));
+    }
+
+    public void testFailedVariantKeepsImage() throws Exception {
+        File source = new File(getContext().getCacheDir(), "image_store_source.jpg");
+        writeImage(source, 1200, 960);
+        // A directory where the variant goes makes writing it fail.
+        File blocked = new File(mDir, sha256(source) + "_" + ImageStore.VARIANT_SIZE);
+        assertTrue(blocked.mkdir());
+        Uri image;
+        try {
+            mStore.importImage(Uri.fromFile(source), mCallback);
+            String event = nextEvent();
+            assertTrue(event, event.startsWith("imported "));
+            image = Uri.parse(event.substring("imported ".length()));
+        } finally {
+            source.delete();
+        }
+        assertTrue(new File(image.getPath()).isFile());
+        assertEquals(image, mStore.forSize(image, 200, 200));
+        assertTrue(blocked.delete());
+    }
+
+    public void testImportOfNonImageFails() throws Exception {
+        File source = new File(getContext().getCacheDir(), "image_store_source.txt");
+        OutputStream output = new FileOutputStream(source);
+        try {
+            output.write("not an image".getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+        try {
+            mStore.importImage(Uri.fromFile(source), mCallback);
+            assertEquals("failed " + Uri.fromFile(source), nextEvent());
+        } finally {
+            source.delete();
+        }
+        assertEquals(0, mDir.listFiles().length);
+    }
+
+    public void testCollectGarbageDeletesUnusedOldFiles() throws IOException {
+        long old = System.currentTimeMillis() - 2 * ImageStore.GRACE_PERIOD_MS;
+        File used = createFile("aaaa", old);
+        File usedVariant = createFile("aaaa_" + ImageStore.VARIANT_SIZE, old);
+        createFile("bbbb", old);
+        createFile("bbbb_" + ImageStore.VARIANT_SIZE, old);
+        createFile("import123.tmp", old);
+        File recent = createFile("cccc", System.currentTimeMillis());
+        insertItem("Laptop", 45000, 10, "Acme", Uri.fromFile(used).toString());
+        long desk = insertItem("Desk", 12000, 2, "Acme", Uri.fromFile(new File(mDir, "bbbb")).toString());
+        setImage(desk, "");
+
+        assertEquals(3, mStore.collectGarbage(mDbHelper.getWritableDatabase(), System.currentTimeMillis()));
+        String[] names = mDir.list();
+        Arrays.sort(names);
+        assertEquals(Arrays.asList(used.getName(), usedVariant.getName(), recent.getName()), Arrays.asList(names));
+        // The count that dropped to zero is forgotten, the one in use is kept.
+        assertEquals(1, queryLong("SELECT COUNT(*) FROM " + ImageRefEntry.TABLE_NAME));
+        assertEquals(1, queryRefCount(Uri.fromFile(used).toString()));
+    }
+
+    private long insertItem(String name, long price, int quantity, String supplier, String image) {
+        ContentValues values = itemValues(name, price, quantity, supplier);
+        values.put(ItemEntry.COLUMN_ITEM_IMAGE, image);
+        return ContentUris.parseId(mResolver.insert(ItemEntry.CONTENT_URI, values));
+    }
+
+    private void setImage(long id, String image) {
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_ITEM_IMAGE, image);
+        assertEquals(1, mResolver.update(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, id), values, null, null));
+    }
+
+    private long queryRefCount(String image) {
+        return queryLong("SELECT " + ImageRefEntry.COLUMN_REF_COUNT + " FROM " + ImageRefEntry.TABLE_NAME
+                + " WHERE " + ImageRefEntry.COLUMN_IMAGE + " = ?", image);
+    }
+
+    private File createFile(String name, long lastModified) throws IOException {
+        File file = new File(mDir, name);
+        assertTrue(file.createNewFile());
+        assertTrue(file.setLastModified(lastModified));
+        return file;
+    }
+
+    /**
+     * The URI of the stored image among the files of the store, i.e. the one that isn't a variant.
+     */
+    private static String storedImage(File[] files) {
+        for (File file : files) {
+            if (!file.getName().endsWith("_" + ImageStore.VARIANT_SIZE))
+                return Uri.fromFile(file).toString();
+        }
+        throw new AssertionError("No stored image in " + Arrays.toString(files));
+    }
+
+    private static void writeImage(File file, int width, int height) throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        try {
+            OutputStream output = new FileOutputStream(file);
+            try {
+                assertTrue(bitmap.compress(Bitmap.CompressFormat.JPEG, 90, output));
+            } finally {
+                output.close();
+            }
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    private static String sha256(File file) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        InputStream input = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1)
+                digest.update(buffer, 0, read);
+        } finally {
+            input.close();
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+            hex.append(String.format(Locale.US, "%02x", b));
+        return hex.toString();
+    }
+
+    private static void deleteFiles(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        dir.delete();
+    }
+
+    private String nextEvent() throws InterruptedException {
+        String event = mEvents.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull("No callback within " + TIMEOUT_SECONDS + " s", event);
+        return event;
+    }
+}
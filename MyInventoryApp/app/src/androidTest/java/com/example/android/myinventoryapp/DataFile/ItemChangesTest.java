@@ -0,0 +1,118 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemChangeEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.SupplierEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Syncs from the change log the way a client would, passing back the highest sequence seen,
+ * and checks that each write shows up once, as the item's latest state.
+ */
+public class ItemChangesTest extends ItemProviderTestCase {
+
+    private long mLaptopId;
+    private long mDeskId;
+    // The highest sequence of the last sync.
+    private long mToken;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mLaptopId = insertItem("Laptop", 45000, 10, "Acme");
+        mDeskId = insertItem("Desk", 12000, 2, "Acme");
+        insertItem("Lamp", 1500, 7, "Lapland Traders");
+    }
+
+    public void testFirstSyncReturnsEveryItem() {
+        assertEquals(Arrays.asList("Laptop 10 Acme", "Desk 2 Acme", "Lamp 7 Lapland Traders"), sync(0, 0));
+        assertTrue(sync(mToken, 0).isEmpty());
+    }
+
+    public void testSyncReturnsLatestChangeOnce() {
+        sync(0, 0);
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.ADJUST_DELTA, -1);
+        mResolver.update(ItemEntry.buildAdjustUri(mLaptopId), values, null, null);
+        mResolver.update(ItemEntry.buildAdjustUri(mDeskId), values, null, null);
+        mResolver.update(ItemEntry.buildAdjustUri(mLaptopId), values, null, null);
+        mResolver.delete(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, mDeskId), null, null);
+
+        assertEquals(Arrays.asList("Laptop 8 Acme", "deleted " + mDeskId), sync(mToken, 0));
+        assertTrue(sync(mToken, 0).isEmpty());
+        // A client that never synced still gets one row per item, the tombstone included.
+        assertEquals(Arrays.asList("Lamp 7 Lapland Traders", "Laptop 8 Acme", "deleted " + mDeskId), sync(0, 0));
+    }
+
+    public void testLimitPagesThroughChanges() {
+        assertEquals(Arrays.asList("Laptop 10 Acme", "Desk 2 Acme"), sync(0, 2));
+        assertEquals(Arrays.asList("Lamp 7 Lapland Traders"), sync(mToken, 2));
+        assertTrue(sync(mToken, 2).isEmpty());
+    }
+
+    public void testSupplierChangeChangesItsItems() {
+        sync(0, 0);
+        long acme = queryLong("SELECT " + ItemEntry.COLUMN_SUPPLIER_ID + " FROM " + ItemEntry.TABLE_NAME
+                + " WHERE " + ItemEntry._ID + " = ?", String.valueOf(mLaptopId));
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_EMAIL, "orders@acme.example.com");
+        assertEquals(1, mResolver.update(ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, acme), values,
+                null, null));
+
+        Cursor cursor = mResolver.query(ItemChangeEntry.buildChangesUri(mToken, 0),
+                new String[]{ItemEntry._ID, ItemEntry.COLUMN_SUPPLIER_EMAIL}, null, null, null);
+        try {
+            assertEquals(2, cursor.getCount());
+            while (cursor.moveToNext()) {
+                assertTrue(cursor.getLong(0) == mLaptopId || cursor.getLong(0) == mDeskId);
+                assertEquals("orders@acme.example.com", cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testNegativeTokenRejected() {
+        try {
+            mResolver.query(ItemChangeEntry.buildChangesUri(-1, 0), null, null, null, null);
+            fail("Negative since token accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * The changes after the token as "name quantity supplier", or "deleted id" for tombstones,
+     * and remembers the highest sequence in {@link #mToken}.
+     */
+    private List<String> sync(long since, int limit) {
+        Uri uri = ItemChangeEntry.buildChangesUri(since, limit);
+        Cursor cursor = mResolver.query(uri, new String[]{ItemChangeEntry.COLUMN_SEQUENCE,
+                ItemChangeEntry.COLUMN_DELETED, ItemEntry._ID, ItemEntry.COLUMN_ITEM_NAME,
+                ItemEntry.COLUMN_ITEM_QUANTITY, ItemEntry.COLUMN_ITEM_SUPPLIER}, null, null, null);
+        List<String> changes = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                long sequence = cursor.getLong(0);
+                assertTrue("Sequence " + sequence + " not after " + since, sequence > since);
+                mToken = Math.max(mToken, sequence);
+                if (cursor.getInt(1) != 0) {
+                    assertTrue(cursor.isNull(3));
+                    changes.add("deleted " + cursor.getLong(2));
+                } else {
+                    changes.add(cursor.getString(3) + " " + cursor.getInt(4) + " " + cursor.getString(5));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return changes;
+    }
+}
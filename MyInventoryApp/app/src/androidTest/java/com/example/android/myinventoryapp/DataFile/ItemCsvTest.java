@@ -0,0 +1,106 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exports items with {@link ItemCsv} and imports them back with {@link ItemCsvImporter}, and
+ * checks how the importer deals with rows it has to skip.
+ */
+public class ItemCsvTest extends ItemProviderTestCase {
+
+    private static final String HEADER = "name,price,quantity,supplier,email\r\n";
+
+    private final List<Integer> mErrorLines = new ArrayList<>();
+    private final ItemCsvImporter.Listener mListener = new ItemCsvImporter.Listener() {
+        @Override
+        public void onProgress(int rowsRead, int rowsImported) {
+        }
+
+        @Override
+        public void onRowError(int lineNumber, String message) {
+            mErrorLines.add(lineNumber);
+        }
+    };
+
+    public void testRoundTripKeepsValues() throws IOException {
+        ContentValues desk = itemValues("Desk, \"oak\"", 12050, 2, "Lapland Traders");
+        desk.put(ItemEntry.COLUMN_ITEM_IMAGE, "file:///images/desk.jpg");
+        desk.put(ItemEntry.COLUMN_REORDER_THRESHOLD, 4);
+        mResolver.insert(ItemEntry.CONTENT_URI, desk);
+        insertItem("Two\nlines", 5, 0, "Acme");
+        insertItem("Laptop", 4500000, 10, "Acme");
+        List<String> before = readItems();
+
+        StringWriter writer = new StringWriter();
+        assertEquals(3, ItemCsv.export(mResolver, writer));
+        assertEquals(3, mResolver.delete(ItemEntry.CONTENT_URI, null, null));
+
+        ItemCsvImporter.Result result = importCsv(writer.toString());
+        assertEquals(3, result.rowsRead);
+        assertEquals(3, result.rowsImported);
+        assertTrue(mErrorLines.isEmpty());
+        assertEquals(before, readItems());
+    }
+
+    public void testSkipsRowsWithBadValues() throws IOException {
+        ItemCsvImporter.Result result = importCsv(HEADER
+                + "Laptop,45000.00,10,Acme,acme@example.com\r\n"
+                + "Desk,abc,2,Acme,acme@example.com\r\n"
+                + "Lamp,-1.50,7,Acme,acme@example.com\r\n"
+                + "Chair,,5,Acme,acme@example.com\r\n"
+                + "Stool,\"1,250.5\",3,Acme,acme@example.com\r\n"
+                + "Shelf,20,-1,Acme,acme@example.com\r\n"
+                + ",20,1,Acme,acme@example.com\r\n");
+        assertEquals(7, result.rowsRead);
+        assertEquals(2, result.rowsImported);
+        assertEquals(Arrays.asList(3, 4, 5, 7, 8), mErrorLines);
+        assertEquals(Arrays.asList("Laptop|4500000|10|Acme|acme@example.com|",
+                "Stool|125050|3|Acme|acme@example.com|"), readItems());
+    }
+
+    public void testMissingColumnFailsImport() {
+        try {
+            importCsv("name,price,quantity,supplier\r\nLaptop,1,1,Acme\r\n");
+            fail("Import without an email column succeeded");
+        } catch (IOException expected) {
+        }
+    }
+
+    private ItemCsvImporter.Result importCsv(String csv) throws IOException {
+        return new ItemCsvImporter(mDbHelper, mResolver).importFrom(new StringReader(csv), mListener);
+    }
+
+    /**
+     * Every item as "name|price|quantity|supplier|email|image", in _id order.
+     */
+    private List<String> readItems() {
+        Cursor cursor = mResolver.query(ItemEntry.CONTENT_URI, new String[]{ItemEntry.COLUMN_ITEM_NAME,
+                        ItemEntry.COLUMN_ITEM_PRICE, ItemEntry.COLUMN_ITEM_QUANTITY, ItemEntry.COLUMN_ITEM_SUPPLIER,
+                        ItemEntry.COLUMN_SUPPLIER_EMAIL, ItemEntry.COLUMN_ITEM_IMAGE, ItemEntry.COLUMN_REORDER_THRESHOLD},
+                null, null, ItemEntry._ID);
+        List<String> items = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                StringBuilder item = new StringBuilder(cursor.getString(0));
+                for (int i = 1; i < 6; i++)
+                    item.append('|').append(cursor.getString(i));
+                if (cursor.getInt(6) != ItemEntry.DEFAULT_REORDER_THRESHOLD)
+                    item.append('|').append(cursor.getInt(6));
+                items.add(item.toString());
+            }
+        } finally {
+            cursor.close();
+        }
+        return items;
+    }
+}
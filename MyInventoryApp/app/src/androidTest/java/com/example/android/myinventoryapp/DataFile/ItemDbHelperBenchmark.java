@@ -0,0 +1,193 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.SupplierEntry;
+
+import java.util.Arrays;
+
+/**
+ * Mixed read/write load against {@link ItemDbHelper}: one thread keeps adjusting quantities
+ * while the test thread reads the full list, first with the old rollback-journal settings and
+ * then with {@link ItemDbHelper.Tuning#DEFAULT}. The throughput and latencies are only logged
+ * under LOG_TAG for comparing by hand on a device; no results have been recorded, so the
+ * default tuning is not backed by numbers from this yet. The load test only checks that both
+ * settings make progress; the other tests check that the tuning reaches the database.
+ */
+public class ItemDbHelperBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = ItemDbHelperBenchmark.class.getSimpleName();
+    private static final String DATABASE_NAME = "benchmark_inventory.db";
+    private static final int ITEM_COUNT = 5000;
+    private static final long RUN_MILLIS = 5000;
+
+    @Override
+    protected void tearDown() throws Exception {
+        getContext().deleteDatabase(DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testMixedReadWriteLoad() throws Exception {
+        Result rollback = run(new ItemDbHelper.Tuning(false, "FULL", 2048, 0));
+        Result wal = run(ItemDbHelper.Tuning.DEFAULT);
+        Log.i(LOG_TAG, "rollback journal: " + rollback);
+        Log.i(LOG_TAG, "write-ahead log:  " + wal);
+        assertTrue("no reads completed", rollback.reads > 0 && wal.reads > 0);
+        assertTrue("no writes completed", rollback.writes > 0 && wal.writes > 0);
+    }
+
+    public void testDefaultTuningEnablesWriteAheadLog() {
+        getContext().deleteDatabase(DATABASE_NAME);
+        ItemDbHelper helper = new ItemDbHelper(getContext(), DATABASE_NAME, ItemDbHelper.Tuning.DEFAULT);
+        try {
+            Cursor cursor = helper.getReadableDatabase().rawQuery("PRAGMA journal_mode", null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertEquals("wal", cursor.getString(0).toLowerCase());
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            helper.close();
+        }
+    }
+
+    public void testDefaultTuningReachesPrimaryConnection() {
+        getContext().deleteDatabase(DATABASE_NAME);
+        ItemDbHelper helper = new ItemDbHelper(getContext(), DATABASE_NAME, ItemDbHelper.Tuning.DEFAULT);
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            // Inside a transaction the PRAGMAs are read on the primary connection, where writes run.
+            db.beginTransactionNonExclusive();
+            try {
+                assertEquals(-ItemDbHelper.Tuning.DEFAULT.cacheSizeKb, queryPragma(db, "cache_size"));
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            helper.close();
+        }
+    }
+
+    public void testSynchronousRejectedWithWriteAheadLog() {
+        try {
+            new ItemDbHelper.Tuning(true, "NORMAL", 2048, 0);
+            fail("synchronous accepted with write-ahead logging");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static long queryPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Result run(ItemDbHelper.Tuning tuning) throws InterruptedException {
+        getContext().deleteDatabase(DATABASE_NAME);
+        final ItemDbHelper helper = new ItemDbHelper(getContext(), DATABASE_NAME, tuning);
+        try {
+            seed(helper.getWritableDatabase());
+            final long deadline = SystemClock.elapsedRealtime() + RUN_MILLIS;
+            final int[] writes = new int[1];
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    SQLiteDatabase db = helper.getWritableDatabase();
+                    int id = 1;
+                    while (SystemClock.elapsedRealtime() < deadline) {
+                        db.execSQL("UPDATE " + ItemEntry.TABLE_NAME + " SET "
+                                + ItemEntry.COLUMN_ITEM_QUANTITY + " = " + ItemEntry.COLUMN_ITEM_QUANTITY
+                                + " + 1 WHERE " + ItemEntry._ID + " = " + id);
+                        id = id % ITEM_COUNT + 1;
+                        writes[0]++;
+                    }
+                }
+            });
+            writer.start();
+
+            long[] latencies = new long[4096];
+            int reads = 0;
+            SQLiteDatabase db = helper.getReadableDatabase();
+            while (SystemClock.elapsedRealtime() < deadline) {
+                long start = System.nanoTime();
+                Cursor cursor = db.query(ItemEntry.TABLE_NAME, new String[]{ItemEntry._ID,
+                                ItemEntry.COLUMN_ITEM_NAME, ItemEntry.COLUMN_ITEM_PRICE, ItemEntry.COLUMN_ITEM_QUANTITY},
+                        null, null, null, null, null);
+                try {
+                    cursor.getCount();
+                } finally {
+                    cursor.close();
+                }
+                if (reads == latencies.length)
+                    latencies = Arrays.copyOf(latencies, reads * 2);
+                latencies[reads++] = System.nanoTime() - start;
+            }
+            writer.join();
+            return new Result(reads, writes[0], Arrays.copyOf(latencies, reads));
+        } finally {
+            helper.close();
+        }
+    }
+
+    private static void seed(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            long[] supplierIds = new long[20];
+            ContentValues supplier = new ContentValues();
+            for (int i = 0; i < supplierIds.length; i++) {
+                supplier.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Supplier " + i);
+                supplier.put(SupplierEntry.COLUMN_SUPPLIER_EMAIL, "supplier" + i + "@example.com");
+                supplierIds[i] = db.insertOrThrow(SupplierEntry.TABLE_NAME, null, supplier);
+            }
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < ITEM_COUNT; i++) {
+                values.put(ItemEntry.COLUMN_ITEM_NAME, "Item " + i);
+                values.put(ItemEntry.COLUMN_ITEM_PRICE, i);
+                values.put(ItemEntry.COLUMN_ITEM_QUANTITY, i % 50);
+                values.put(ItemEntry.COLUMN_ITEM_IMAGE, "");
+                values.put(ItemEntry.COLUMN_SUPPLIER_ID, supplierIds[i % supplierIds.length]);
+                db.insertOrThrow(ItemEntry.TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static class Result {
+        final int reads;
+        final int writes;
+        final long[] readLatencies;
+
+        Result(int reads, int writes, long[] readLatencies) {
+            this.reads = reads;
+            this.writes = writes;
+            this.readLatencies = readLatencies;
+            Arrays.sort(this.readLatencies);
+        }
+
+        private long percentileMicros(double percentile) {
+            if (readLatencies.length == 0)
+                return 0;
+            int index = (int) Math.min(readLatencies.length - 1, Math.round(percentile * (readLatencies.length - 1)));
+            return readLatencies[index] / 1000;
+        }
+
+        @Override
+        public String toString() {
+            return reads + " reads, " + writes + " writes in " + RUN_MILLIS + " ms; read p50 "
+                    + percentileMicros(0.5) + " us, p99 " + percentileMicros(0.99) + " us";
+        }
+    }
+}
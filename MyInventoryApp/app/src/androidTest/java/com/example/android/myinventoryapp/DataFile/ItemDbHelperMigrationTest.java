@@ -0,0 +1,155 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.test.AndroidTestCase;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+
+import java.util.Locale;
+
+/**
+ * Upgrades a populated version 1 database through {@link ItemDbHelper} and checks with
+ * EXPLAIN QUERY PLAN that the query shapes issued through ItemProvider use the new indexes.
+ */
+public class ItemDbHelperMigrationTest extends AndroidTestCase {
+
+    private static final String DATABASE_NAME = "migration_test_inventory.db";
+    private static final int ITEM_COUNT = 500;
+    private static final String[] LIST_PROJECTION = {
+            ItemEntry._ID,
+            ItemEntry.COLUMN_ITEM_NAME,
+            ItemEntry.COLUMN_ITEM_PRICE,
+            ItemEntry.COLUMN_ITEM_QUANTITY};
+
+    private ItemDbHelper mDbHelper;
+    private Locale mDefaultLocale;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // Version 1 prices use US grouping whatever the device locale; in German "1,000" is one.
+        mDefaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.GERMANY);
+        getContext().deleteDatabase(DATABASE_NAME);
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(getContext().getDatabasePath(DATABASE_NAME), null);
+        try {
+            ItemDbHelper.createVersion1(db);
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < ITEM_COUNT; i++) {
+                values.put(ItemEntry.COLUMN_ITEM_NAME, "Item " + i);
+                values.put(ItemEntry.COLUMN_ITEM_PRICE, "1,000");
+                values.put(ItemEntry.COLUMN_ITEM_QUANTITY, i % 25);
+                values.put(ItemEntry.COLUMN_ITEM_IMAGE, "");
+                values.put(ItemEntry.COLUMN_ITEM_SUPPLIER, "Supplier " + (i % 10));
+                values.put(ItemEntry.COLUMN_SUPPLIER_EMAIL, "supplier" + (i % 10) + "@example.com");
+                db.insert(ItemEntry.TABLE_NAME, null, values);
+            }
+            db.setVersion(1);
+        } finally {
+            db.close();
+        }
+        mDbHelper = new ItemDbHelper(getContext(), DATABASE_NAME, ItemDbHelper.Tuning.DEFAULT);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        getContext().deleteDatabase(DATABASE_NAME);
+        Locale.setDefault(mDefaultLocale);
+        super.tearDown();
+    }
+
+    public void testUpgradeKeepsRows() {
+        Cursor cursor = mDbHelper.getReadableDatabase().rawQuery("SELECT COUNT(*) FROM " + ItemEntry.TABLE_NAME, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(ITEM_COUNT, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testPriceMigratedToMinorUnits() {
+        Cursor cursor = mDbHelper.getReadableDatabase().query(ItemEntry.TABLE_NAME,
+                new String[]{ItemEntry.COLUMN_ITEM_PRICE}, null, null, null, null, null, "1");
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(Cursor.FIELD_TYPE_INTEGER, cursor.getType(0));
+            assertEquals(100000, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testListSortedByNameUsesNameIndex() {
+        assertUsesIndex(ItemDbHelper.INDEX_ITEMS_NAME,
+                buildQuery(null, ItemEntry.COLUMN_ITEM_NAME), null);
+    }
+
+    public void testLookupByNameUsesNameIndex() {
+        assertUsesIndex(ItemDbHelper.INDEX_ITEMS_NAME,
+                buildQuery(ItemEntry.COLUMN_ITEM_NAME + "=?", null), new String[]{"Item 7"});
+    }
+
+    public void testSupplierFilterUsesSupplierIndex() {
+        // items_supplier_idx is on (supplier_id, name), so it also yields the name order.
+        String plan = assertUsesIndex(ItemDbHelper.INDEX_ITEMS_SUPPLIER + " (" + ItemEntry.COLUMN_SUPPLIER_ID,
+                buildQuery(ItemEntry.COLUMN_SUPPLIER_ID + "=?", ItemEntry.COLUMN_ITEM_NAME), new String[]{"3"});
+        assertFalse("Expected no sort step:\n" + plan, plan.contains("TEMP B-TREE"));
+    }
+
+    public void testQuantityRangeUsesQuantityIndex() {
+        assertUsesIndex(ItemDbHelper.INDEX_ITEMS_QUANTITY,
+                buildQuery(ItemEntry.COLUMN_ITEM_QUANTITY + "<=?", null), new String[]{"2"});
+    }
+
+    public void testPriceRangeUsesPriceIndex() {
+        assertUsesIndex(ItemDbHelper.INDEX_ITEMS_PRICE,
+                buildQuery(ItemEntry.COLUMN_ITEM_PRICE + " BETWEEN ? AND ?", ItemEntry.COLUMN_ITEM_PRICE),
+                new String[]{"50000", "150000"});
+    }
+
+    public void testLowStockPageUsesLowStockIndex() {
+        if (!ItemDbHelper.supportsPartialIndexes(mDbHelper.getReadableDatabase()))
+            return;
+        // A page of the low-stock list after a key, as read by ItemPager.
+        String plan = assertUsesIndex(ItemDbHelper.INDEX_ITEMS_LOW_STOCK,
+                SQLiteQueryBuilder.buildQueryString(false, ItemEntry.VIEW_NAME, LIST_PROJECTION,
+                        ItemEntry.LOW_STOCK_SELECTION + " AND " + ItemEntry.COLUMN_ITEM_NAME + " >= ? AND ("
+                                + ItemEntry.COLUMN_ITEM_NAME + " > ? OR " + ItemEntry._ID + " > ?)",
+                        null, null, ItemEntry.COLUMN_ITEM_NAME + ", " + ItemEntry._ID, "50"),
+                new String[]{"Item 7", "Item 7", "8"});
+        assertFalse("Expected no sort step:\n" + plan, plan.contains("TEMP B-TREE"));
+    }
+
+    /**
+     * Builds the statement ItemProvider.query sends to SQLite for the items URI, which reads
+     * items joined with their supplier.
+     */
+    private static String buildQuery(String selection, String sortOrder) {
+        return SQLiteQueryBuilder.buildQueryString(false, ItemEntry.VIEW_NAME, LIST_PROJECTION,
+                selection, null, null, sortOrder, null);
+    }
+
+    /**
+     * Asserts that the query plan mentions the index, and returns the plan.
+     */
+    private String assertUsesIndex(String index, String sql, String[] selectionArgs) {
+        Cursor cursor = mDbHelper.getReadableDatabase().rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        StringBuilder plan = new StringBuilder();
+        try {
+            int detailColumnIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailColumnIndex)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        assertTrue("Expected " + index + " in plan for " + sql + ":\n" + plan,
+                plan.toString().contains(index));
+        return plan.toString();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks the low-stock URI, whole and paged, against per-item reorder thresholds.
+ */
+public class ItemLowStockTest extends ItemProviderTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        insertItem("Laptop", 45000, 10, "Acme");
+        insertItem("Desk", 12000, 5, "Acme");
+        insertItem("Lamp", 1500, 0, "Acme");
+        insertItem("Chair", 3000, 6, "Acme");
+        insertItem("Stool", 2000, 1, "Acme");
+        insertItem("Shelf", 8000, 3, "Acme");
+        ContentValues cable = itemValues("Cable", 300, 40, "Acme");
+        cable.put(ItemEntry.COLUMN_REORDER_THRESHOLD, 50);
+        mResolver.insert(ItemEntry.CONTENT_URI, cable);
+    }
+
+    public void testLowStockUsesEachThreshold() {
+        assertEquals(Arrays.asList("Cable", "Desk", "Lamp", "Shelf", "Stool"), queryNames(ItemEntry.LOW_STOCK_URI));
+    }
+
+    public void testLowStockPages() {
+        assertEquals(Arrays.asList("Cable", "Desk"), queryNames(ItemEntry.buildLowStockPageUri(null, 0, 0, 2)));
+        List<String> ids = queryColumn(ItemEntry.buildLowStockPageUri(null, 0, 0, 2), ItemEntry._ID);
+        assertEquals(Arrays.asList("Lamp", "Shelf"),
+                queryNames(ItemEntry.buildLowStockPageUri("Desk", Long.parseLong(ids.get(1)), 0, 2)));
+        // The offset counts low-stock rows only: Chair and Laptop are not skipped over.
+        assertEquals(Arrays.asList("Stool"), queryNames(ItemEntry.buildLowStockPageUri(null, 0, 4, 2)));
+        assertTrue(queryNames(ItemEntry.buildLowStockPageUri(null, 0, 5, 2)).isEmpty());
+    }
+
+    public void testNegativeThresholdRejected() {
+        ContentValues values = itemValues("Bench", 5000, 2, "Acme");
+        values.put(ItemEntry.COLUMN_REORDER_THRESHOLD, -1);
+        try {
+            mResolver.insert(ItemEntry.CONTENT_URI, values);
+            fail("Negative reorder threshold accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private List<String> queryNames(Uri uri) {
+        return queryColumn(uri, ItemEntry.COLUMN_ITEM_NAME);
+    }
+
+    private List<String> queryColumn(Uri uri, String column) {
+        Cursor cursor = mResolver.query(uri, new String[]{column}, null, null, null);
+        List<String> values = new ArrayList<>();
+        try {
+            while (cursor.moveToNext())
+                values.add(cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.SupplierEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Checks which URIs the provider notifies for each kind of write: the item URI for a write to
+ * one item, the collection for anything wider, and one notification per batch.
+ */
+public class ItemNotificationTest extends ItemProviderTestCase {
+
+    private long mLaptopId;
+    private long mDeskId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mLaptopId = insertItem("Laptop", 45000, 10, "Acme");
+        mDeskId = insertItem("Desk", 12000, 2, "Acme");
+        mNotifications.clear();
+    }
+
+    public void testInsertNotifiesItemAndNewSupplier() {
+        long id = insertItem("Lamp", 1500, 7, "Lapland Traders");
+        assertEquals(2, mNotifications.size());
+        assertEquals(SupplierEntry.CONTENT_URI, parent(mNotifications.get(0)));
+        assertEquals(itemUri(id), mNotifications.get(1));
+    }
+
+    public void testSingleItemWritesNotifyItem() {
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_ITEM_PRICE, 40000);
+        mResolver.update(itemUri(mLaptopId), values, null, null);
+        values = new ContentValues();
+        values.put(ItemEntry.ADJUST_DELTA, -1);
+        mResolver.update(ItemEntry.buildAdjustUri(mLaptopId), values, null, null);
+        mResolver.delete(itemUri(mDeskId), null, null);
+        assertEquals(Arrays.asList(itemUri(mLaptopId), itemUri(mLaptopId), itemUri(mDeskId)), mNotifications);
+    }
+
+    public void testWriteThroughItemsUriNotifiesItems() {
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_ITEM_QUANTITY, 0);
+        assertEquals(2, mResolver.update(ItemEntry.CONTENT_URI, values, ItemEntry.COLUMN_ITEM_SUPPLIER + " = ?",
+                new String[]{"Acme"}));
+        assertEquals(Collections.singletonList(ItemEntry.CONTENT_URI), mNotifications);
+    }
+
+    public void testWriteThatChangesNothingNotifiesNothing() {
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.ADJUST_DELTA, -100);
+        assertEquals(0, mResolver.update(ItemEntry.buildAdjustUri(mLaptopId), values, null, null));
+        assertEquals(0, mResolver.delete(itemUri(mDeskId + 1), null, null));
+        assertTrue(mNotifications.isEmpty());
+    }
+
+    public void testBatchNotifiesOnceAfterCommit() throws Exception {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newUpdate(ItemEntry.buildAdjustUri(mLaptopId))
+                .withValue(ItemEntry.ADJUST_DELTA, 1)
+                .build());
+        operations.add(ContentProviderOperation.newUpdate(ItemEntry.buildAdjustUri(mLaptopId))
+                .withValue(ItemEntry.ADJUST_DELTA, 2)
+                .build());
+        mResolver.applyBatch(ItemContract.CONTENT_AUTHORITY, operations);
+        assertEquals(Collections.singletonList(itemUri(mLaptopId)), mNotifications);
+
+        mNotifications.clear();
+        operations.add(ContentProviderOperation.newUpdate(ItemEntry.buildAdjustUri(mDeskId))
+                .withValue(ItemEntry.ADJUST_DELTA, 1)
+                .build());
+        mResolver.applyBatch(ItemContract.CONTENT_AUTHORITY, operations);
+        assertEquals(Collections.singletonList(ItemEntry.CONTENT_URI), mNotifications);
+        assertEquals(16, queryQuantity(mLaptopId));
+    }
+
+    public void testBulkInsertNotifiesOnce() {
+        ContentValues[] values = {
+                itemValues("Lamp", 1500, 7, "Acme"),
+                itemValues("Chair", 3000, 5, "Acme")};
+        assertEquals(2, mResolver.bulkInsert(ItemEntry.CONTENT_URI, values));
+        assertEquals(Collections.singletonList(ItemEntry.CONTENT_URI), mNotifications);
+    }
+
+    private static Uri itemUri(long id) {
+        return ContentUris.withAppendedId(ItemEntry.CONTENT_URI, id);
+    }
+
+    private static Uri parent(Uri uri) {
+        return ItemContract.BASE_CONTENT_URI.buildUpon().appendPath(uri.getPathSegments().get(0)).build();
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives an {@link ItemPager} on the main thread, as the list does, and checks the rows it
+ * loads and the changes it reports: a jump far down the list, and a reload that only reports
+ * the rows that changed.
+ */
+public class ItemPagerTest extends ItemProviderTestCase {
+
+    private static final int ITEM_COUNT = 500;
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // The callbacks received, e.g. "changed 400 50", in order.
+    private final BlockingQueue<String> mEvents = new LinkedBlockingQueue<>();
+    private ItemPager mPager;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ContentValues[] values = new ContentValues[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++)
+            values[i] = itemValues(name(i), 1000, 10, "Acme");
+        assertEquals(ITEM_COUNT, mResolver.bulkInsert(ItemEntry.CONTENT_URI, values));
+        mPager = new ItemPager(mResolver, new ItemPager.Callback() {
+            @Override
+            public void onPagesChanged() {
+                mEvents.add("pages changed");
+            }
+
+            @Override
+            public void onInserted(int position, int count) {
+                mEvents.add("inserted " + position + " " + count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                mEvents.add("removed " + position + " " + count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                mEvents.add("moved " + fromPosition + " " + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                mEvents.add("changed " + position + " " + count);
+            }
+        });
+        reload();
+        assertEquals("pages changed", nextEvent());
+        assertEquals(ITEM_COUNT, (int) onMain(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return mPager.getCount();
+            }
+        }));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        onMain(new Callable<Void>() {
+            @Override
+            public Void call() {
+                mPager.close();
+                return null;
+            }
+        });
+        super.tearDown();
+    }
+
+    public void testJumpReadsPageAtOffset() throws Exception {
+        assertNull(getItem(420));
+        assertEquals("changed 400 50", nextEvent());
+        assertEquals(name(420), getItem(420).name);
+        assertEquals(name(449), getItem(449).name);
+    }
+
+    public void testReloadReportsOnlyChangedRows() throws Exception {
+        loadPage(400);
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_ITEM_QUANTITY, 3);
+        assertEquals(1, mResolver.update(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, getItem(421).id),
+                values, null, null));
+        reload();
+        assertEquals("changed 421 1", nextEvent());
+        assertNull(mEvents.poll(500, TimeUnit.MILLISECONDS));
+        assertEquals(3, getItem(421).quantity);
+    }
+
+    public void testReloadReportsRemovedRow() throws Exception {
+        loadPage(400);
+        assertEquals(1, mResolver.delete(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, getItem(430).id),
+                null, null));
+        reload();
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            events.add(nextEvent());
+        assertTrue(events.toString(), events.contains("removed 430 1"));
+        assertFalse(events.toString(), events.contains("pages changed"));
+        assertEquals(name(431), getItem(430).name);
+    }
+
+    private void loadPage(int position) throws Exception {
+        assertNull(getItem(position));
+        assertEquals("changed " + position + " " + ItemPager.PAGE_SIZE, nextEvent());
+    }
+
+    private ItemPager.Item getItem(final int position) throws Exception {
+        return onMain(new Callable<ItemPager.Item>() {
+            @Override
+            public ItemPager.Item call() {
+                return mPager.getItem(position);
+            }
+        });
+    }
+
+    private void reload() throws Exception {
+        onMain(new Callable<Void>() {
+            @Override
+            public Void call() {
+                mPager.reload();
+                return null;
+            }
+        });
+    }
+
+    private <T> T onMain(Callable<T> callable) throws Exception {
+        FutureTask<T> task = new FutureTask<>(callable);
+        mMainHandler.post(task);
+        return task.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private String nextEvent() throws InterruptedException {
+        String event = mEvents.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull("No callback within " + TIMEOUT_SECONDS + " s", event);
+        return event;
+    }
+
+    private static String name(int index) {
+        return String.format(Locale.US, "Item %03d", index);
+    }
+}
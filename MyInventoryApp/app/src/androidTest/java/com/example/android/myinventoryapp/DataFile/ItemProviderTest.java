@@ -0,0 +1,83 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.SupplierEntry;
+
+/**
+ * Checks the rows the item and supplier URIs write, and the writes they turn down.
+ */
+public class ItemProviderTest extends ItemProviderTestCase {
+
+    public void testBulkInsertSharesSuppliers() {
+        ContentValues[] values = {
+                itemValues("Laptop", 45000, 10, "Acme"),
+                itemValues("Desk", 12000, 2, "Lapland Traders"),
+                itemValues("Lamp", 1500, 7, "Acme")};
+        assertEquals(3, mResolver.bulkInsert(ItemEntry.CONTENT_URI, values));
+        assertEquals(2, queryLong("SELECT COUNT(*) FROM " + SupplierEntry.TABLE_NAME));
+        assertEquals(1, queryLong("SELECT COUNT(DISTINCT " + ItemEntry.COLUMN_SUPPLIER_ID + ") FROM "
+                + ItemEntry.TABLE_NAME + " WHERE " + ItemEntry.COLUMN_ITEM_NAME + " IN ('Laptop', 'Lamp')"));
+    }
+
+    public void testFailedInsertKeepsNoNewSupplier() {
+        long id = insertItem("Laptop", 45000, 10, "Acme");
+        ContentValues values = itemValues("Desk", 12000, 2, "Lapland Traders");
+        // The taken _id makes the insert fail after the supplier was added.
+        values.put(ItemEntry._ID, id);
+        assertNull(mResolver.insert(ItemEntry.CONTENT_URI, values));
+        assertEquals(1, queryLong("SELECT COUNT(*) FROM " + SupplierEntry.TABLE_NAME));
+    }
+
+    public void testUpdateRefusesNegativeQuantity() {
+        long id = insertItem("Laptop", 45000, 3, "Acme");
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_ITEM_QUANTITY, -1);
+        try {
+            mResolver.update(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, id), values, null, null);
+            fail("Negative quantity accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(3, queryQuantity(id));
+        values.put(ItemEntry.COLUMN_ITEM_QUANTITY, 0);
+        assertEquals(1, mResolver.update(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, id), values, null, null));
+        assertEquals(0, queryQuantity(id));
+    }
+
+    public void testAdjustAddsDelta() {
+        long id = insertItem("Laptop", 45000, 10, "Acme");
+        assertEquals(1, adjust(id, -4));
+        assertEquals(1, adjust(id, 2));
+        assertEquals(8, queryQuantity(id));
+    }
+
+    public void testAdjustRefusesNegativeStock() {
+        long id = insertItem("Laptop", 45000, 3, "Acme");
+        assertEquals(0, adjust(id, -4));
+        assertEquals(3, queryQuantity(id));
+        assertEquals(1, adjust(id, -3));
+        assertEquals(0, queryQuantity(id));
+    }
+
+    public void testAdjustOfMissingItem() {
+        long id = insertItem("Laptop", 45000, 3, "Acme");
+        assertEquals(0, adjust(id + 1, 1));
+    }
+
+    public void testAdjustRequiresDelta() {
+        long id = insertItem("Laptop", 45000, 3, "Acme");
+        try {
+            mResolver.update(ItemEntry.buildAdjustUri(id), new ContentValues(), null, null);
+            fail("Adjustment without a delta accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private int adjust(long id, int delta) {
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.ADJUST_DELTA, delta);
+        return mResolver.update(ItemEntry.buildAdjustUri(id), values, null, null);
+    }
+}
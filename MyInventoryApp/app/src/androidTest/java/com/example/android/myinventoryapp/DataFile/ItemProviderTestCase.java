@@ -0,0 +1,106 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.ContextWrapper;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.test.mock.MockContentResolver;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs an {@link ItemProvider} on a database of its own, reached through {@link #mResolver},
+ * so tests never touch the app's inventory. The database starts empty for every test. The
+ * change notifications the provider sends are recorded in {@link #mNotifications} instead of
+ * going out.
+ */
+public abstract class ItemProviderTestCase extends AndroidTestCase {
+
+    private static final String DATABASE_NAME = "provider_test_inventory.db";
+
+    protected ItemDbHelper mDbHelper;
+    protected ItemProvider mProvider;
+    protected MockContentResolver mResolver;
+    protected final List<Uri> mNotifications = Collections.synchronizedList(new ArrayList<Uri>());
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        getContext().deleteDatabase(DATABASE_NAME);
+        mDbHelper = new ItemDbHelper(getContext(), DATABASE_NAME, ItemDbHelper.Tuning.DEFAULT);
+        mResolver = new MockContentResolver() {
+            @Override
+            public void notifyChange(Uri uri, ContentObserver observer, boolean syncToNetwork) {
+                mNotifications.add(uri);
+            }
+        };
+        mProvider = createProvider(mDbHelper);
+        mProvider.attachInfo(new ContextWrapper(getContext()) {
+            @Override
+            public ContentResolver getContentResolver() {
+                return mResolver;
+            }
+        }, null);
+        mResolver.addProvider(ItemContract.CONTENT_AUTHORITY, mProvider);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        getContext().deleteDatabase(DATABASE_NAME);
+        super.tearDown();
+    }
+
+    protected ItemProvider createProvider(ItemDbHelper dbHelper) {
+        return new ItemProvider(dbHelper);
+    }
+
+    protected static ContentValues itemValues(String name, long price, int quantity, String supplier) {
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_ITEM_NAME, name);
+        values.put(ItemEntry.COLUMN_ITEM_PRICE, price);
+        values.put(ItemEntry.COLUMN_ITEM_QUANTITY, quantity);
+        values.put(ItemEntry.COLUMN_ITEM_IMAGE, "");
+        values.put(ItemEntry.COLUMN_ITEM_SUPPLIER, supplier);
+        values.put(ItemEntry.COLUMN_SUPPLIER_EMAIL, supplier.toLowerCase().replace(' ', '.') + "@example.com");
+        return values;
+    }
+
+    protected long insertItem(String name, long price, int quantity, String supplier) {
+        Uri uri = mResolver.insert(ItemEntry.CONTENT_URI, itemValues(name, price, quantity, supplier));
+        assertNotNull(uri);
+        return ContentUris.parseId(uri);
+    }
+
+    protected int queryQuantity(long id) {
+        Cursor cursor = mResolver.query(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, id),
+                new String[]{ItemEntry.COLUMN_ITEM_QUANTITY}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the first column of the query's single row as a long.
+     */
+    protected long queryLong(String sql, String... args) {
+        Cursor cursor = mDbHelper.getReadableDatabase().rawQuery(sql, args);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.SupplierEntry;
+
+import java.util.ArrayList;
+
+/**
+ * Checks that single-item reads served from the provider's row cache never outlive a write
+ * to the row, committed or rolled back.
+ */
+public class ItemRowCacheTest extends ItemProviderTestCase {
+
+    private long mItemId;
+    private Uri mItemUri;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mItemId = insertItem("Laptop", 45000, 10, "Acme");
+        mItemUri = ContentUris.withAppendedId(ItemEntry.CONTENT_URI, mItemId);
+    }
+
+    public void testUpdateReplacesCachedRow() {
+        assertEquals(10, queryQuantity(mItemId));
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_ITEM_QUANTITY, 4);
+        assertEquals(1, mResolver.update(mItemUri, values, null, null));
+        assertEquals(4, queryQuantity(mItemId));
+    }
+
+    public void testSupplierUpdateReplacesCachedRows() {
+        assertEquals("Acme", querySupplier());
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Acme Ltd");
+        assertEquals(1, mResolver.update(SupplierEntry.CONTENT_URI, values, null, null));
+        assertEquals("Acme Ltd", querySupplier());
+    }
+
+    public void testRolledBackBatchLeavesNoCachedValues() throws RemoteException {
+        assertEquals(10, queryQuantity(mItemId));
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newUpdate(mItemUri)
+                .withValue(ItemEntry.COLUMN_ITEM_QUANTITY, 3)
+                .build());
+        // Reads the updated row inside the batch, which caches it.
+        operations.add(ContentProviderOperation.newAssertQuery(mItemUri)
+                .withValue(ItemEntry.COLUMN_ITEM_QUANTITY, 3)
+                .build());
+        operations.add(ContentProviderOperation.newDelete(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, mItemId + 1))
+                .withExpectedCount(1)
+                .build());
+        try {
+            mResolver.applyBatch(ItemContract.CONTENT_AUTHORITY, operations);
+            fail("Batch with a failing operation applied");
+        } catch (OperationApplicationException expected) {
+        }
+        assertEquals(10, queryQuantity(mItemId));
+    }
+
+    private String querySupplier() {
+        Cursor cursor = mResolver.query(mItemUri, new String[]{ItemEntry.COLUMN_ITEM_SUPPLIER}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
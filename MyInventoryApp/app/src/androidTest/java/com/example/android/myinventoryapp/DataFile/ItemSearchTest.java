@@ -0,0 +1,74 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks the order and limits of the search URI: name matches by length first, then supplier
+ * matches, every word matching as a prefix.
+ */
+public class ItemSearchTest extends ItemProviderTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        insertItem("Laptop stand", 2500, 4, "Acme");
+        insertItem("Desk", 12000, 2, "Lapland Traders");
+        insertItem("Laptop", 45000, 10, "Acme");
+        insertItem("Lamp", 1500, 7, "Acme");
+    }
+
+    public void testToPrefixMatch() {
+        assertEquals("lap* h*", ItemProvider.toPrefixMatch("lap h"));
+        assertEquals("lap* h*", ItemProvider.toPrefixMatch(" lap-\"h\" "));
+        assertNull(ItemProvider.toPrefixMatch(" - "));
+        assertEquals("name:lap* name:h*", ItemProvider.toColumnMatch(ItemEntry.COLUMN_ITEM_NAME, "lap* h*"));
+    }
+
+    public void testNameMatchesBeforeSupplierMatches() {
+        assertEquals(Arrays.asList("Laptop", "Laptop stand", "Desk"), search(ItemEntry.buildSearchUri("lap")));
+    }
+
+    public void testEveryWordMatchesAsPrefix() {
+        assertEquals(Arrays.asList("Laptop stand"), search(ItemEntry.buildSearchUri("lap st")));
+        assertEquals(Arrays.asList("Lamp"), search(ItemEntry.buildSearchUri("LAM")));
+    }
+
+    public void testLimit() {
+        Uri uri = ItemEntry.buildSearchUri("lap").buildUpon()
+                .appendQueryParameter(ItemEntry.QUERY_PARAMETER_LIMIT, "2").build();
+        assertEquals(Arrays.asList("Laptop", "Laptop stand"), search(uri));
+    }
+
+    public void testSelectionNarrowsMatches() {
+        Cursor cursor = mResolver.query(ItemEntry.buildSearchUri("lap"), new String[]{ItemEntry.COLUMN_ITEM_NAME},
+                ItemEntry.COLUMN_ITEM_QUANTITY + " < ?", new String[]{"5"}, null);
+        assertEquals(Arrays.asList("Laptop stand", "Desk"), readNames(cursor));
+    }
+
+    public void testQueryWithoutWords() {
+        assertTrue(search(ItemEntry.buildSearchUri("-")).isEmpty());
+        assertTrue(search(ItemEntry.buildSearchUri("xyz")).isEmpty());
+    }
+
+    private List<String> search(Uri uri) {
+        return readNames(mResolver.query(uri, new String[]{ItemEntry.COLUMN_ITEM_NAME}, null, null, null));
+    }
+
+    private static List<String> readNames(Cursor cursor) {
+        List<String> names = new ArrayList<>();
+        try {
+            while (cursor.moveToNext())
+                names.add(cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+        return names;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.SummaryEntry;
+
+/**
+ * Checks that the summary row kept by triggers matches the items after every kind of write.
+ */
+public class ItemSummaryTest extends ItemProviderTestCase {
+
+    public void testEmptyCatalog() {
+        assertSummary(0, 0, 0, 0);
+    }
+
+    public void testInsertUpdateAndDelete() {
+        long laptop = insertItem("Laptop", 45000, 10, "Acme");
+        long desk = insertItem("Desk", 12000, 2, "Acme");
+        assertSummary(2, 12, 45000 * 10 + 12000 * 2, 1);
+
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_ITEM_PRICE, 40000);
+        values.put(ItemEntry.COLUMN_ITEM_QUANTITY, 4);
+        mResolver.update(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, laptop), values, null, null);
+        assertSummary(2, 6, 40000 * 4 + 12000 * 2, 2);
+
+        values = new ContentValues();
+        values.put(ItemEntry.ADJUST_DELTA, 8);
+        mResolver.update(ItemEntry.buildAdjustUri(desk), values, null, null);
+        assertSummary(2, 14, 40000 * 4 + 12000 * 10, 1);
+
+        values = new ContentValues();
+        values.put(ItemEntry.COLUMN_REORDER_THRESHOLD, 20);
+        mResolver.update(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, desk), values, null, null);
+        assertSummary(2, 14, 40000 * 4 + 12000 * 10, 2);
+
+        mResolver.delete(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, laptop), null, null);
+        assertSummary(1, 10, 12000 * 10, 1);
+    }
+
+    public void testMatchesAggregateOverItems() {
+        ContentValues[] values = new ContentValues[100];
+        for (int i = 0; i < values.length; i++)
+            values[i] = itemValues("Item " + i, 100 + i, i % 12, "Acme");
+        mResolver.bulkInsert(ItemEntry.CONTENT_URI, values);
+        mResolver.delete(ItemEntry.CONTENT_URI, ItemEntry.COLUMN_ITEM_QUANTITY + " = ?", new String[]{"3"});
+        assertSummary((int) queryLong("SELECT COUNT(*) FROM " + ItemEntry.TABLE_NAME),
+                queryLong("SELECT SUM(" + ItemEntry.COLUMN_ITEM_QUANTITY + ") FROM " + ItemEntry.TABLE_NAME),
+                queryLong("SELECT SUM(" + ItemEntry.COLUMN_ITEM_PRICE + " * " + ItemEntry.COLUMN_ITEM_QUANTITY
+                        + ") FROM " + ItemEntry.TABLE_NAME),
+                (int) queryLong("SELECT COUNT(*) FROM " + ItemEntry.TABLE_NAME + " WHERE "
+                        + ItemEntry.LOW_STOCK_SELECTION));
+    }
+
+    private void assertSummary(int itemCount, long totalUnits, long totalValue, int lowStockCount) {
+        Cursor cursor = mResolver.query(SummaryEntry.CONTENT_URI, new String[]{SummaryEntry.COLUMN_ITEM_COUNT,
+                SummaryEntry.COLUMN_TOTAL_UNITS, SummaryEntry.COLUMN_TOTAL_VALUE,
+                SummaryEntry.COLUMN_LOW_STOCK_COUNT}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(itemCount, cursor.getInt(0));
+            assertEquals(totalUnits, cursor.getLong(1));
+            assertEquals(totalValue, cursor.getLong(2));
+            assertEquals(lowStockCount, cursor.getInt(3));
+        } finally {
+            cursor.close();
+        }
+    }
+}
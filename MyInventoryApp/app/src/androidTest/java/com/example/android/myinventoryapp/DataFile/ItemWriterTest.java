@@ -0,0 +1,87 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Looper;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues writes through an {@link ItemWriter} and checks that they reach the provider in order
+ * and that each outcome comes back on the main thread.
+ */
+public class ItemWriterTest extends ItemProviderTestCase {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private ItemWriter mWriter;
+    // The callbacks received, e.g. "finished content://.../items/1 1", in order.
+    private final BlockingQueue<String> mEvents = new LinkedBlockingQueue<>();
+    private final ItemWriter.Callback mCallback = new ItemWriter.Callback() {
+        @Override
+        public void onWriteFinished(Uri uri, int rows) {
+            record("finished " + uri + " " + rows);
+        }
+
+        @Override
+        public void onWriteFailed(Uri uri, RuntimeException e) {
+            record("failed " + uri + " " + e.getClass().getSimpleName());
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mWriter = new ItemWriter(mResolver);
+    }
+
+    public void testWritesRunInOrder() throws InterruptedException {
+        long laptop = insertItem("Laptop", 45000, 10, "Acme");
+        Uri laptopUri = ContentUris.withAppendedId(ItemEntry.CONTENT_URI, laptop);
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_ITEM_QUANTITY, 3);
+
+        mWriter.insert(itemValues("Desk", 12000, 2, "Acme"), mCallback);
+        mWriter.update(laptopUri, values, mCallback);
+        mWriter.delete(laptopUri, mCallback);
+        mWriter.delete(laptopUri, mCallback);
+
+        Uri deskUri = ContentUris.withAppendedId(ItemEntry.CONTENT_URI, laptop + 1);
+        assertEquals("finished " + deskUri + " 1", nextEvent());
+        assertEquals("finished " + laptopUri + " 1", nextEvent());
+        assertEquals("finished " + laptopUri + " 1", nextEvent());
+        assertEquals("finished " + laptopUri + " 0", nextEvent());
+        assertEquals(2, queryQuantity(laptop + 1));
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM " + ItemEntry.TABLE_NAME + " WHERE "
+                + ItemEntry._ID + " = ?", String.valueOf(laptop)));
+    }
+
+    public void testRejectedWriteReportsFailure() throws InterruptedException {
+        mWriter.insert(itemValues("Desk", 12000, -2, "Acme"), mCallback);
+        mWriter.insert(itemValues("Lamp", 1500, 7, "Acme"), null);
+        mWriter.insert(itemValues("Chair", 3000, 5, "Acme"), mCallback);
+
+        assertEquals("failed " + ItemEntry.CONTENT_URI + " IllegalArgumentException", nextEvent());
+        assertTrue(nextEvent().startsWith("finished " + ItemEntry.CONTENT_URI + "/"));
+        // The write without a callback still ran, before the one after it.
+        assertEquals(2, queryLong("SELECT COUNT(*) FROM " + ItemEntry.TABLE_NAME));
+        assertTrue(mEvents.isEmpty());
+    }
+
+    private void record(String event) {
+        if (Looper.myLooper() != Looper.getMainLooper())
+            event = "off main thread: " + event;
+        mEvents.add(event);
+    }
+
+    private String nextEvent() throws InterruptedException {
+        String event = mEvents.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull("No callback within " + TIMEOUT_SECONDS + " s", event);
+        return event;
+    }
+}
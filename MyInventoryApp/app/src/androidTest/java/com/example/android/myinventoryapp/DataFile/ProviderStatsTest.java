@@ -0,0 +1,90 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.myinventoryapp.BuildConfig;
+import com.example.android.myinventoryapp.DataFile.ItemContract.StatsEntry;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Checks the bookkeeping of {@link ProviderStats} and that the provider serves it.
+ */
+public class ProviderStatsTest extends AndroidTestCase {
+
+    public void testBuckets() {
+        assertEquals(0, ProviderStats.bucket(0));
+        assertEquals(1, ProviderStats.bucket(1));
+        assertEquals(10, ProviderStats.bucket(1000));
+        assertEquals(23, ProviderStats.bucket(Long.MAX_VALUE));
+    }
+
+    public void testRecordAndReset() {
+        ProviderStats stats = new ProviderStats(ItemProvider.ITEMS, new String[]{"items", "item"}, true);
+        long start = System.nanoTime();
+        stats.record(ProviderStats.QUERY, ItemProvider.ITEMS, start, 20, false);
+        stats.record(ProviderStats.QUERY, ItemProvider.ITEMS, start, 30, false);
+        stats.record(ProviderStats.DELETE, -1, start, 0, true);
+
+        Cursor cursor = stats.toCursor();
+        try {
+            assertEquals(2, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("query", cursor.getString(cursor.getColumnIndex(StatsEntry.COLUMN_OPERATION)));
+            assertEquals("items", cursor.getString(cursor.getColumnIndex(StatsEntry.COLUMN_URI_MATCH)));
+            assertEquals(2, cursor.getLong(cursor.getColumnIndex(StatsEntry.COLUMN_COUNT)));
+            assertEquals(50, cursor.getLong(cursor.getColumnIndex(StatsEntry.COLUMN_ROWS)));
+            assertTrue(cursor.getLong(cursor.getColumnIndex(StatsEntry.COLUMN_P99_US))
+                    >= cursor.getLong(cursor.getColumnIndex(StatsEntry.COLUMN_MAX_US)));
+            assertTrue(cursor.moveToNext());
+            assertEquals("delete", cursor.getString(cursor.getColumnIndex(StatsEntry.COLUMN_OPERATION)));
+            assertEquals("unknown", cursor.getString(cursor.getColumnIndex(StatsEntry.COLUMN_URI_MATCH)));
+            assertEquals(1, cursor.getLong(cursor.getColumnIndex(StatsEntry.COLUMN_ERRORS)));
+        } finally {
+            cursor.close();
+        }
+
+        stats.reset();
+        cursor = stats.toCursor();
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testDisabledStatsRecordNothing() {
+        ProviderStats stats = new ProviderStats(ItemProvider.ITEMS, new String[]{"items", "item"}, false);
+        stats.record(ProviderStats.QUERY, ItemProvider.ITEMS, System.nanoTime(), 20, false);
+        Cursor cursor = stats.toCursor();
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+        StringWriter dump = new StringWriter();
+        stats.dump(new PrintWriter(dump));
+        assertTrue(dump.toString(), dump.toString().contains("disabled"));
+    }
+
+    public void testProviderServesStats() {
+        // The app under test is a debug build, which records stats.
+        assertTrue(BuildConfig.DEBUG);
+        getContext().getContentResolver().delete(StatsEntry.CONTENT_URI, null, null);
+        getContext().getContentResolver().query(ItemContract.SummaryEntry.CONTENT_URI, null, null, null, null)
+                .close();
+        Cursor cursor = getContext().getContentResolver().query(StatsEntry.CONTENT_URI, null, null, null, null);
+        try {
+            boolean found = false;
+            while (cursor.moveToNext()) {
+                if ("summary".equals(cursor.getString(cursor.getColumnIndex(StatsEntry.COLUMN_URI_MATCH))))
+                    found = cursor.getLong(cursor.getColumnIndex(StatsEntry.COLUMN_COUNT)) == 1;
+            }
+            assertTrue(found);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.OperationApplicationException;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that an adjustment counts once in what the list shows, whether the list reloads
+ * before the queue writes it or while the provider notifies about the write.
+ */
+public class QuantityWriteQueueTest extends ItemProviderTestCase {
+
+    private final CountDownLatch mBatchApplied = new CountDownLatch(1);
+    private QuantityWriteQueue mQueue;
+    private long mItemId;
+    // What a reload on the provider's notification shows: quantity read plus pending delta.
+    private volatile int mShownOnNotification = -1;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mQueue = new QuantityWriteQueue(mResolver);
+        mItemId = insertItem("Laptop", 45000, 10, "Acme");
+    }
+
+    @Override
+    protected ItemProvider createProvider(ItemDbHelper dbHelper) {
+        return new ItemProvider(dbHelper) {
+            @Override
+            public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+                    throws OperationApplicationException {
+                ContentProviderResult[] results = super.applyBatch(operations);
+                // The notification has gone out, but the queue has not seen the result yet.
+                mShownOnNotification = queryQuantity(mItemId) + mQueue.getPendingDelta(mItemId);
+                mBatchApplied.countDown();
+                return results;
+            }
+        };
+    }
+
+    public void testAdjustReloadFlush() throws InterruptedException {
+        mQueue.adjust(mItemId, -3);
+        mQueue.adjust(mItemId, 1);
+        // A reload before the flush shows the queued delta on top of the stored quantity.
+        assertEquals(10, queryQuantity(mItemId));
+        assertEquals(8, queryQuantity(mItemId) + mQueue.getPendingDelta(mItemId));
+
+        mQueue.flush();
+        assertTrue(mBatchApplied.await(5, TimeUnit.SECONDS));
+        assertEquals(8, mShownOnNotification);
+        assertEquals(8, queryQuantity(mItemId));
+        assertEquals(0, mQueue.getPendingDelta(mItemId));
+    }
+
+    public void testRejectedAdjustmentIsDropped() throws InterruptedException {
+        mQueue.adjust(mItemId, -11);
+        mQueue.flush();
+        assertTrue(mBatchApplied.await(5, TimeUnit.SECONDS));
+        assertEquals(10, mShownOnNotification);
+        assertEquals(10, queryQuantity(mItemId));
+        assertEquals(0, mQueue.getPendingDelta(mItemId));
+    }
+}
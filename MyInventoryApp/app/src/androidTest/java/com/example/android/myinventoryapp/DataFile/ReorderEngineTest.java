@@ -0,0 +1,67 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentValues;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks how {@link ReorderEngine} groups low-stock items into purchase orders.
+ */
+public class ReorderEngineTest extends ItemProviderTestCase {
+
+    private final List<ReorderEngine.PurchaseOrder> mOrders = new ArrayList<>();
+    private final ReorderEngine.Listener mListener = new ReorderEngine.Listener() {
+        @Override
+        public void onPurchaseOrder(ReorderEngine.PurchaseOrder order) {
+            mOrders.add(order);
+        }
+    };
+
+    public void testOneOrderPerSupplierAddress() throws IOException {
+        insertItem("Stool", 2000, 1, "Lapland Traders");
+        insertItem("Laptop", 45000, 10, "Acme");
+        insertItem("Lamp", 1500, 0, "Acme");
+        insertItem("Desk", 12000, 5, "Acme");
+        insertItem("Chair", 3000, 8, "Globex");
+        ContentValues values = itemValues("Cable", 300, 2, "Acme");
+        values.put(ItemEntry.COLUMN_SUPPLIER_EMAIL, "orders@acme.example.com");
+        mResolver.insert(ItemEntry.CONTENT_URI, values);
+
+        assertEquals(3, ReorderEngine.generate(mResolver, mListener));
+        assertEquals(3, mOrders.size());
+        assertOrder(mOrders.get(0), "Acme", "acme@example.com", "Desk 5 5", "Lamp 0 10");
+        assertOrder(mOrders.get(1), "Acme", "orders@acme.example.com", "Cable 2 8");
+        assertOrder(mOrders.get(2), "Lapland Traders", "lapland.traders@example.com", "Stool 1 9");
+        assertEquals("Please send:\n\n5 units of Desk\n10 units of Lamp\n\nThank you.", mOrders.get(0).getBody());
+    }
+
+    public void testNoLowStockNoOrders() throws IOException {
+        insertItem("Laptop", 45000, 10, "Acme");
+        assertEquals(0, ReorderEngine.generate(mResolver, mListener));
+        assertTrue(mOrders.isEmpty());
+    }
+
+    public void testOrderQuantity() {
+        assertEquals(10, ReorderEngine.orderQuantity(0, 5));
+        assertEquals(5, ReorderEngine.orderQuantity(5, 5));
+        assertEquals(1, ReorderEngine.orderQuantity(0, 0));
+    }
+
+    /**
+     * Checks the supplier, the email and each line as "name in_stock to_order".
+     */
+    private static void assertOrder(ReorderEngine.PurchaseOrder order, String supplier, String email,
+                                    String... lines) {
+        assertEquals(supplier, order.supplier);
+        assertEquals(email, order.email);
+        assertEquals(lines.length, order.lines.size());
+        for (int i = 0; i < lines.length; i++) {
+            ReorderEngine.OrderLine line = order.lines.get(i);
+            assertEquals(lines[i], line.name + " " + line.quantityInStock + " " + line.orderQuantity);
+        }
+    }
+}
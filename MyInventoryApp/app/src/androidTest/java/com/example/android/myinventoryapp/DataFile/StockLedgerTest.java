@@ -0,0 +1,133 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.StockHistoryEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks the movements the ledger triggers append, the history URI built from them, and that
+ * compaction into snapshots leaves the history as it was.
+ */
+public class StockLedgerTest extends ItemProviderTestCase {
+
+    public void testMovementsFollowQuantity() {
+        long id = insertItem("Laptop", 45000, 10, "Acme");
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_ITEM_QUANTITY, 4);
+        mResolver.update(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, id), values, null, null);
+        values = new ContentValues();
+        values.put(ItemEntry.COLUMN_ITEM_PRICE, 40000);
+        mResolver.update(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, id), values, null, null);
+        values = new ContentValues();
+        values.put(ItemEntry.ADJUST_DELTA, 3);
+        mResolver.update(ItemEntry.buildAdjustUri(id), values, null, null);
+        assertEquals(Arrays.asList(10L, -6L, 3L), queryDeltas(id));
+        assertEquals(queryQuantity(id), queryLong("SELECT SUM(" + StockHistoryEntry.COLUMN_DELTA + ") FROM "
+                + StockHistoryEntry.MOVEMENTS_TABLE_NAME + " WHERE " + StockHistoryEntry.COLUMN_ITEM_ID + " = ?",
+                String.valueOf(id)));
+    }
+
+    public void testDeleteKeepsLedger() {
+        long id = insertItem("Laptop", 45000, 10, "Acme");
+        long empty = insertItem("Desk", 12000, 0, "Acme");
+        mResolver.delete(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, id), null, null);
+        mResolver.delete(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, empty), null, null);
+        assertEquals(Arrays.asList(10L, -10L), queryDeltas(id));
+        assertTrue(queryDeltas(empty).isEmpty());
+        assertEquals(Arrays.asList(today(id) + " 10 10"), queryHistory(id, 0));
+    }
+
+    public void testHistorySumsUnitsPerDay() {
+        long id = insertItem("Laptop", 45000, 10, "Acme");
+        long day = today(id);
+        addMovement(id, 5, day - 40);
+        addMovement(id, -2, day - 40);
+        addMovement(id, -1, day - 35);
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.ADJUST_DELTA, -4);
+        mResolver.update(ItemEntry.buildAdjustUri(id), values, null, null);
+
+        assertEquals(Arrays.asList((day - 40) + " 5 2", (day - 35) + " 0 1", day + " 10 4"), queryHistory(id, 0));
+        assertEquals(Arrays.asList(day + " 10 4"), queryHistory(id, 7));
+    }
+
+    public void testCompactionKeepsHistory() {
+        long id = insertItem("Laptop", 45000, 10, "Acme");
+        long day = today(id);
+        addMovement(id, 5, day - 40);
+        addMovement(id, -2, day - 40);
+        addMovement(id, -1, day - 35);
+        addMovement(id, 1, day - 3);
+        List<String> before = queryHistory(id, 0);
+
+        assertEquals(3, StockLedger.compact(mDbHelper.getWritableDatabase(), day * StockLedger.DAY_MS));
+        assertEquals(2, queryLong("SELECT COUNT(*) FROM " + StockHistoryEntry.SNAPSHOTS_TABLE_NAME));
+        assertEquals(Arrays.asList(1L, 10L), queryDeltas(id));
+        assertEquals(before, queryHistory(id, 0));
+        // Nothing is left to compact, and a second pass must not double the snapshots.
+        assertEquals(0, StockLedger.compact(mDbHelper.getWritableDatabase(), day * StockLedger.DAY_MS));
+        assertEquals(before, queryHistory(id, 0));
+    }
+
+    /**
+     * The day of the item's first movement, as the database clock counts it.
+     */
+    private long today(long id) {
+        return queryLong("SELECT MIN(" + StockHistoryEntry.COLUMN_CREATED_AT + ") / " + StockLedger.DAY_MS
+                + " FROM " + StockHistoryEntry.MOVEMENTS_TABLE_NAME + " WHERE "
+                + StockHistoryEntry.COLUMN_ITEM_ID + " = ?", String.valueOf(id));
+    }
+
+    /**
+     * Appends a backdated movement at noon of the given day, bypassing the items table.
+     */
+    private void addMovement(long id, int delta, long day) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(StockHistoryEntry.COLUMN_ITEM_ID, id);
+        values.put(StockHistoryEntry.COLUMN_DELTA, delta);
+        values.put(StockHistoryEntry.COLUMN_CREATED_AT, day * StockLedger.DAY_MS + StockLedger.DAY_MS / 2);
+        db.insertOrThrow(StockHistoryEntry.MOVEMENTS_TABLE_NAME, null, values);
+    }
+
+    private List<Long> queryDeltas(long id) {
+        Cursor cursor = mDbHelper.getReadableDatabase().query(StockHistoryEntry.MOVEMENTS_TABLE_NAME,
+                new String[]{StockHistoryEntry.COLUMN_DELTA}, StockHistoryEntry.COLUMN_ITEM_ID + " = ?",
+                new String[]{String.valueOf(id)}, null, null, StockHistoryEntry.COLUMN_CREATED_AT + ", "
+                        + StockHistoryEntry._ID);
+        List<Long> deltas = new ArrayList<>();
+        try {
+            while (cursor.moveToNext())
+                deltas.add(cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+        return deltas;
+    }
+
+    /**
+     * The item's history rows as "day units_in units_out".
+     */
+    private List<String> queryHistory(long id, int days) {
+        Cursor cursor = mResolver.query(ItemEntry.buildHistoryUri(id, days), null, null, null, null);
+        List<String> rows = new ArrayList<>();
+        try {
+            int dayColumn = cursor.getColumnIndexOrThrow(StockHistoryEntry.COLUMN_DAY);
+            int inColumn = cursor.getColumnIndexOrThrow(StockHistoryEntry.COLUMN_UNITS_IN);
+            int outColumn = cursor.getColumnIndexOrThrow(StockHistoryEntry.COLUMN_UNITS_OUT);
+            while (cursor.moveToNext())
+                rows.add(cursor.getLong(dayColumn) + " " + cursor.getLong(inColumn) + " " + cursor.getLong(outColumn));
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+}
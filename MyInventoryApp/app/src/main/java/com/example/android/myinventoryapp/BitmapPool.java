@@ -0,0 +1,65 @@
+package com.example.android.myinventoryapp;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bitmaps no longer shown or cached, bucketed by width, height and config, kept so the next
+ * decode of a thumbnail of the same size can reuse one through {@code inBitmap} instead of
+ * allocating. Exact-size buckets work with inBitmap on every API level we support. Thread safe.
+ */
+class BitmapPool {
+
+    private final long mMaxBytes;
+    private final Map<String, ArrayDeque<Bitmap>> mBuckets = new HashMap<>();
+    // Oldest first, so the pool drops the bitmap it has kept longest when it is full.
+    private final ArrayDeque<Bitmap> mAll = new ArrayDeque<>();
+    private long mBytes;
+
+    BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a pooled bitmap of exactly this size and config, or null if there is none.
+     * Its pixels are left as they are; a decode into it overwrites them.
+     */
+    synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        ArrayDeque<Bitmap> bucket = mBuckets.get(bucketKey(width, height, config));
+        if (bucket == null || bucket.isEmpty())
+            return null;
+        Bitmap bitmap = bucket.pollLast();
+        mAll.remove(bitmap);
+        mBytes -= bitmap.getByteCount();
+        return bitmap;
+    }
+
+    /**
+     * Offers a bitmap nobody uses any more. Immutable and recycled bitmaps are not kept.
+     */
+    synchronized void put(Bitmap bitmap) {
+        if (!bitmap.isMutable() || bitmap.isRecycled() || bitmap.getByteCount() > mMaxBytes)
+            return;
+        String key = bucketKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bucket = mBuckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            mBuckets.put(key, bucket);
+        }
+        bucket.addLast(bitmap);
+        mAll.addLast(bitmap);
+        mBytes += bitmap.getByteCount();
+        while (mBytes > mMaxBytes) {
+            Bitmap eldest = mAll.pollFirst();
+            mBuckets.get(bucketKey(eldest.getWidth(), eldest.getHeight(), eldest.getConfig())).remove(eldest);
+            mBytes -= eldest.getByteCount();
+        }
+    }
+
+    private static String bucketKey(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + ":" + config;
+    }
+}
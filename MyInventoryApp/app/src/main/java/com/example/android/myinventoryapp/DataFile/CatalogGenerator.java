@@ -0,0 +1,137 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Fills the catalog with made-up but plausible items through {@link ItemProvider}. The same seed
+ * always yields the same items, so runs against generated catalogs can be compared.
+ * <p>
+ * Names combine a brand, a product and a model number. Brands and suppliers follow a Zipf
+ * distribution, as a few of them usually account for most of a shop's stock. Prices are spread
+ * log-normally around a typical price per product and end in 99, and most quantities are small
+ * with a long tail, so some items always start out low on stock.
+ */
+public final class CatalogGenerator {
+
+    private static final int CHUNK_SIZE = 500;
+    private static final String[] BRANDS = {"Hp", "Dell", "Lenovo", "Samsung", "Sony", "Apple", "Asus",
+            "Acer", "Philips", "Bosch", "Canon", "Logitech", "Xiaomi", "Lg", "Panasonic", "Nokia",
+            "Toshiba", "Sharp", "Kingston", "Sandisk"};
+    private static final String[] PRODUCTS = {"Laptop", "Monitor", "Keyboard", "Mouse", "Headphones",
+            "Speaker", "Charger", "Cable", "Tablet", "Phone", "Camera", "Printer", "Router", "Drive",
+            "Memory Card", "Battery", "Adapter", "Webcam", "Microphone", "Television"};
+    // Typical price of each product above, in whole currency units.
+    private static final int[] TYPICAL_PRICES = {45000, 12000, 1500, 600, 2500, 3000, 800, 300, 20000,
+            25000, 35000, 9000, 2500, 5000, 700, 400, 350, 2000, 1800, 40000};
+    private static final String[] SUPPLIER_NAMES = {"Northwind", "Contoso", "Fabrikam", "Tailspin",
+            "Wingtip", "Adventure", "Litware", "Proseware", "Lucerne", "Margie", "Fourth Coffee",
+            "Alpine"};
+    private static final String[] SUPPLIER_KINDS = {"Traders", "Distributors", "Wholesale",
+            "Electronics", "Supply"};
+    // One supplier for about this many items, and never fewer than MIN_SUPPLIERS.
+    private static final int ITEMS_PER_SUPPLIER = 250;
+    private static final int MIN_SUPPLIERS = 5;
+
+    private final Random mRandom;
+    private final String mImage;
+
+    /**
+     * @param image the image of every generated item, or "" for none
+     */
+    public CatalogGenerator(long seed, String image) {
+        mRandom = new Random(seed);
+        mImage = image;
+    }
+
+    /**
+     * Bulk inserts {@code count} new items, a few hundred per transaction.
+     *
+     * @return the number of items inserted
+     */
+    public int generate(ContentResolver resolver, int count) {
+        double[] brandWeights = zipf(BRANDS.length, 1.0);
+        double[] supplierWeights = zipf(Math.max(MIN_SUPPLIERS, count / ITEMS_PER_SUPPLIER), 1.1);
+        int inserted = 0;
+        for (int start = 0; start < count; start += CHUNK_SIZE) {
+            ContentValues[] chunk = new ContentValues[Math.min(CHUNK_SIZE, count - start)];
+            for (int i = 0; i < chunk.length; i++)
+                chunk[i] = nextItem(brandWeights, supplierWeights);
+            inserted += resolver.bulkInsert(ItemEntry.CONTENT_URI, chunk);
+        }
+        return inserted;
+    }
+
+    private ContentValues nextItem(double[] brandWeights, double[] supplierWeights) {
+        int product = mRandom.nextInt(PRODUCTS.length);
+        int supplier = sample(mRandom, supplierWeights);
+        int reorderThreshold = 2 + mRandom.nextInt(9);
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_ITEM_NAME, BRANDS[sample(mRandom, brandWeights)] + " " + PRODUCTS[product]
+                + " " + (char) ('A' + mRandom.nextInt(26)) + (100 + mRandom.nextInt(900)));
+        values.put(ItemEntry.COLUMN_ITEM_PRICE, price(TYPICAL_PRICES[product]));
+        // Exponential with a mean of three times the threshold, so about a quarter start out low.
+        values.put(ItemEntry.COLUMN_ITEM_QUANTITY,
+                (int) (-3 * reorderThreshold * Math.log(1 - mRandom.nextDouble())));
+        values.put(ItemEntry.COLUMN_REORDER_THRESHOLD, reorderThreshold);
+        values.put(ItemEntry.COLUMN_ITEM_IMAGE, mImage);
+        values.put(ItemEntry.COLUMN_ITEM_SUPPLIER, supplierName(supplier));
+        values.put(ItemEntry.COLUMN_SUPPLIER_EMAIL,
+                supplierName(supplier).toLowerCase(Locale.US).replace(' ', '.') + "@example.com");
+        return values;
+    }
+
+    /**
+     * A price in minor units within a factor of about two of the typical one, ending in 99.
+     */
+    private long price(int typicalPrice) {
+        long units = Math.round(typicalPrice * Math.exp(0.4 * mRandom.nextGaussian()));
+        return Math.max(units, 1) * 100 - 1;
+    }
+
+    private static String supplierName(int supplier) {
+        String name = SUPPLIER_NAMES[supplier % SUPPLIER_NAMES.length] + " "
+                + SUPPLIER_KINDS[supplier / SUPPLIER_NAMES.length % SUPPLIER_KINDS.length];
+        int round = supplier / (SUPPLIER_NAMES.length * SUPPLIER_KINDS.length);
+        return round == 0 ? name : name + " " + (round + 1);
+    }
+
+    /**
+     * A word that starts some of the generated names, for searches that find something.
+     */
+    public static String searchTerm(Random random) {
+        String word = random.nextBoolean() ? BRANDS[random.nextInt(BRANDS.length)]
+                : PRODUCTS[random.nextInt(PRODUCTS.length)];
+        return word.substring(0, Math.min(word.length(), 2 + random.nextInt(3)));
+    }
+
+    /**
+     * Cumulative Zipf weights of {@code n} ranks with exponent {@code s}, the last one 1.
+     */
+    static double[] zipf(int n, double s) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int rank = 1; rank <= n; rank++) {
+            sum += 1 / Math.pow(rank, s);
+            cumulative[rank - 1] = sum;
+        }
+        for (int i = 0; i < n; i++)
+            cumulative[i] /= sum;
+        return cumulative;
+    }
+
+    /**
+     * Draws a rank, 0 the most likely, from cumulative weights.
+     */
+    static int sample(Random random, double[] cumulative) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        index = index >= 0 ? index : -index - 1;
+        return Math.min(index, cumulative.length - 1);
+    }
+}
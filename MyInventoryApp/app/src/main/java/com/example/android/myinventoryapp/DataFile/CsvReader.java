@@ -0,0 +1,106 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming reader for RFC 4180 CSV: comma separated, fields optionally in double quotes with
+ * doubled quotes inside, CRLF, LF or CR line ends. Reads through a fixed buffer and reuses the
+ * record list, so memory stays flat however long the input is. Blank lines are skipped.
+ */
+class CsvReader {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final Reader mReader;
+    private final char[] mBuffer = new char[BUFFER_SIZE];
+    private int mPosition;
+    private int mLimit;
+    private final StringBuilder mField = new StringBuilder();
+    private final List<String> mRecord = new ArrayList<>();
+    private int mLineNumber = 1;
+    private boolean mAfterNewline;
+    private int mRecordLineNumber;
+
+    CsvReader(Reader reader) {
+        mReader = reader;
+    }
+
+    /**
+     * Returns the fields of the next record, or null at the end of the input. The list is reused
+     * by the next call.
+     *
+     * @throws IOException if reading fails or a quoted field is never closed
+     */
+    List<String> readRecord() throws IOException {
+        mRecord.clear();
+        int c = read();
+        while (c == '\n')
+            c = read();
+        if (c == -1)
+            return null;
+        mRecordLineNumber = mLineNumber;
+        while (true) {
+            mField.setLength(0);
+            if (c == '"') {
+                while (true) {
+                    c = read();
+                    if (c == -1)
+                        throw new IOException("Unterminated quoted field on line " + mRecordLineNumber);
+                    if (c == '"') {
+                        c = read();
+                        if (c != '"')
+                            break;
+                    }
+                    mField.append((char) c);
+                }
+            }
+            // Unquoted text, or anything between a closing quote and the next separator.
+            while (c != ',' && c != '\n' && c != -1) {
+                mField.append((char) c);
+                c = read();
+            }
+            mRecord.add(mField.toString());
+            if (c != ',')
+                return mRecord;
+            c = read();
+        }
+    }
+
+    /**
+     * The line on which the record last returned by {@link #readRecord} starts, from 1.
+     */
+    int getLineNumber() {
+        return mRecordLineNumber;
+    }
+
+    /**
+     * Next character with every line end turned into a single '\n', or -1 at the end.
+     */
+    private int read() throws IOException {
+        if (mAfterNewline) {
+            mLineNumber++;
+            mAfterNewline = false;
+        }
+        if (mPosition == mLimit && !fill())
+            return -1;
+        int c = mBuffer[mPosition++];
+        if (c == '\r') {
+            if ((mPosition < mLimit || fill()) && mBuffer[mPosition] == '\n')
+                mPosition++;
+            c = '\n';
+        }
+        if (c == '\n')
+            mAfterNewline = true;
+        return c;
+    }
+
+    private boolean fill() throws IOException {
+        int read = mReader.read(mBuffer, 0, mBuffer.length);
+        mPosition = 0;
+        mLimit = Math.max(read, 0);
+        return mLimit > 0;
+    }
+}
@@ -0,0 +1,358 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ImageRefEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Item images copied into app-private storage, so showing them is a local file read rather than
+ * a call into whichever app the picture came from, and doesn't depend on keeping a permission to
+ * it. Each image is stored once under the SHA-256 of its bytes, however many items use it, next
+ * to a variant scaled down to {@link #VARIANT_SIZE} for list rows. Items refer to an image by its
+ * {@code file://} URI.
+ * <p>
+ * Triggers count how many items use each image (see {@link ImageRefEntry}). Images no item uses
+ * are deleted in the background once they are older than {@link #GRACE_PERIOD_MS}, which leaves
+ * an image picked in the editor but not saved yet alone.
+ */
+public final class ImageStore {
+
+    public static final String LOG_TAG = ImageStore.class.getSimpleName();
+    /**
+     * The shorter side of the scaled variant, in pixels. Enough for a list row on any density.
+     */
+    public static final int VARIANT_SIZE = 480;
+    static final long GRACE_PERIOD_MS = StockLedger.DAY_MS;
+    private static final String DIR = "images";
+    private static final String VARIANT_SUFFIX = "_" + VARIANT_SIZE;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int JPEG_QUALITY = 85;
+    private static final String PREFS_NAME = "image_store";
+    private static final String PREF_LAST_COLLECTION = "last_collection";
+    private static ImageStore sInstance;
+
+    /**
+     * Outcome of {@link #importImage}, called on the main thread.
+     */
+    public interface Callback {
+        void onImageImported(Uri source, Uri image);
+
+        /**
+         * The source could not be read or is not an image. Already logged.
+         */
+        void onImageImportFailed(Uri source);
+    }
+
+    private final Context mContext;
+    private final ContentResolver mResolver;
+    private final File mDir;
+    private final Executor mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private ImageStore(Context context) {
+        this(context, new File(context.getFilesDir(), DIR));
+    }
+
+    ImageStore(Context context, File dir) {
+        mContext = context;
+        mResolver = context.getContentResolver();
+        mDir = dir;
+    }
+
+    public static synchronized ImageStore getInstance(Context context) {
+        if (sInstance == null)
+            sInstance = new ImageStore(context.getApplicationContext());
+        return sInstance;
+    }
+
+    /**
+     * Copies the image at the URI into the store in the background, unless the same bytes are
+     * stored already, and reports the URI to save with the item.
+     */
+    public void importImage(final Uri source, final Callback callback) {
+        if (source == null)
+            throw new IllegalArgumentException("No image to import");
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Uri image = importNow(source);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (image != null)
+                            callback.onImageImported(source, image);
+                        else
+                            callback.onImageImportFailed(source);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Whether the URI refers to an image in the store.
+     */
+    public boolean contains(Uri uri) {
+        return uri != null && ContentResolver.SCHEME_FILE.equals(uri.getScheme()) && uri.getPath() != null
+                && mDir.equals(new File(uri.getPath()).getParentFile());
+    }
+
+    /**
+     * The URI to decode for showing a stored image at the given size: the scaled variant if it
+     * covers the size, otherwise the image itself. URIs outside the store are returned as they are.
+     */
+    public Uri forSize(Uri uri, int width, int height) {
+        if (Math.max(width, height) > VARIANT_SIZE || !contains(uri))
+            return uri;
+        File variant = new File(uri.getPath() + VARIANT_SUFFIX);
+        return variant.isFile() ? Uri.fromFile(variant) : uri;
+    }
+
+    /**
+     * Runs on the executor. Streams the source into a temporary file while hashing it, then
+     * renames it to its hash, so a reader never sees half an image.
+     *
+     * @return the stored image, or null if it could not be imported
+     */
+    private Uri importNow(Uri source) {
+        if (!mDir.isDirectory() && !mDir.mkdirs()) {
+            Log.e(LOG_TAG, "Can't create " + mDir);
+            return null;
+        }
+        File temp = null;
+        try {
+            temp = File.createTempFile("import", TEMP_SUFFIX, mDir);
+            String hash = copy(source, temp);
+            File file = new File(mDir, hash);
+            if (file.isFile()) {
+                // Already stored for another item; restart its grace period, as it may have none.
+                file.setLastModified(System.currentTimeMillis());
+            } else {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeFile(temp.getPath(), options);
+                if (options.outWidth <= 0 || options.outHeight <= 0) {
+                    Log.e(LOG_TAG, "Not an image: " + source);
+                    return null;
+                }
+                if (!temp.renameTo(file)) {
+                    Log.e(LOG_TAG, "Can't rename " + temp);
+                    return null;
+                }
+            }
+            try {
+                writeVariant(file);
+            } catch (IOException | RuntimeException e) {
+                // The image itself is stored; forSize serves it in place of the missing variant.
+                Log.e(LOG_TAG, "Failed to write the scaled variant of " + file, e);
+            }
+            return Uri.fromFile(file);
+        } catch (IOException | RuntimeException e) {
+            // Runtime exceptions too, e.g. from a misbehaving provider, as this runs on the executor.
+            Log.e(LOG_TAG, "Failed to import image " + source, e);
+            return null;
+        } finally {
+            if (temp != null)
+                temp.delete();
+        }
+    }
+
+    /**
+     * Copies the source into the file.
+     *
+     * @return the SHA-256 of the bytes copied, in lower case hex
+     */
+    private String copy(Uri source, File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        InputStream stream = mResolver.openInputStream(source);
+        if (stream == null)
+            throw new IOException("Can't open " + source);
+        InputStream input = new DigestInputStream(stream, digest);
+        try {
+            OutputStream output = new FileOutputStream(file);
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = input.read(buffer)) != -1)
+                    output.write(buffer, 0, read);
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+        byte[] hash = digest.digest();
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash)
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return hex.toString();
+    }
+
+    /**
+     * Writes the scaled variant of the stored image unless it exists or the image is no bigger.
+     */
+    private void writeVariant(File file) throws IOException {
+        File variant = new File(file.getPath() + VARIANT_SUFFIX);
+        if (variant.isFile())
+            return;
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        int shorterSide = Math.min(options.outWidth, options.outHeight);
+        if (shorterSide <= VARIANT_SIZE)
+            return;
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (shorterSide / (options.inSampleSize * 2) >= VARIANT_SIZE)
+            options.inSampleSize *= 2;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        if (bitmap == null)
+            throw new IOException("Can't decode " + file);
+        float scale = (float) VARIANT_SIZE / Math.min(bitmap.getWidth(), bitmap.getHeight());
+        if (scale < 1) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                    Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+            if (scaled != bitmap)
+                bitmap.recycle();
+            bitmap = scaled;
+        }
+        File temp = new File(variant.getPath() + TEMP_SUFFIX);
+        try {
+            OutputStream output = new FileOutputStream(temp);
+            try {
+                bitmap.compress(bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG,
+                        JPEG_QUALITY, output);
+            } finally {
+                output.close();
+            }
+            if (!temp.renameTo(variant))
+                throw new IOException("Can't rename " + temp);
+        } finally {
+            bitmap.recycle();
+            temp.delete();
+        }
+    }
+
+    /**
+     * Moves images items still load from other apps into the store, then deletes the stored
+     * images no item uses, in the background, if that has not happened for a day. Cheap to
+     * call, e.g. whenever the app starts.
+     */
+    public void collectGarbageIfDue() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                SharedPreferences prefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+                long now = System.currentTimeMillis();
+                long lastCollection = prefs.getLong(PREF_LAST_COLLECTION, 0);
+                if (now >= lastCollection && now - lastCollection < StockLedger.DAY_MS)
+                    return;
+                try {
+                    importExternalImages();
+                    collectGarbage(ItemDbHelper.getInstance(mContext).getWritableDatabase(), now);
+                } catch (RuntimeException e) {
+                    // E.g. a locked database; tried again on the next start.
+                    Log.e(LOG_TAG, "Failed to collect unused images", e);
+                    return;
+                }
+                prefs.edit().putLong(PREF_LAST_COLLECTION, now).apply();
+            }
+        });
+    }
+
+    /**
+     * Imports the images items saved before there was a store, still as document URIs, and
+     * points those items at the stored copies. Images that can no longer be read, e.g. because
+     * the permission to them is gone, stay as they are.
+     */
+    private void importExternalImages() {
+        SQLiteDatabase db = ItemDbHelper.getInstance(mContext).getReadableDatabase();
+        List<String> external = new ArrayList<>();
+        Cursor cursor = db.query(ImageRefEntry.TABLE_NAME, new String[]{ImageRefEntry.COLUMN_IMAGE},
+                ImageRefEntry.COLUMN_IMAGE + " LIKE ? AND " + ImageRefEntry.COLUMN_REF_COUNT + " > 0",
+                new String[]{ContentResolver.SCHEME_CONTENT + ":%"}, null, null, null);
+        try {
+            while (cursor.moveToNext())
+                external.add(cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+        for (String image : external) {
+            Uri stored = importNow(Uri.parse(image));
+            if (stored == null)
+                continue;
+            ContentValues values = new ContentValues();
+            values.put(ItemEntry.COLUMN_ITEM_IMAGE, stored.toString());
+            // Through the provider, so open lists and editors reload.
+            mResolver.update(ItemEntry.CONTENT_URI, values, ItemEntry.COLUMN_ITEM_IMAGE + " = ?",
+                    new String[]{image});
+        }
+    }
+
+    /**
+     * Deletes stored images, with their variants, that no item uses and that are older than the
+     * grace period, as well as leftovers of interrupted imports, and forgets images whose count
+     * has dropped to zero.
+     *
+     * @return the number of files deleted
+     */
+    int collectGarbage(SQLiteDatabase db, long now) {
+        Set<String> used = new HashSet<>();
+        Cursor cursor = db.query(ImageRefEntry.TABLE_NAME, new String[]{ImageRefEntry.COLUMN_IMAGE},
+                ImageRefEntry.COLUMN_REF_COUNT + " > 0", null, null, null, null);
+        try {
+            while (cursor.moveToNext())
+                used.add(cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+        int deleted = 0;
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(VARIANT_SUFFIX))
+                    name = name.substring(0, name.length() - VARIANT_SUFFIX.length());
+                boolean inUse = !name.endsWith(TEMP_SUFFIX)
+                        && used.contains(Uri.fromFile(new File(mDir, name)).toString());
+                if (!inUse && now - file.lastModified() > GRACE_PERIOD_MS && file.delete())
+                    deleted++;
+            }
+        }
+        db.delete(ImageRefEntry.TABLE_NAME, ImageRefEntry.COLUMN_REF_COUNT + " <= 0", null);
+        Log.i(LOG_TAG, "Deleted " + deleted + " unused image files");
+        return deleted;
+    }
+}
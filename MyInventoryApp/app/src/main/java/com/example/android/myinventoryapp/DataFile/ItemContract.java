@@ -15,20 +15,332 @@ public final class ItemContract {
     public static final String CONTENT_AUTHORITY = "com.example.android.myinventoryapp";
     public static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
     public static final String PATH_ITEMS = "items";
+    public static final String PATH_ADJUST = "adjust";
+    public static final String PATH_SEARCH = "search";
+    public static final String PATH_SUMMARY = "summary";
+    public static final String PATH_LOW_STOCK = "low_stock";
+    public static final String PATH_SUPPLIERS = "suppliers";
+    public static final String PATH_HISTORY = "history";
+    public static final String PATH_STATS = "stats";
+    public static final String PATH_CHANGES = "changes";
 
     public static class ItemEntry implements BaseColumns {
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_ITEMS);
+        /**
+         * The items at or below their reorder threshold, ordered by name. Served from an index
+         * of only those items, so it stays cheap however large the catalog is. Accepts
+         * {@link #QUERY_PARAMETER_LIMIT}.
+         */
+        public static final Uri LOW_STOCK_URI = Uri.withAppendedPath(CONTENT_URI, PATH_LOW_STOCK);
         public static final String CONTENT_LIST_TYPE =
                 ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_ITEMS;
         public static final String CONTENT_ITEM_TYPE =
                 ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_ITEMS;
         public static final String TABLE_NAME = "items";
+        /**
+         * Items joined with their supplier, with the supplier's name and email as
+         * {@link #COLUMN_ITEM_SUPPLIER} and {@link #COLUMN_SUPPLIER_EMAIL}. Item queries read it.
+         */
+        public static final String VIEW_NAME = "items_with_supplier";
+        /**
+         * Full-text index over name and supplier, kept in sync with {@link #TABLE_NAME} by triggers.
+         */
+        public static final String FTS_TABLE_NAME = "items_fts";
         public static final String _ID = BaseColumns._ID;
         public static final String COLUMN_ITEM_NAME = "name";
         public static final String COLUMN_ITEM_QUANTITY = "quantity";
+        /**
+         * Price as an integer number of minor units (1/100 of the currency unit). Use
+         * {@link PriceUtils} to convert from and to display text.
+         */
         public static final String COLUMN_ITEM_PRICE = "price";
         public static final String COLUMN_ITEM_IMAGE = "image";
+        /**
+         * The {@link SupplierEntry} row of the item. Inserts and updates may give it, or the
+         * supplier's name and email instead, in which case the supplier is looked up and created
+         * if it is new.
+         */
+        public static final String COLUMN_SUPPLIER_ID = "supplier_id";
+        /**
+         * Name of the item's supplier, read from the suppliers table.
+         */
         public static final String COLUMN_ITEM_SUPPLIER = "supplier";
+        /**
+         * Email of the item's supplier, read from the suppliers table.
+         */
         public static final String COLUMN_SUPPLIER_EMAIL = "email";
+        /**
+         * The item needs reordering once its quantity is at or below this. Optional on insert,
+         * defaulting to {@link #DEFAULT_REORDER_THRESHOLD}.
+         */
+        public static final String COLUMN_REORDER_THRESHOLD = "reorder_threshold";
+        public static final int DEFAULT_REORDER_THRESHOLD = 5;
+        /**
+         * Selection of the items that need reordering, as served by {@link #LOW_STOCK_URI}.
+         */
+        public static final String LOW_STOCK_SELECTION = COLUMN_ITEM_QUANTITY + " <= " + COLUMN_REORDER_THRESHOLD;
+        /**
+         * Key of the signed quantity change in the values passed to an {@link #buildAdjustUri} update.
+         */
+        public static final String ADJUST_DELTA = "delta";
+        /**
+         * Query parameters of the items and low-stock URIs for keyset pagination, see
+         * {@link #buildPageUri}.
+         */
+        public static final String QUERY_PARAMETER_LIMIT = "limit";
+        public static final String QUERY_PARAMETER_AFTER_NAME = "after_name";
+        public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+        /**
+         * Query parameter of {@link #buildPageUri(String, long, int, int)}: rows to skip after
+         * the key before the page starts.
+         */
+        public static final String QUERY_PARAMETER_OFFSET = "offset";
+        /**
+         * Query parameter of {@link #buildHistoryUri} limiting the history to the last n days.
+         */
+        public static final String QUERY_PARAMETER_DAYS = "days";
+
+        /**
+         * Returns the URI that atomically adds a delta to the quantity of the given item.
+         */
+        public static Uri buildAdjustUri(long id) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(String.valueOf(id))
+                    .appendPath(PATH_ADJUST)
+                    .build();
+        }
+
+        /**
+         * Returns the URI of the item's stock history over the last {@code days} days, today
+         * included: one {@link StockHistoryEntry} row per day with any movement, oldest first.
+         * Pass 0 for the whole history.
+         */
+        public static Uri buildHistoryUri(long id, int days) {
+            Uri.Builder builder = CONTENT_URI.buildUpon()
+                    .appendPath(String.valueOf(id))
+                    .appendPath(PATH_HISTORY);
+            if (days > 0)
+                builder.appendQueryParameter(QUERY_PARAMETER_DAYS, String.valueOf(days));
+            return builder.build();
+        }
+
+        /**
+         * Returns the URI of the best matches for a typed search over item name and supplier.
+         * Every word of the query matches as a prefix, so "lap h" finds "Laptop Hp".
+         * Append {@link #QUERY_PARAMETER_LIMIT} to change the default of 50 results.
+         */
+        public static Uri buildSearchUri(String query) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_SEARCH)
+                    .appendPath(query)
+                    .build();
+        }
+
+        /**
+         * Returns the items URI for a page of at most {@code limit} items ordered by name and _id,
+         * starting right after the item with the given name and id. Pass a null name for the
+         * first page. The page is read straight off the name index however deep it is.
+         */
+        public static Uri buildPageUri(String afterName, long afterId, int limit) {
+            return buildPageUri(CONTENT_URI, afterName, afterId, 0, limit);
+        }
+
+        /**
+         * Like {@link #buildPageUri(String, long, int)}, but the page starts {@code offset} rows
+         * after the given item, for jumping to a page whose start is not known. The skipped rows
+         * are counted off the name index without being read.
+         */
+        public static Uri buildPageUri(String afterName, long afterId, int offset, int limit) {
+            return buildPageUri(CONTENT_URI, afterName, afterId, offset, limit);
+        }
+
+        /**
+         * Like {@link #buildPageUri(String, long, int, int)}, but pages through the items of
+         * {@link #LOW_STOCK_URI} only, off the partial low-stock index.
+         */
+        public static Uri buildLowStockPageUri(String afterName, long afterId, int offset, int limit) {
+            return buildPageUri(LOW_STOCK_URI, afterName, afterId, offset, limit);
+        }
+
+        private static Uri buildPageUri(Uri baseUri, String afterName, long afterId, int offset, int limit) {
+            Uri.Builder builder = baseUri.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit));
+            if (afterName != null) {
+                builder.appendQueryParameter(QUERY_PARAMETER_AFTER_NAME, afterName)
+                        .appendQueryParameter(QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId));
+            }
+            if (offset > 0)
+                builder.appendQueryParameter(QUERY_PARAMETER_OFFSET, String.valueOf(offset));
+            return builder.build();
+        }
+    }
+
+    /**
+     * The suppliers items are ordered from, each name and email pair stored once. Changing a
+     * supplier's email is a single-row update here. A supplier cannot be deleted while items
+     * refer to it.
+     */
+    public static class SupplierEntry implements BaseColumns {
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+        public static final String TABLE_NAME = "suppliers";
+        public static final String _ID = BaseColumns._ID;
+        public static final String COLUMN_SUPPLIER_NAME = "name";
+        public static final String COLUMN_SUPPLIER_EMAIL = "email";
+    }
+
+    /**
+     * The stock ledger. Every change of an item's quantity appends a movement, from triggers on
+     * the items table, so the quantity column is the running total of the item's movements.
+     * Movements older than {@link StockLedger#RETENTION_DAYS} are rolled up into per-day
+     * snapshots. Days are counted in UTC since the epoch. Deleting an item keeps its history
+     * and ends it with a movement taking the remaining stock out.
+     */
+    public static class StockHistoryEntry implements BaseColumns {
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HISTORY;
+        public static final String MOVEMENTS_TABLE_NAME = "stock_movements";
+        public static final String SNAPSHOTS_TABLE_NAME = "stock_snapshots";
+        public static final String _ID = BaseColumns._ID;
+        public static final String COLUMN_ITEM_ID = "item_id";
+        /**
+         * Signed change of the quantity, in the movements table.
+         */
+        public static final String COLUMN_DELTA = "delta";
+        /**
+         * Time of the movement in milliseconds since the epoch, in the movements table.
+         */
+        public static final String COLUMN_CREATED_AT = "created_at";
+        /**
+         * Day since the epoch, in snapshots and history rows.
+         */
+        public static final String COLUMN_DAY = "day";
+        /**
+         * Units added and removed that day, in snapshots and history rows.
+         */
+        public static final String COLUMN_UNITS_IN = "units_in";
+        public static final String COLUMN_UNITS_OUT = "units_out";
+    }
+
+    /**
+     * The change log for syncing the catalog off the device. Triggers give every insert, update
+     * and delete of an item, and every change of its supplier, the next number of an ever
+     * increasing sequence; only each item's latest change is kept, so the log has one row per
+     * item ever stored. Deleted items stay as tombstones.
+     * <p>
+     * A sync queries {@link #buildChangesUri} with the highest {@link #COLUMN_SEQUENCE} it has
+     * seen, 0 the first time, and gets back the items changed since, in sequence order. The cost
+     * follows the number of changes, not the size of the catalog.
+     */
+    public static class ItemChangeEntry {
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(ItemEntry.CONTENT_URI, PATH_CHANGES);
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CHANGES;
+        public static final String TABLE_NAME = "item_changes";
+        /**
+         * Position of the change in the sequence, the token for the next sync. Never reused.
+         */
+        public static final String COLUMN_SEQUENCE = "sequence";
+        /**
+         * The changed item in the log table. Change rows have it as {@link ItemEntry#_ID} instead,
+         * next to the item's current columns.
+         */
+        public static final String COLUMN_ITEM_ID = "item_id";
+        /**
+         * 1 if the item has been deleted, in which case its other columns are null, otherwise 0.
+         */
+        public static final String COLUMN_DELETED = "deleted";
+        /**
+         * Query parameters of {@link #buildChangesUri}.
+         */
+        public static final String QUERY_PARAMETER_SINCE = "since";
+        public static final String QUERY_PARAMETER_LIMIT = ItemEntry.QUERY_PARAMETER_LIMIT;
+
+        /**
+         * Returns the URI of the items changed after the change numbered {@code since}, at most
+         * {@code limit} of them, or all of them for a limit of 0.
+         */
+        public static Uri buildChangesUri(long since, int limit) {
+            Uri.Builder builder = CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_SINCE, String.valueOf(since));
+            if (limit > 0)
+                builder.appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit));
+            return builder.build();
+        }
+    }
+
+    /**
+     * How many items use each image, kept by triggers on the items table. Internal to the app;
+     * {@link ImageStore} reads it to tell which stored images can go.
+     */
+    public static class ImageRefEntry {
+        public static final String TABLE_NAME = "image_refs";
+        /**
+         * The image exactly as in {@link ItemEntry#COLUMN_ITEM_IMAGE}.
+         */
+        public static final String COLUMN_IMAGE = "image";
+        public static final String COLUMN_REF_COUNT = "ref_count";
+    }
+
+    /**
+     * Stock totals over all items in a single row, kept current by triggers on the items table
+     * so reading them costs the same however many items there are.
+     */
+    public static class SummaryEntry implements BaseColumns {
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(ItemEntry.CONTENT_URI, PATH_SUMMARY);
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUMMARY;
+        public static final String TABLE_NAME = "items_summary";
+        public static final String _ID = BaseColumns._ID;
+        public static final String COLUMN_ITEM_COUNT = "item_count";
+        public static final String COLUMN_TOTAL_UNITS = "total_units";
+        /**
+         * Sum of price times quantity, in minor units like {@link ItemEntry#COLUMN_ITEM_PRICE}.
+         */
+        public static final String COLUMN_TOTAL_VALUE = "total_value";
+        /**
+         * Number of items at or below their {@link ItemEntry#COLUMN_REORDER_THRESHOLD}.
+         */
+        public static final String COLUMN_LOW_STOCK_COUNT = "low_stock_count";
+    }
+
+    /**
+     * Call counts and latencies of the provider since it started, one row per operation and URI
+     * match that was called. Deleting {@link #CONTENT_URI} starts the counts over. Also printed
+     * by {@code adb shell dumpsys activity provider com.example.android.myinventoryapp}. Only
+     * debug builds record calls; in release builds this has no rows.
+     */
+    public static class StatsEntry {
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_STATS);
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+        /**
+         * One of query, insert, bulk_insert, update and delete.
+         */
+        public static final String COLUMN_OPERATION = "operation";
+        /**
+         * The kind of URI called, e.g. items, item or low_stock.
+         */
+        public static final String COLUMN_URI_MATCH = "uri_match";
+        public static final String COLUMN_COUNT = "count";
+        /**
+         * Calls that threw.
+         */
+        public static final String COLUMN_ERRORS = "errors";
+        /**
+         * Rows returned by queries, or inserted, updated or deleted by writes.
+         */
+        public static final String COLUMN_ROWS = "rows";
+        /**
+         * Latencies in microseconds. Percentiles are rounded up to a power of two.
+         */
+        public static final String COLUMN_MEAN_US = "mean_us";
+        public static final String COLUMN_P50_US = "p50_us";
+        public static final String COLUMN_P90_US = "p90_us";
+        public static final String COLUMN_P99_US = "p99_us";
+        public static final String COLUMN_MAX_US = "max_us";
     }
 }
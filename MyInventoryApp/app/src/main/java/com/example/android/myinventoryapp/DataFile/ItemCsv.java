@@ -0,0 +1,99 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * CSV layout of the items table shared by the exporter below and {@link ItemCsvImporter}: a
+ * header row with the column names, then one row per item. Prices are written in major units
+ * with a '.' decimal point, whatever the device locale, so files open the same everywhere.
+ */
+public final class ItemCsv {
+
+    /**
+     * Columns of an exported file, in order. Imports accept them in any order.
+     */
+    public static final String[] COLUMNS = {
+            ItemEntry.COLUMN_ITEM_NAME,
+            ItemEntry.COLUMN_ITEM_PRICE,
+            ItemEntry.COLUMN_ITEM_QUANTITY,
+            ItemEntry.COLUMN_ITEM_IMAGE,
+            ItemEntry.COLUMN_ITEM_SUPPLIER,
+            ItemEntry.COLUMN_SUPPLIER_EMAIL,
+            ItemEntry.COLUMN_REORDER_THRESHOLD};
+    static final Locale PRICE_LOCALE = Locale.US;
+
+    private ItemCsv() {
+    }
+
+    /**
+     * Writes every item to the writer, streaming rows from the cursor, so only the cursor's
+     * current window is ever in memory. The caller should pass a buffered writer and close it.
+     *
+     * @return the number of items written
+     */
+    public static int export(ContentResolver resolver, Writer writer) throws IOException {
+        Cursor cursor = resolver.query(ItemEntry.CONTENT_URI, COLUMNS, null, null, ItemEntry._ID);
+        if (cursor == null)
+            throw new IOException("No cursor for " + ItemEntry.CONTENT_URI);
+        int rows = 0;
+        try {
+            writeRow(writer, COLUMNS);
+            String[] row = new String[COLUMNS.length];
+            int priceColumnIndex = cursor.getColumnIndex(ItemEntry.COLUMN_ITEM_PRICE);
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = i == priceColumnIndex
+                            ? PriceUtils.formatPlain(cursor.getLong(i), PRICE_LOCALE)
+                            : cursor.getString(i);
+                }
+                writeRow(writer, row);
+                rows++;
+            }
+            writer.flush();
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    private static void writeRow(Writer writer, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0)
+                writer.write(',');
+            writeField(writer, fields[i]);
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * Quotes the field if it contains a separator, quote or line break, doubling any quotes.
+     */
+    private static void writeField(Writer writer, String field) throws IOException {
+        if (field == null)
+            return;
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            char c = field.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(field);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"')
+                writer.write('"');
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+}
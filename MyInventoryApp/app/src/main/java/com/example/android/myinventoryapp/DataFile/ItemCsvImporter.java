@@ -0,0 +1,276 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.SupplierEntry;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Imports items from CSV in the layout of {@link ItemCsv}. The input is parsed record by record
+ * and inserted through one compiled statement, committing every {@link #BATCH_SIZE} rows, so
+ * memory use does not grow with the file and other readers are only held up by one batch at a
+ * time. Rows that fail validation are reported and skipped; the rest of the file still imports.
+ * <p>
+ * This writes to the database directly rather than through {@link ItemProvider}, but checks each
+ * row with the provider's own validation, so it accepts exactly the items the provider would.
+ * Skipping the provider is safe otherwise: rows are only ever inserted, so no row the
+ * provider has cached goes stale, and the search index, summary and stock ledger are kept by
+ * triggers. The import does not show in the provider's stats.
+ * <p>
+ * Runs on the calling thread, which must not be the main thread.
+ */
+public class ItemCsvImporter {
+
+    public static final int BATCH_SIZE = 5000;
+    private static final String SQL_INSERT = "INSERT INTO " + ItemEntry.TABLE_NAME + " ("
+            + ItemEntry.COLUMN_ITEM_NAME + ", " + ItemEntry.COLUMN_ITEM_PRICE + ", "
+            + ItemEntry.COLUMN_ITEM_QUANTITY + ", " + ItemEntry.COLUMN_ITEM_IMAGE + ", "
+            + ItemEntry.COLUMN_SUPPLIER_ID + ", " + ItemEntry.COLUMN_REORDER_THRESHOLD
+            + ") VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String SQL_FIND_SUPPLIER = "SELECT " + SupplierEntry._ID + " FROM "
+            + SupplierEntry.TABLE_NAME + " WHERE " + SupplierEntry.COLUMN_SUPPLIER_NAME + " = ? AND "
+            + SupplierEntry.COLUMN_SUPPLIER_EMAIL + " = ?";
+    private static final String SQL_INSERT_SUPPLIER = "INSERT INTO " + SupplierEntry.TABLE_NAME + " ("
+            + SupplierEntry.COLUMN_SUPPLIER_NAME + ", " + SupplierEntry.COLUMN_SUPPLIER_EMAIL + ") VALUES (?, ?)";
+    private static final String BYTE_ORDER_MARK = "\uFEFF";
+
+    /**
+     * Called on the importing thread.
+     */
+    public interface Listener {
+        /**
+         * Called after each committed batch with the totals so far.
+         */
+        void onProgress(int rowsRead, int rowsImported);
+
+        void onRowError(int lineNumber, String message);
+    }
+
+    public static class Result {
+        public final int rowsRead;
+        public final int rowsImported;
+
+        Result(int rowsRead, int rowsImported) {
+            this.rowsRead = rowsRead;
+            this.rowsImported = rowsImported;
+        }
+
+        public int getRowsSkipped() {
+            return rowsRead - rowsImported;
+        }
+    }
+
+    private final ItemDbHelper mDbHelper;
+    private final ContentResolver mResolver;
+    // Position of each column in the input's records, -1 if missing.
+    private int mNameIndex;
+    private int mPriceIndex;
+    private int mQuantityIndex;
+    private int mImageIndex;
+    private int mSupplierIndex;
+    private int mEmailIndex;
+    private int mReorderThresholdIndex;
+    // Supplier ids by name and email, so each supplier is looked up once per import.
+    private final Map<String, Long> mSupplierIds = new HashMap<>();
+    // The row being imported, reused for every record.
+    private final ContentValues mRow = new ContentValues();
+    private SQLiteStatement mFindSupplier;
+    private SQLiteStatement mInsertSupplier;
+    private boolean mSuppliersAdded;
+
+    public ItemCsvImporter(Context context) {
+        this(ItemDbHelper.getInstance(context), context.getContentResolver());
+    }
+
+    ItemCsvImporter(ItemDbHelper dbHelper, ContentResolver resolver) {
+        mDbHelper = dbHelper;
+        mResolver = resolver;
+    }
+
+    /**
+     * Imports every row of the input. Batches committed before an I/O error stay imported.
+     *
+     * @throws IOException if reading fails, or the header lacks a required column
+     */
+    public Result importFrom(Reader reader, Listener listener) throws IOException {
+        CsvReader csv = new CsvReader(reader);
+        List<String> header = csv.readRecord();
+        if (header == null)
+            return new Result(0, 0);
+        readHeader(header);
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT);
+        mFindSupplier = db.compileStatement(SQL_FIND_SUPPLIER);
+        mInsertSupplier = db.compileStatement(SQL_INSERT_SUPPLIER);
+        mSupplierIds.clear();
+        mSuppliersAdded = false;
+        int rowsRead = 0;
+        int rowsImported = 0;
+        int rowsInBatch = 0;
+        try {
+            List<String> record;
+            db.beginTransactionNonExclusive();
+            try {
+                while ((record = csv.readRecord()) != null) {
+                    rowsRead++;
+                    String error = bindRow(insert, record);
+                    if (error != null) {
+                        listener.onRowError(csv.getLineNumber(), error);
+                        continue;
+                    }
+                    try {
+                        insert.executeInsert();
+                    } catch (SQLiteConstraintException e) {
+                        listener.onRowError(csv.getLineNumber(), e.getMessage());
+                        continue;
+                    }
+                    if (++rowsInBatch == BATCH_SIZE) {
+                        db.setTransactionSuccessful();
+                        db.endTransaction();
+                        db.beginTransactionNonExclusive();
+                        rowsImported += rowsInBatch;
+                        rowsInBatch = 0;
+                        mResolver.notifyChange(ItemEntry.CONTENT_URI, null);
+                        listener.onProgress(rowsRead, rowsImported);
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            rowsImported += rowsInBatch;
+        } finally {
+            insert.close();
+            mFindSupplier.close();
+            mInsertSupplier.close();
+        }
+        if (rowsInBatch != 0)
+            mResolver.notifyChange(ItemEntry.CONTENT_URI, null);
+        if (mSuppliersAdded)
+            mResolver.notifyChange(SupplierEntry.CONTENT_URI, null);
+        listener.onProgress(rowsRead, rowsImported);
+        return new Result(rowsRead, rowsImported);
+    }
+
+    private void readHeader(List<String> header) throws IOException {
+        if (header.get(0).startsWith(BYTE_ORDER_MARK))
+            header.set(0, header.get(0).substring(BYTE_ORDER_MARK.length()));
+        mNameIndex = requireColumn(header, ItemEntry.COLUMN_ITEM_NAME);
+        mPriceIndex = requireColumn(header, ItemEntry.COLUMN_ITEM_PRICE);
+        mQuantityIndex = requireColumn(header, ItemEntry.COLUMN_ITEM_QUANTITY);
+        mImageIndex = indexOf(header, ItemEntry.COLUMN_ITEM_IMAGE);
+        mSupplierIndex = requireColumn(header, ItemEntry.COLUMN_ITEM_SUPPLIER);
+        mEmailIndex = requireColumn(header, ItemEntry.COLUMN_SUPPLIER_EMAIL);
+        // Files exported before thresholds existed lack the column.
+        mReorderThresholdIndex = indexOf(header, ItemEntry.COLUMN_REORDER_THRESHOLD);
+    }
+
+    private static int requireColumn(List<String> header, String column) throws IOException {
+        int index = indexOf(header, column);
+        if (index == -1)
+            throw new IOException("Missing column " + column);
+        return index;
+    }
+
+    private static int indexOf(List<String> header, String column) {
+        for (int i = 0; i < header.size(); i++) {
+            if (header.get(i).trim().equalsIgnoreCase(column))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Validates the record like ItemProvider does and binds it to the insert statement.
+     *
+     * @return null if the row is valid, otherwise what is wrong with it
+     */
+    private String bindRow(SQLiteStatement insert, List<String> record) {
+        ContentValues row = mRow;
+        row.clear();
+        row.put(ItemEntry.COLUMN_ITEM_NAME, nonEmpty(field(record, mNameIndex)));
+        String price = field(record, mPriceIndex);
+        try {
+            row.put(ItemEntry.COLUMN_ITEM_PRICE, PriceUtils.parse(price, ItemCsv.PRICE_LOCALE));
+        } catch (NumberFormatException e) {
+            return "Invalid price: " + price;
+        }
+        String quantity = field(record, mQuantityIndex);
+        try {
+            row.put(ItemEntry.COLUMN_ITEM_QUANTITY, Integer.parseInt(quantity));
+        } catch (NumberFormatException e) {
+            return "Invalid quantity: " + quantity;
+        }
+        row.put(ItemEntry.COLUMN_ITEM_IMAGE, field(record, mImageIndex));
+        row.put(ItemEntry.COLUMN_ITEM_SUPPLIER, nonEmpty(field(record, mSupplierIndex)));
+        row.put(ItemEntry.COLUMN_SUPPLIER_EMAIL, nonEmpty(field(record, mEmailIndex)));
+        String reorderThreshold = field(record, mReorderThresholdIndex);
+        if (!reorderThreshold.isEmpty()) {
+            try {
+                row.put(ItemEntry.COLUMN_REORDER_THRESHOLD, Integer.parseInt(reorderThreshold));
+            } catch (NumberFormatException e) {
+                return "Invalid reorder threshold: " + reorderThreshold;
+            }
+        }
+        try {
+            ItemProvider.validateItem(row);
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        insert.bindString(1, row.getAsString(ItemEntry.COLUMN_ITEM_NAME));
+        insert.bindLong(2, row.getAsLong(ItemEntry.COLUMN_ITEM_PRICE));
+        insert.bindLong(3, row.getAsInteger(ItemEntry.COLUMN_ITEM_QUANTITY));
+        insert.bindString(4, row.getAsString(ItemEntry.COLUMN_ITEM_IMAGE));
+        insert.bindLong(5, supplierId(row.getAsString(ItemEntry.COLUMN_ITEM_SUPPLIER),
+                row.getAsString(ItemEntry.COLUMN_SUPPLIER_EMAIL)));
+        Integer threshold = row.getAsInteger(ItemEntry.COLUMN_REORDER_THRESHOLD);
+        insert.bindLong(6, threshold != null ? threshold : ItemEntry.DEFAULT_REORDER_THRESHOLD);
+        return null;
+    }
+
+    /**
+     * Returns the id of the supplier with this name and email, inserting it if it is new. Runs
+     * inside the current batch, so a supplier only stays if the batch commits.
+     */
+    private long supplierId(String name, String email) {
+        String key = name + '\n' + email;
+        Long id = mSupplierIds.get(key);
+        if (id != null)
+            return id;
+        mFindSupplier.bindString(1, name);
+        mFindSupplier.bindString(2, email);
+        try {
+            id = mFindSupplier.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            mInsertSupplier.bindString(1, name);
+            mInsertSupplier.bindString(2, email);
+            id = mInsertSupplier.executeInsert();
+            mSuppliersAdded = true;
+        }
+        mSupplierIds.put(key, id);
+        return id;
+    }
+
+    private static String field(List<String> record, int index) {
+        return index >= 0 && index < record.size() ? record.get(index).trim() : "";
+    }
+
+    /**
+     * An empty field of a required column is a missing value, as the provider sees it.
+     */
+    private static String nonEmpty(String field) {
+        return field.isEmpty() ? null : field;
+    }
+}
@@ -1,10 +1,22 @@
 package com.example.android.myinventoryapp.DataFile;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+import android.util.Log;
 
+import com.example.android.myinventoryapp.DataFile.ItemContract.ImageRefEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemChangeEntry;
 import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.StockHistoryEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.SummaryEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.SupplierEntry;
+
+import java.util.Locale;
 
 /**
  * Created by RajBaba on 22-08-2017.
@@ -14,14 +26,153 @@ public class ItemDbHelper extends SQLiteOpenHelper {
 
     public static final String LOG_TAG = ItemDbHelper.class.getSimpleName();
     private static final String DATABASE_NAME = "inventory.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 11;
+    static final String INDEX_ITEMS_NAME = "items_name_idx";
+    static final String INDEX_ITEMS_SUPPLIER = "items_supplier_idx";
+    static final String INDEX_ITEMS_QUANTITY = "items_quantity_idx";
+    static final String INDEX_ITEMS_PRICE = "items_price_idx";
+    static final String INDEX_ITEMS_LOW_STOCK = "items_low_stock_idx";
+    // Sorting and keyset paging by name; the rowid is implicitly the last index column.
+    private static final String SQL_CREATE_NAME_INDEX = "CREATE INDEX " + INDEX_ITEMS_NAME
+            + " ON " + ItemEntry.TABLE_NAME + " (" + ItemEntry.COLUMN_ITEM_NAME + ")";
+    // Per-supplier lists come back already sorted by name.
+    private static final String SQL_CREATE_SUPPLIER_INDEX = "CREATE INDEX " + INDEX_ITEMS_SUPPLIER
+            + " ON " + ItemEntry.TABLE_NAME + " (" + ItemEntry.COLUMN_ITEM_SUPPLIER + ", "
+            + ItemEntry.COLUMN_ITEM_NAME + ")";
+    // Per-supplier lists by supplier_id, from version 7 on.
+    private static final String SQL_CREATE_SUPPLIER_ID_INDEX = "CREATE INDEX " + INDEX_ITEMS_SUPPLIER
+            + " ON " + ItemEntry.TABLE_NAME + " (" + ItemEntry.COLUMN_SUPPLIER_ID + ", "
+            + ItemEntry.COLUMN_ITEM_NAME + ")";
+    // Stock level range filters.
+    private static final String SQL_CREATE_QUANTITY_INDEX = "CREATE INDEX " + INDEX_ITEMS_QUANTITY
+            + " ON " + ItemEntry.TABLE_NAME + " (" + ItemEntry.COLUMN_ITEM_QUANTITY + ")";
+    // The current time in milliseconds since the epoch, for the ledger triggers.
+    private static final String SQL_NOW_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+    private static ItemDbHelper sInstance;
+    private final Tuning mTuning;
+
+    /**
+     * Connection settings applied every time the database is opened. The PRAGMAs only reach the
+     * primary connection, which does all writes; see {@link #onConfigure}.
+     */
+    public static class Tuning {
+        /**
+         * Write-ahead log with concurrent readers, the platform's WAL sync mode, a 2 MB page
+         * cache and 4 MB of memory-mapped I/O where the platform SQLite supports it.
+         */
+        public static final Tuning DEFAULT = new Tuning(true, null, 2048, 4L * 1024 * 1024);
+
+        public final boolean writeAheadLogging;
+        /**
+         * Value for PRAGMA synchronous: OFF, NORMAL, FULL or EXTRA, or null for the platform's
+         * setting. Must be null with write-ahead logging, where the platform always sets it on
+         * each connection itself; see {@link ItemDbHelper#onConfigure}.
+         */
+        public final String synchronous;
+        /** Page cache size of the primary connection, in KiB. */
+        public final int cacheSizeKb;
+        /** Upper bound for PRAGMA mmap_size in bytes, 0 to disable. */
+        public final long mmapSizeBytes;
+
+        /**
+         * @throws IllegalArgumentException if synchronous is set along with write-ahead logging
+         */
+        public Tuning(boolean writeAheadLogging, String synchronous, int cacheSizeKb, long mmapSizeBytes) {
+            if (writeAheadLogging && synchronous != null) {
+                throw new IllegalArgumentException("synchronous can't be set with write-ahead logging");
+            }
+            this.writeAheadLogging = writeAheadLogging;
+            this.synchronous = synchronous;
+            this.cacheSizeKb = cacheSizeKb;
+            this.mmapSizeBytes = mmapSizeBytes;
+        }
+    }
+
+    /**
+     * The helper for the app database shared by ItemProvider and bulk jobs such as
+     * {@link ItemCsvImporter}, so they all go through one connection pool.
+     */
+    public static synchronized ItemDbHelper getInstance(Context context) {
+        if (sInstance == null)
+            sInstance = new ItemDbHelper(context.getApplicationContext());
+        return sInstance;
+    }
 
     public ItemDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, Tuning.DEFAULT);
+    }
+
+    public ItemDbHelper(Context context, String databaseName, Tuning tuning) {
+        super(context, databaseName, null, DATABASE_VERSION);
+        mTuning = tuning;
+        // Lets ItemProvider.query run on its own connection while a write is in progress.
+        setWriteAheadLoggingEnabled(tuning.writeAheadLogging);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Off by default in SQLite; keeps items from pointing at a deleted supplier.
+        db.setForeignKeyConstraintsEnabled(true);
+        // onConfigure runs once per open, not once per pooled connection, and SQLite counts
+        // these PRAGMAs as read-only statements, which a WAL pool may run on any reader
+        // connection. Without write-ahead logging there is just the one connection.
+        if (!mTuning.writeAheadLogging || db.isReadOnly()) {
+            if (mTuning.synchronous != null)
+                execPragma(db, "PRAGMA synchronous = " + mTuning.synchronous);
+            applyCacheTuning(db);
+            return;
+        }
+        // A transaction holds the primary connection, the one every write runs on. synchronous
+        // may not change inside one, which is why Tuning leaves it to the platform in WAL mode;
+        // SQLiteConnection sets its WAL sync mode on each connection. Reader connections keep SQLite's default
+        // page cache and no mmap; API 30's execPerConnectionSQL is the first API to reach them.
+        db.beginTransactionNonExclusive();
+        try {
+            applyCacheTuning(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void applyCacheTuning(SQLiteDatabase db) {
+        // A negative cache_size is a size in KiB rather than a number of pages.
+        execPragma(db, "PRAGMA cache_size = -" + mTuning.cacheSizeKb);
+        execPragma(db, "PRAGMA mmap_size = " + mTuning.mmapSizeBytes);
+    }
+
+    /**
+     * Runs a PRAGMA through rawQuery, since some of them return a row and execSQL rejects those.
+     */
+    private static void execPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery(pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
+        // Fresh installs go through the same steps as upgrades, so both end with the same schema.
+        createVersion1(db);
+        onUpgrade(db, 1, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            Log.i(LOG_TAG, "Migrating " + DATABASE_NAME + " to version " + version);
+            migrateTo(db, version);
+        }
+    }
+
+    /**
+     * The schema as first released. Never change it; schema changes go into a new step of
+     * {@link #migrateTo} together with a bump of DATABASE_VERSION.
+     */
+    static void createVersion1(SQLiteDatabase db) {
         String SQL_CREATE_ITEMS_TABLE = "CREATE TABLE " + ItemEntry.TABLE_NAME + " ("
                 + ItemEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
                 + ItemEntry.COLUMN_ITEM_NAME + " TEXT NOT NULL, "
@@ -33,7 +184,513 @@ public class ItemDbHelper extends SQLiteOpenHelper {
         db.execSQL(SQL_CREATE_ITEMS_TABLE);
     }
 
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    /**
+     * Brings the schema from {@code version - 1} to {@code version}. Runs inside the transaction
+     * SQLiteOpenHelper opens around onCreate/onUpgrade.
+     */
+    private static void migrateTo(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 2:
+                db.execSQL(SQL_CREATE_NAME_INDEX);
+                db.execSQL(SQL_CREATE_SUPPLIER_INDEX);
+                db.execSQL(SQL_CREATE_QUANTITY_INDEX);
+                break;
+            case 3:
+                migratePriceToMinorUnits(db);
+                // The version 2 indexes went away with the old table.
+                db.execSQL(SQL_CREATE_NAME_INDEX);
+                db.execSQL(SQL_CREATE_SUPPLIER_INDEX);
+                db.execSQL(SQL_CREATE_QUANTITY_INDEX);
+                // Price sorting and range filters.
+                db.execSQL("CREATE INDEX " + INDEX_ITEMS_PRICE + " ON " + ItemEntry.TABLE_NAME
+                        + " (" + ItemEntry.COLUMN_ITEM_PRICE + ")");
+                break;
+            case 4:
+                createSearchIndex(db);
+                break;
+            case 5:
+                createSummary(db);
+                break;
+            case 6:
+                addReorderThreshold(db);
+                break;
+            case 7:
+                normalizeSuppliers(db);
+                break;
+            case 8:
+                createStockLedger(db);
+                break;
+            case 9:
+                createImageRefs(db);
+                break;
+            case 10:
+                createChangeLog(db);
+                break;
+            case 11:
+                keepLedgerOfDeletedItems(db);
+                break;
+            default:
+                throw new IllegalStateException("No migration to database version " + version);
+        }
+    }
+
+    /**
+     * Full-text index over item name and supplier. It is an external-content FTS4 table, so the
+     * text is stored only once, in items; triggers keep the index in step with the table.
+     * Updates that touch neither column, like quantity changes, do not reindex.
+     */
+    private static void createSearchIndex(SQLiteDatabase db) {
+        String fts = ItemEntry.FTS_TABLE_NAME;
+        String indexedColumns = ItemEntry.COLUMN_ITEM_NAME + ", " + ItemEntry.COLUMN_ITEM_SUPPLIER;
+        String insertNew = "INSERT INTO " + fts + " (docid, " + indexedColumns + ") VALUES (new."
+                + ItemEntry._ID + ", new." + ItemEntry.COLUMN_ITEM_NAME + ", new."
+                + ItemEntry.COLUMN_ITEM_SUPPLIER + "); END";
+        // With external content, FTS reads the old text from items, so removal must run BEFORE.
+        String deleteOld = "DELETE FROM " + fts + " WHERE docid = old." + ItemEntry._ID + "; END";
+        db.execSQL("CREATE VIRTUAL TABLE " + fts + " USING fts4(content=\"" + ItemEntry.TABLE_NAME
+                + "\", " + indexedColumns + ")");
+        db.execSQL("CREATE TRIGGER " + fts + "_after_insert AFTER INSERT ON " + ItemEntry.TABLE_NAME
+                + " BEGIN " + insertNew);
+        db.execSQL("CREATE TRIGGER " + fts + "_before_update BEFORE UPDATE OF " + indexedColumns
+                + " ON " + ItemEntry.TABLE_NAME + " BEGIN " + deleteOld);
+        db.execSQL("CREATE TRIGGER " + fts + "_after_update AFTER UPDATE OF " + indexedColumns
+                + " ON " + ItemEntry.TABLE_NAME + " BEGIN " + insertNew);
+        db.execSQL("CREATE TRIGGER " + fts + "_before_delete BEFORE DELETE ON " + ItemEntry.TABLE_NAME
+                + " BEGIN " + deleteOld);
+        db.execSQL("INSERT INTO " + fts + " (" + fts + ") VALUES ('rebuild')");
+    }
+
+    /**
+     * The single row of stock totals behind {@link SummaryEntry}, filled from the current items
+     * once and from then on adjusted by triggers with the difference each write makes, so it is
+     * never rebuilt by a scan. Updates that change neither price nor quantity do not touch it.
+     */
+    private static void createSummary(SQLiteDatabase db) {
+        String summary = SummaryEntry.TABLE_NAME;
+        db.execSQL("CREATE TABLE " + summary + " ("
+                + SummaryEntry._ID + " INTEGER PRIMARY KEY CHECK (" + SummaryEntry._ID + " = 1), "
+                + SummaryEntry.COLUMN_ITEM_COUNT + " INTEGER NOT NULL, "
+                + SummaryEntry.COLUMN_TOTAL_UNITS + " INTEGER NOT NULL, "
+                + SummaryEntry.COLUMN_TOTAL_VALUE + " INTEGER NOT NULL, "
+                + SummaryEntry.COLUMN_LOW_STOCK_COUNT + " INTEGER NOT NULL)");
+        db.execSQL("INSERT INTO " + summary + " SELECT 1, COUNT(*), "
+                + "IFNULL(SUM(" + ItemEntry.COLUMN_ITEM_QUANTITY + "), 0), "
+                + "IFNULL(SUM(" + ItemEntry.COLUMN_ITEM_PRICE + " * " + ItemEntry.COLUMN_ITEM_QUANTITY + "), 0), "
+                + "IFNULL(SUM(" + ItemEntry.COLUMN_ITEM_QUANTITY + " <= " + ItemEntry.DEFAULT_REORDER_THRESHOLD
+                + "), 0) FROM " + ItemEntry.TABLE_NAME);
+        createSummaryTriggers(db, false);
+    }
+
+    /**
+     * Triggers adding each inserted, updated or deleted item's difference to the summary. Up to
+     * version 5 every item used the default reorder threshold; since then each has its own.
+     */
+    private static void createSummaryTriggers(SQLiteDatabase db, boolean perItemThreshold) {
+        String summary = SummaryEntry.TABLE_NAME;
+        String update = "UPDATE " + summary + " SET ";
+        String updatedColumns = ItemEntry.COLUMN_ITEM_PRICE + ", " + ItemEntry.COLUMN_ITEM_QUANTITY;
+        if (perItemThreshold)
+            updatedColumns += ", " + ItemEntry.COLUMN_REORDER_THRESHOLD;
+        db.execSQL("CREATE TRIGGER " + summary + "_after_insert AFTER INSERT ON " + ItemEntry.TABLE_NAME
+                + " BEGIN " + update + summaryDelta("new", "+", perItemThreshold) + "; END");
+        db.execSQL("CREATE TRIGGER " + summary + "_after_update AFTER UPDATE OF " + updatedColumns
+                + " ON " + ItemEntry.TABLE_NAME + " BEGIN " + update + summaryDelta("old", "-", perItemThreshold)
+                + "; " + update + summaryDelta("new", "+", perItemThreshold) + "; END");
+        db.execSQL("CREATE TRIGGER " + summary + "_after_delete AFTER DELETE ON " + ItemEntry.TABLE_NAME
+                + " BEGIN " + update + summaryDelta("old", "-", perItemThreshold) + "; END");
+    }
+
+    private static void dropSummaryTriggers(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER " + SummaryEntry.TABLE_NAME + "_after_insert");
+        db.execSQL("DROP TRIGGER " + SummaryEntry.TABLE_NAME + "_after_update");
+        db.execSQL("DROP TRIGGER " + SummaryEntry.TABLE_NAME + "_after_delete");
+    }
+
+    /**
+     * The SET list that adds ({@code "+"}) or removes ({@code "-"}) the trigger row {@code row}
+     * ("new" or "old") to or from the summary totals.
+     */
+    private static String summaryDelta(String row, String sign, boolean perItemThreshold) {
+        String quantity = row + "." + ItemEntry.COLUMN_ITEM_QUANTITY;
+        String threshold = perItemThreshold ? row + "." + ItemEntry.COLUMN_REORDER_THRESHOLD
+                : String.valueOf(ItemEntry.DEFAULT_REORDER_THRESHOLD);
+        return SummaryEntry.COLUMN_ITEM_COUNT + " = " + SummaryEntry.COLUMN_ITEM_COUNT + " " + sign + " 1, "
+                + SummaryEntry.COLUMN_TOTAL_UNITS + " = " + SummaryEntry.COLUMN_TOTAL_UNITS + " " + sign
+                + " " + quantity + ", "
+                + SummaryEntry.COLUMN_TOTAL_VALUE + " = " + SummaryEntry.COLUMN_TOTAL_VALUE + " " + sign
+                + " " + row + "." + ItemEntry.COLUMN_ITEM_PRICE + " * " + quantity + ", "
+                + SummaryEntry.COLUMN_LOW_STOCK_COUNT + " = " + SummaryEntry.COLUMN_LOW_STOCK_COUNT + " " + sign
+                + " (" + quantity + " <= " + threshold + ")";
+    }
+
+    /**
+     * Adds the per-item reorder threshold, starting every item at the default that the summary
+     * counted with so far, and switches the summary triggers over to it. Low-stock items get a
+     * partial index holding only them: it stays as small as the number of items running out, and
+     * a quantity change only touches it when the item crosses its threshold.
+     */
+    private static void addReorderThreshold(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + ItemEntry.TABLE_NAME + " ADD COLUMN " + ItemEntry.COLUMN_REORDER_THRESHOLD
+                + " INTEGER NOT NULL DEFAULT " + ItemEntry.DEFAULT_REORDER_THRESHOLD);
+        dropSummaryTriggers(db);
+        createSummaryTriggers(db, true);
+        createLowStockIndex(db);
+    }
+
+    private static void createLowStockIndex(SQLiteDatabase db) {
+        if (supportsPartialIndexes(db)) {
+            // Its WHERE clause must stay the same as the queries' for SQLite to use it.
+            db.execSQL("CREATE INDEX " + INDEX_ITEMS_LOW_STOCK + " ON " + ItemEntry.TABLE_NAME
+                    + " (" + ItemEntry.COLUMN_ITEM_NAME + ") WHERE " + ItemEntry.LOW_STOCK_SELECTION);
+        } else {
+            Log.w(LOG_TAG, "SQLite " + sqliteVersion(db) + " has no partial indexes, low stock queries will scan");
+        }
+    }
+
+    /**
+     * Partial indexes came with SQLite 3.8.0, i.e. Android 5.0; older releases reject the syntax.
+     */
+    static boolean supportsPartialIndexes(SQLiteDatabase db) {
+        String[] version = sqliteVersion(db).split("\\.");
+        int major = Integer.parseInt(version[0]);
+        int minor = Integer.parseInt(version[1]);
+        return major > 3 || (major == 3 && minor >= 8);
+    }
+
+    private static String sqliteVersion(SQLiteDatabase db) {
+        return DatabaseUtils.stringForQuery(db, "SELECT sqlite_version()", null);
+    }
+
+    /**
+     * Moves supplier name and email out of items into the suppliers table, one row per distinct
+     * pair, and gives items a supplier_id referencing it instead. The items table is rebuilt for
+     * that, so its indexes and triggers are created again, and the search index is replaced by
+     * one that gets the supplier name from the suppliers table. Item ids and the AUTOINCREMENT
+     * counter are kept.
+     */
+    private static void normalizeSuppliers(SQLiteDatabase db) {
+        String oldTable = ItemEntry.TABLE_NAME + "_v6";
+        String fts = ItemEntry.FTS_TABLE_NAME;
+        db.execSQL("CREATE TABLE " + SupplierEntry.TABLE_NAME + " ("
+                + SupplierEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL, "
+                + SupplierEntry.COLUMN_SUPPLIER_EMAIL + " TEXT NOT NULL, "
+                + "UNIQUE (" + SupplierEntry.COLUMN_SUPPLIER_NAME + ", " + SupplierEntry.COLUMN_SUPPLIER_EMAIL + "))");
+        db.execSQL("INSERT INTO " + SupplierEntry.TABLE_NAME + " (" + SupplierEntry.COLUMN_SUPPLIER_NAME
+                + ", " + SupplierEntry.COLUMN_SUPPLIER_EMAIL + ") SELECT DISTINCT "
+                + ItemEntry.COLUMN_ITEM_SUPPLIER + ", " + ItemEntry.COLUMN_SUPPLIER_EMAIL + " FROM "
+                + ItemEntry.TABLE_NAME + " ORDER BY 1, 2");
+
+        // Newer SQLite checks the triggers of a renamed table, so those naming items_fts go first.
+        db.execSQL("DROP TRIGGER " + fts + "_after_insert");
+        db.execSQL("DROP TRIGGER " + fts + "_before_update");
+        db.execSQL("DROP TRIGGER " + fts + "_after_update");
+        db.execSQL("DROP TRIGGER " + fts + "_before_delete");
+        db.execSQL("DROP TABLE " + fts);
+        dropSummaryTriggers(db);
+        long sequence = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(seq), 0) FROM sqlite_sequence"
+                + " WHERE name = ?", new String[]{ItemEntry.TABLE_NAME});
+        db.execSQL("ALTER TABLE " + ItemEntry.TABLE_NAME + " RENAME TO " + oldTable);
+        db.execSQL("CREATE TABLE " + ItemEntry.TABLE_NAME + " ("
+                + ItemEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ItemEntry.COLUMN_ITEM_NAME + " TEXT NOT NULL, "
+                + ItemEntry.COLUMN_ITEM_PRICE + " INTEGER NOT NULL DEFAULT 0, "
+                + ItemEntry.COLUMN_ITEM_QUANTITY + " INTEGER NOT NULL, "
+                + ItemEntry.COLUMN_ITEM_IMAGE + " TEXT, "
+                + ItemEntry.COLUMN_SUPPLIER_ID + " INTEGER NOT NULL REFERENCES "
+                + SupplierEntry.TABLE_NAME + " (" + SupplierEntry._ID + "), "
+                + ItemEntry.COLUMN_REORDER_THRESHOLD + " INTEGER NOT NULL DEFAULT "
+                + ItemEntry.DEFAULT_REORDER_THRESHOLD + ")");
+        String[] copiedColumns = {ItemEntry._ID, ItemEntry.COLUMN_ITEM_NAME, ItemEntry.COLUMN_ITEM_PRICE,
+                ItemEntry.COLUMN_ITEM_QUANTITY, ItemEntry.COLUMN_ITEM_IMAGE, ItemEntry.COLUMN_REORDER_THRESHOLD};
+        db.execSQL("INSERT INTO " + ItemEntry.TABLE_NAME + " (" + TextUtils.join(", ", copiedColumns) + ", "
+                + ItemEntry.COLUMN_SUPPLIER_ID + ") SELECT o." + TextUtils.join(", o.", copiedColumns)
+                + ", s." + SupplierEntry._ID + " FROM " + oldTable + " o JOIN " + SupplierEntry.TABLE_NAME
+                + " s ON s." + SupplierEntry.COLUMN_SUPPLIER_NAME + " = o." + ItemEntry.COLUMN_ITEM_SUPPLIER
+                + " AND s." + SupplierEntry.COLUMN_SUPPLIER_EMAIL + " = o." + ItemEntry.COLUMN_SUPPLIER_EMAIL);
+        db.execSQL("DROP TABLE " + oldTable);
+        restoreSequence(db, ItemEntry.TABLE_NAME, sequence);
+
+        db.execSQL(SQL_CREATE_NAME_INDEX);
+        db.execSQL(SQL_CREATE_SUPPLIER_ID_INDEX);
+        db.execSQL(SQL_CREATE_QUANTITY_INDEX);
+        db.execSQL("CREATE INDEX " + INDEX_ITEMS_PRICE + " ON " + ItemEntry.TABLE_NAME
+                + " (" + ItemEntry.COLUMN_ITEM_PRICE + ")");
+        createLowStockIndex(db);
+        createSummaryTriggers(db, true);
+        // Lists every column, so a migration adding columns to items must recreate it.
+        db.execSQL("CREATE VIEW " + ItemEntry.VIEW_NAME + " AS SELECT "
+                + "i." + ItemEntry._ID + " AS " + ItemEntry._ID + ", "
+                + "i." + ItemEntry.COLUMN_ITEM_NAME + " AS " + ItemEntry.COLUMN_ITEM_NAME + ", "
+                + "i." + ItemEntry.COLUMN_ITEM_PRICE + " AS " + ItemEntry.COLUMN_ITEM_PRICE + ", "
+                + "i." + ItemEntry.COLUMN_ITEM_QUANTITY + " AS " + ItemEntry.COLUMN_ITEM_QUANTITY + ", "
+                + "i." + ItemEntry.COLUMN_ITEM_IMAGE + " AS " + ItemEntry.COLUMN_ITEM_IMAGE + ", "
+                + "i." + ItemEntry.COLUMN_SUPPLIER_ID + " AS " + ItemEntry.COLUMN_SUPPLIER_ID + ", "
+                + "i." + ItemEntry.COLUMN_REORDER_THRESHOLD + " AS " + ItemEntry.COLUMN_REORDER_THRESHOLD + ", "
+                + "s." + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS " + ItemEntry.COLUMN_ITEM_SUPPLIER + ", "
+                + "s." + SupplierEntry.COLUMN_SUPPLIER_EMAIL + " AS " + ItemEntry.COLUMN_SUPPLIER_EMAIL
+                + " FROM " + ItemEntry.TABLE_NAME + " i JOIN " + SupplierEntry.TABLE_NAME + " s ON s."
+                + SupplierEntry._ID + " = i." + ItemEntry.COLUMN_SUPPLIER_ID);
+        createSupplierSearchIndex(db);
+    }
+
+    /**
+     * Full-text index over item name and supplier name. The supplier name no longer lives in
+     * items, so this is a regular FTS4 table holding its own copy of the text, kept in step by
+     * triggers on both tables. Renaming a supplier reindexes just that supplier's items.
+     */
+    private static void createSupplierSearchIndex(SQLiteDatabase db) {
+        String fts = ItemEntry.FTS_TABLE_NAME;
+        String indexedColumns = ItemEntry.COLUMN_ITEM_NAME + ", " + ItemEntry.COLUMN_ITEM_SUPPLIER;
+        String supplierName = "(SELECT " + SupplierEntry.COLUMN_SUPPLIER_NAME + " FROM " + SupplierEntry.TABLE_NAME
+                + " WHERE " + SupplierEntry._ID + " = new." + ItemEntry.COLUMN_SUPPLIER_ID + ")";
+        db.execSQL("CREATE VIRTUAL TABLE " + fts + " USING fts4(" + indexedColumns + ")");
+        db.execSQL("INSERT INTO " + fts + " (docid, " + indexedColumns + ") SELECT " + ItemEntry._ID + ", "
+                + indexedColumns + " FROM " + ItemEntry.VIEW_NAME);
+        db.execSQL("CREATE TRIGGER " + fts + "_after_insert AFTER INSERT ON " + ItemEntry.TABLE_NAME
+                + " BEGIN INSERT INTO " + fts + " (docid, " + indexedColumns + ") VALUES (new."
+                + ItemEntry._ID + ", new." + ItemEntry.COLUMN_ITEM_NAME + ", " + supplierName + "); END");
+        db.execSQL("CREATE TRIGGER " + fts + "_after_update AFTER UPDATE OF " + ItemEntry.COLUMN_ITEM_NAME
+                + ", " + ItemEntry.COLUMN_SUPPLIER_ID + " ON " + ItemEntry.TABLE_NAME + " BEGIN UPDATE " + fts
+                + " SET " + ItemEntry.COLUMN_ITEM_NAME + " = new." + ItemEntry.COLUMN_ITEM_NAME + ", "
+                + ItemEntry.COLUMN_ITEM_SUPPLIER + " = " + supplierName + " WHERE docid = new." + ItemEntry._ID
+                + "; END");
+        db.execSQL("CREATE TRIGGER " + fts + "_after_delete AFTER DELETE ON " + ItemEntry.TABLE_NAME
+                + " BEGIN DELETE FROM " + fts + " WHERE docid = old." + ItemEntry._ID + "; END");
+        db.execSQL("CREATE TRIGGER " + fts + "_after_supplier_update AFTER UPDATE OF "
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " ON " + SupplierEntry.TABLE_NAME + " BEGIN UPDATE "
+                + fts + " SET " + ItemEntry.COLUMN_ITEM_SUPPLIER + " = new." + SupplierEntry.COLUMN_SUPPLIER_NAME
+                + " WHERE docid IN (SELECT " + ItemEntry._ID + " FROM " + ItemEntry.TABLE_NAME + " WHERE "
+                + ItemEntry.COLUMN_SUPPLIER_ID + " = new." + SupplierEntry._ID + "); END");
+    }
+
+    /**
+     * The append-only ledger of quantity changes and the per-day snapshots that old movements
+     * are compacted into. Triggers append a movement for each insert or quantity update of an
+     * item, whichever path the write takes, so a quantity change stays one UPDATE plus one
+     * INSERT. Existing stock is entered as an opening movement, so every item's movements and
+     * snapshots add up to its quantity. History goes with the item when it is deleted, until
+     * {@link #keepLedgerOfDeletedItems}.
+     */
+    private static void createStockLedger(SQLiteDatabase db) {
+        String movements = StockHistoryEntry.MOVEMENTS_TABLE_NAME;
+        createLedgerTables(db, movements, StockHistoryEntry.SNAPSHOTS_TABLE_NAME,
+                " REFERENCES " + ItemEntry.TABLE_NAME + " (" + ItemEntry._ID + ") ON DELETE CASCADE");
+        createLedgerIndexes(db);
+        db.execSQL("INSERT INTO " + movements + " (" + StockHistoryEntry.COLUMN_ITEM_ID + ", "
+                + StockHistoryEntry.COLUMN_DELTA + ", " + StockHistoryEntry.COLUMN_CREATED_AT + ") SELECT "
+                + ItemEntry._ID + ", " + ItemEntry.COLUMN_ITEM_QUANTITY + ", " + SQL_NOW_MILLIS + " FROM "
+                + ItemEntry.TABLE_NAME + " WHERE " + ItemEntry.COLUMN_ITEM_QUANTITY + " != 0");
+        createLedgerTriggers(db);
+    }
+
+    /**
+     * Rebuilds the ledger tables without the cascading delete, so the history of a deleted item
+     * stays, and records the stock the item still had as a final movement out. Item ids are
+     * never reused, so those rows can't be taken for another item's.
+     */
+    private static void keepLedgerOfDeletedItems(SQLiteDatabase db) {
+        String movements = StockHistoryEntry.MOVEMENTS_TABLE_NAME;
+        String snapshots = StockHistoryEntry.SNAPSHOTS_TABLE_NAME;
+        // The triggers name the movements table; they must not be around while it is replaced.
+        db.execSQL("DROP TRIGGER " + movements + "_after_insert");
+        db.execSQL("DROP TRIGGER " + movements + "_after_update");
+        createLedgerTables(db, movements + "_new", snapshots + "_new", "");
+        for (String table : new String[]{movements, snapshots}) {
+            db.execSQL("INSERT INTO " + table + "_new SELECT * FROM " + table);
+            db.execSQL("DROP TABLE " + table);
+            db.execSQL("ALTER TABLE " + table + "_new RENAME TO " + table);
+        }
+        createLedgerIndexes(db);
+        createLedgerTriggers(db);
+        db.execSQL("CREATE TRIGGER " + movements + "_after_delete AFTER DELETE ON " + ItemEntry.TABLE_NAME
+                + " WHEN old." + ItemEntry.COLUMN_ITEM_QUANTITY + " != 0 BEGIN INSERT INTO " + movements + " ("
+                + StockHistoryEntry.COLUMN_ITEM_ID + ", " + StockHistoryEntry.COLUMN_DELTA + ", "
+                + StockHistoryEntry.COLUMN_CREATED_AT + ") VALUES (old." + ItemEntry._ID + ", -old."
+                + ItemEntry.COLUMN_ITEM_QUANTITY + ", " + SQL_NOW_MILLIS + "); END");
+    }
+
+    private static void createLedgerTables(SQLiteDatabase db, String movements, String snapshots,
+                                           String itemConstraint) {
+        String itemReference = StockHistoryEntry.COLUMN_ITEM_ID + " INTEGER NOT NULL" + itemConstraint + ", ";
+        db.execSQL("CREATE TABLE " + movements + " ("
+                + StockHistoryEntry._ID + " INTEGER PRIMARY KEY, "
+                + itemReference
+                + StockHistoryEntry.COLUMN_DELTA + " INTEGER NOT NULL, "
+                + StockHistoryEntry.COLUMN_CREATED_AT + " INTEGER NOT NULL)");
+        // A day compacted twice, e.g. after a clock change, just has two rows; readers sum them.
+        db.execSQL("CREATE TABLE " + snapshots + " ("
+                + StockHistoryEntry._ID + " INTEGER PRIMARY KEY, "
+                + itemReference
+                + StockHistoryEntry.COLUMN_DAY + " INTEGER NOT NULL, "
+                + StockHistoryEntry.COLUMN_UNITS_IN + " INTEGER NOT NULL, "
+                + StockHistoryEntry.COLUMN_UNITS_OUT + " INTEGER NOT NULL)");
+    }
+
+    private static void createLedgerIndexes(SQLiteDatabase db) {
+        String movements = StockHistoryEntry.MOVEMENTS_TABLE_NAME;
+        String snapshots = StockHistoryEntry.SNAPSHOTS_TABLE_NAME;
+        // Per-item history in time order.
+        db.execSQL("CREATE INDEX " + movements + "_item_idx ON " + movements + " ("
+                + StockHistoryEntry.COLUMN_ITEM_ID + ", " + StockHistoryEntry.COLUMN_CREATED_AT + ")");
+        db.execSQL("CREATE INDEX " + snapshots + "_item_idx ON " + snapshots + " ("
+                + StockHistoryEntry.COLUMN_ITEM_ID + ", " + StockHistoryEntry.COLUMN_DAY + ")");
+    }
+
+    private static void createLedgerTriggers(SQLiteDatabase db) {
+        String movements = StockHistoryEntry.MOVEMENTS_TABLE_NAME;
+        String append = " BEGIN INSERT INTO " + movements + " (" + StockHistoryEntry.COLUMN_ITEM_ID + ", "
+                + StockHistoryEntry.COLUMN_DELTA + ", " + StockHistoryEntry.COLUMN_CREATED_AT + ") VALUES (new."
+                + ItemEntry._ID + ", new." + ItemEntry.COLUMN_ITEM_QUANTITY + " - ";
+        db.execSQL("CREATE TRIGGER " + movements + "_after_insert AFTER INSERT ON " + ItemEntry.TABLE_NAME
+                + " WHEN new." + ItemEntry.COLUMN_ITEM_QUANTITY + " != 0"
+                + append + "0, " + SQL_NOW_MILLIS + "); END");
+        db.execSQL("CREATE TRIGGER " + movements + "_after_update AFTER UPDATE OF "
+                + ItemEntry.COLUMN_ITEM_QUANTITY + " ON " + ItemEntry.TABLE_NAME
+                + " WHEN new." + ItemEntry.COLUMN_ITEM_QUANTITY + " != old." + ItemEntry.COLUMN_ITEM_QUANTITY
+                + append + "old." + ItemEntry.COLUMN_ITEM_QUANTITY + ", " + SQL_NOW_MILLIS + "); END");
+    }
+
+    /**
+     * Reference counts of item images, so {@link ImageStore} can tell which stored images no
+     * item uses any more without scanning items. Triggers count each insert, delete and image
+     * change; rows that drop to zero stay until the store collects them, so a count going from
+     * one to zero and back in one edit doesn't lose the file in between.
+     */
+    private static void createImageRefs(SQLiteDatabase db) {
+        String refs = ImageRefEntry.TABLE_NAME;
+        db.execSQL("CREATE TABLE " + refs + " ("
+                + ImageRefEntry.COLUMN_IMAGE + " TEXT PRIMARY KEY, "
+                + ImageRefEntry.COLUMN_REF_COUNT + " INTEGER NOT NULL)");
+        db.execSQL("INSERT INTO " + refs + " (" + ImageRefEntry.COLUMN_IMAGE + ", " + ImageRefEntry.COLUMN_REF_COUNT
+                + ") SELECT " + ItemEntry.COLUMN_ITEM_IMAGE + ", COUNT(*) FROM " + ItemEntry.TABLE_NAME
+                + " WHERE " + ItemEntry.COLUMN_ITEM_IMAGE + " != '' GROUP BY " + ItemEntry.COLUMN_ITEM_IMAGE);
+        String addNew = " INSERT OR IGNORE INTO " + refs + " VALUES (new." + ItemEntry.COLUMN_ITEM_IMAGE + ", 0); "
+                + "UPDATE " + refs + " SET " + ImageRefEntry.COLUMN_REF_COUNT + " = "
+                + ImageRefEntry.COLUMN_REF_COUNT + " + 1 WHERE " + ImageRefEntry.COLUMN_IMAGE + " = new."
+                + ItemEntry.COLUMN_ITEM_IMAGE + ";";
+        String removeOld = " UPDATE " + refs + " SET " + ImageRefEntry.COLUMN_REF_COUNT + " = "
+                + ImageRefEntry.COLUMN_REF_COUNT + " - 1 WHERE " + ImageRefEntry.COLUMN_IMAGE + " = old."
+                + ItemEntry.COLUMN_ITEM_IMAGE + ";";
+        db.execSQL("CREATE TRIGGER " + refs + "_after_insert AFTER INSERT ON " + ItemEntry.TABLE_NAME
+                + " WHEN new." + ItemEntry.COLUMN_ITEM_IMAGE + " != '' BEGIN" + addNew + " END");
+        db.execSQL("CREATE TRIGGER " + refs + "_after_delete AFTER DELETE ON " + ItemEntry.TABLE_NAME
+                + " WHEN old." + ItemEntry.COLUMN_ITEM_IMAGE + " != '' BEGIN" + removeOld + " END");
+        // Split in two so an image set from or to "" counts only the side that is an image.
+        db.execSQL("CREATE TRIGGER " + refs + "_after_update_new AFTER UPDATE OF " + ItemEntry.COLUMN_ITEM_IMAGE
+                + " ON " + ItemEntry.TABLE_NAME + " WHEN new." + ItemEntry.COLUMN_ITEM_IMAGE + " IS NOT old."
+                + ItemEntry.COLUMN_ITEM_IMAGE + " AND new." + ItemEntry.COLUMN_ITEM_IMAGE + " != '' BEGIN"
+                + addNew + " END");
+        db.execSQL("CREATE TRIGGER " + refs + "_after_update_old AFTER UPDATE OF " + ItemEntry.COLUMN_ITEM_IMAGE
+                + " ON " + ItemEntry.TABLE_NAME + " WHEN new." + ItemEntry.COLUMN_ITEM_IMAGE + " IS NOT old."
+                + ItemEntry.COLUMN_ITEM_IMAGE + " AND old." + ItemEntry.COLUMN_ITEM_IMAGE + " != '' BEGIN"
+                + removeOld + " END");
+    }
+
+    /**
+     * The change log behind since-token sync. AUTOINCREMENT makes the sequence strictly
+     * increasing even after the latest change is replaced, and the unique item_id lets each
+     * trigger replace the item's previous change, so the log never holds more than one row per
+     * item. Existing items are entered in _id order, so a first sync from 0 gets them all.
+     */
+    private static void createChangeLog(SQLiteDatabase db) {
+        String changes = ItemChangeEntry.TABLE_NAME;
+        db.execSQL("CREATE TABLE " + changes + " ("
+                + ItemChangeEntry.COLUMN_SEQUENCE + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ItemChangeEntry.COLUMN_ITEM_ID + " INTEGER NOT NULL UNIQUE, "
+                + ItemChangeEntry.COLUMN_DELETED + " INTEGER NOT NULL)");
+        String record = "INSERT OR REPLACE INTO " + changes + " (" + ItemChangeEntry.COLUMN_ITEM_ID + ", "
+                + ItemChangeEntry.COLUMN_DELETED + ") ";
+        db.execSQL(record + "SELECT " + ItemEntry._ID + ", 0 FROM " + ItemEntry.TABLE_NAME
+                + " ORDER BY " + ItemEntry._ID);
+        db.execSQL("CREATE TRIGGER " + changes + "_after_insert AFTER INSERT ON " + ItemEntry.TABLE_NAME
+                + " BEGIN " + record + "VALUES (new." + ItemEntry._ID + ", 0); END");
+        db.execSQL("CREATE TRIGGER " + changes + "_after_update AFTER UPDATE ON " + ItemEntry.TABLE_NAME
+                + " BEGIN " + record + "VALUES (new." + ItemEntry._ID + ", 0); END");
+        db.execSQL("CREATE TRIGGER " + changes + "_after_delete AFTER DELETE ON " + ItemEntry.TABLE_NAME
+                + " BEGIN " + record + "VALUES (old." + ItemEntry._ID + ", 1); END");
+        // Item rows carry their supplier's name and email, so a supplier change changes its items.
+        db.execSQL("CREATE TRIGGER " + changes + "_after_supplier_update AFTER UPDATE ON "
+                + SupplierEntry.TABLE_NAME + " BEGIN " + record + "SELECT " + ItemEntry._ID + ", 0 FROM "
+                + ItemEntry.TABLE_NAME + " WHERE " + ItemEntry.COLUMN_SUPPLIER_ID + " = new."
+                + SupplierEntry._ID + "; END");
+    }
+
+    /**
+     * Recreates the items table with price as INTEGER minor units, since SQLite cannot change a
+     * column type in place. Prices were free text, read by {@link #parseLegacyPrice}.
+     */
+    private static void migratePriceToMinorUnits(SQLiteDatabase db) {
+        String oldTable = ItemEntry.TABLE_NAME + "_v2";
+        long sequence = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(seq), 0) FROM sqlite_sequence"
+                + " WHERE name = ?", new String[]{ItemEntry.TABLE_NAME});
+        db.execSQL("ALTER TABLE " + ItemEntry.TABLE_NAME + " RENAME TO " + oldTable);
+        db.execSQL("CREATE TABLE " + ItemEntry.TABLE_NAME + " ("
+                + ItemEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ItemEntry.COLUMN_ITEM_NAME + " TEXT NOT NULL, "
+                + ItemEntry.COLUMN_ITEM_PRICE + " INTEGER NOT NULL DEFAULT 0, "
+                + ItemEntry.COLUMN_ITEM_QUANTITY + " INTEGER NOT NULL, "
+                + ItemEntry.COLUMN_ITEM_IMAGE + " TEXT, "
+                + ItemEntry.COLUMN_ITEM_SUPPLIER + " TEXT NOT NULL, "
+                + ItemEntry.COLUMN_SUPPLIER_EMAIL + " TEXT NOT NULL);");
+
+        String[] columns = {ItemEntry._ID, ItemEntry.COLUMN_ITEM_NAME, ItemEntry.COLUMN_ITEM_PRICE,
+                ItemEntry.COLUMN_ITEM_QUANTITY, ItemEntry.COLUMN_ITEM_IMAGE, ItemEntry.COLUMN_ITEM_SUPPLIER,
+                ItemEntry.COLUMN_SUPPLIER_EMAIL};
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + ItemEntry.TABLE_NAME
+                + " (" + TextUtils.join(", ", columns) + ") VALUES (?, ?, ?, ?, ?, ?, ?)");
+        Cursor cursor = db.query(oldTable, columns, null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                insert.clearBindings();
+                for (int i = 0; i < columns.length; i++) {
+                    if (i == 2)
+                        insert.bindLong(3, parseLegacyPrice(cursor.getLong(0), cursor.getString(2)));
+                    else if (cursor.isNull(i))
+                        insert.bindNull(i + 1);
+                    else
+                        insert.bindString(i + 1, cursor.getString(i));
+                }
+                insert.executeInsert();
+            }
+        } finally {
+            cursor.close();
+            insert.close();
+        }
+        db.execSQL("DROP TABLE " + oldTable);
+        restoreSequence(db, ItemEntry.TABLE_NAME, sequence);
+    }
+
+    /**
+     * Puts back the AUTOINCREMENT counter a rebuilt table had, so ids of deleted rows are not
+     * handed out again. The counter row only exists once a row was inserted, so it is added if
+     * the rebuilt table is empty.
+     */
+    private static void restoreSequence(SQLiteDatabase db, String table, long sequence) {
+        db.execSQL("UPDATE sqlite_sequence SET seq = MAX(seq, ?) WHERE name = ?", new Object[]{sequence, table});
+        db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT ?, ? WHERE NOT EXISTS"
+                + " (SELECT 1 FROM sqlite_sequence WHERE name = ?)", new Object[]{table, sequence, table});
+    }
+
+    /**
+     * Version 1 prices are the editor's digits-only text or the sample data's "45,000", so they
+     * are read with US grouping first, whatever the device locale. Other text is tried in the
+     * device locale, and text neither reads keeps only its digits, as whole currency units.
+     */
+    private static long parseLegacyPrice(long id, String price) {
+        if (price == null)
+            return 0;
+        try {
+            return PriceUtils.parse(price, Locale.US);
+        } catch (NumberFormatException e) {
+            // Not a US number; fall through to the device locale.
+        }
+        try {
+            return PriceUtils.parse(price);
+        } catch (NumberFormatException e) {
+            String digits = price.replaceAll("[^0-9]", "");
+            Log.w(LOG_TAG, "Item " + id + ": unparseable price \"" + price + "\", keeping " + digits);
+            return digits.isEmpty() ? 0 : PriceUtils.parse(digits, Locale.US);
+        }
     }
-}
\ No newline at end of file
+}
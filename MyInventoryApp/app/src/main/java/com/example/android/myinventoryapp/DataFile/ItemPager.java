@@ -0,0 +1,491 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.SummaryEntry;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Pages through the items sorted by name using the keyset URIs of {@link ItemEntry#buildPageUri}.
+ * Pages are read on a background thread and only {@link #MAX_CACHED_PAGES} of them are held in
+ * memory, so the footprint does not depend on the size of the catalog. Besides those, only the
+ * key (name and id) where each visited page starts is remembered. A page whose start is not
+ * known is read at an offset from the closest known one, so jumping to the end of the list
+ * costs one query.
+ * <p>
+ * With a search query set, the pager instead holds the ranked matches of
+ * {@link ItemEntry#buildSearchUri}, which are few enough to load at once. When only the low-stock
+ * items are shown without a query, they are paged like all items, through
+ * {@link ItemEntry#buildLowStockPageUri}.
+ * <p>
+ * Changes are reported through {@link Callback} as inserted, removed, moved and changed
+ * positions, so a RecyclerView adapter can forward them and rebind only the affected rows.
+ * <p>
+ * All public methods must be called on the main thread; the callback is invoked there too.
+ */
+public class ItemPager {
+
+    public static final String LOG_TAG = ItemPager.class.getSimpleName();
+    public static final int PAGE_SIZE = 50;
+    private static final int MAX_CACHED_PAGES = 8;
+    static final String[] PROJECTION = {
+            ItemEntry._ID,
+            ItemEntry.COLUMN_ITEM_NAME,
+            ItemEntry.COLUMN_ITEM_PRICE,
+            ItemEntry.COLUMN_ITEM_QUANTITY,
+            ItemEntry.COLUMN_ITEM_IMAGE};
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Told which positions changed, in the order the changes happened. Positions that are not
+     * loaded yet are reported as changed once their page arrives.
+     */
+    public interface Callback extends ListUpdateCallback {
+        /**
+         * Called when any row may have changed, e.g. after the first load or a new query.
+         */
+        void onPagesChanged();
+    }
+
+    /**
+     * One row of the list, copied out of the cursor so no cursor has to stay open.
+     */
+    public static class Item {
+        public final long id;
+        public final String name;
+        public final long price;
+        public final int quantity;
+        public final String image;
+
+        Item(long id, String name, long price, int quantity, String image) {
+            this.id = id;
+            this.name = name;
+            this.price = price;
+            this.quantity = quantity;
+            this.image = image;
+        }
+    }
+
+    private final ContentResolver mResolver;
+    private final Callback mCallback;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private int mCount;
+    // Least recently used page first, so the eldest entry is dropped when the cache is full.
+    private final LinkedHashMap<Integer, List<Item>> mPages =
+            new LinkedHashMap<Integer, List<Item>>(MAX_CACHED_PAGES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, List<Item>> eldest) {
+                    return size() > MAX_CACHED_PAGES;
+                }
+            };
+    // The last item of page n - 1, i.e. the key after which page n starts. Page 0 needs none.
+    private final SparseArray<Item> mPageStarts = new SparseArray<>();
+    private final Set<Integer> mRequestedPages = new HashSet<>();
+    // Bumped by reload() so results of loads started before it are dropped. Read by queued loads
+    // so they can skip work that is already stale, e.g. for each key typed into the search box.
+    private volatile int mGeneration;
+    private String mQuery;
+    private boolean mLowStockOnly;
+    private boolean mClosed;
+
+    public ItemPager(Context context, Callback callback) {
+        this(context.getContentResolver(), callback);
+    }
+
+    ItemPager(ContentResolver resolver, Callback callback) {
+        mResolver = resolver;
+        mCallback = callback;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the item at the position, or null while its page is being loaded.
+     */
+    public Item getItem(int position) {
+        int page = position / PAGE_SIZE;
+        List<Item> items = mPages.get(page);
+        if (items == null) {
+            if (!isSearching())
+                requestPage(page);
+            return null;
+        }
+        int index = position % PAGE_SIZE;
+        return index < items.size() ? items.get(index) : null;
+    }
+
+    /**
+     * Re-reads the count and the cached pages after the data changed. Pages keep their old rows
+     * until the new ones arrive. The contiguous run of cached pages around the one used last is
+     * read again from its start key and compared with the old rows on the background thread, so
+     * the callback only hears about the rows that actually changed. If an insert or delete
+     * before the run moved its start, everything is reported changed instead.
+     */
+    public void reload() {
+        final int generation = ++mGeneration;
+        mRequestedPages.clear();
+        final String query = mQuery;
+        final boolean lowStockOnly = mLowStockOnly;
+        final boolean searching = isSearching();
+        final int oldCount = mCount;
+        final int firstPage;
+        final List<Item> oldWindow;
+        if (mPages.isEmpty() || (searching && !mPages.containsKey(0))) {
+            firstPage = 0;
+            oldWindow = null;
+        } else if (searching) {
+            // Search results are all cached, from the first page on.
+            firstPage = 0;
+            oldWindow = new ArrayList<>();
+            for (int page = 0; mPages.containsKey(page); page++)
+                oldWindow.addAll(mPages.get(page));
+        } else {
+            int mostRecentPage = 0;
+            for (Integer page : mPages.keySet())
+                mostRecentPage = page;
+            int first = mostRecentPage;
+            while (first > 0 && mPages.containsKey(first - 1))
+                first--;
+            int last = mostRecentPage;
+            while (mPages.containsKey(last + 1))
+                last++;
+            firstPage = first;
+            oldWindow = new ArrayList<>((last - first + 1) * PAGE_SIZE);
+            for (int page = first; page <= last; page++)
+                oldWindow.addAll(mPages.get(page));
+        }
+        final Item anchor = firstPage == 0 ? null : mPageStarts.get(firstPage);
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mGeneration)
+                    return;
+                final int count;
+                final int requested;
+                final List<Item> newWindow;
+                if (searching) {
+                    // Search results are few enough to read whole.
+                    newWindow = readItems(querySearch(query, lowStockOnly));
+                    count = newWindow.size();
+                    requested = count + 1;
+                } else {
+                    count = queryItemCount(lowStockOnly);
+                    if (oldWindow == null || (anchor != null
+                            && countUpTo(anchor, lowStockOnly) != firstPage * PAGE_SIZE)) {
+                        newWindow = null;
+                        requested = 0;
+                    } else {
+                        // One more row per net insert, so an insert inside the run doesn't push its
+                        // last row out and show up as a removal. Capped at what the cache holds.
+                        requested = Math.max(oldWindow.size(),
+                                Math.min(oldWindow.size() + count - oldCount, MAX_CACHED_PAGES * PAGE_SIZE));
+                        newWindow = queryItems(anchor, lowStockOnly, requested);
+                    }
+                }
+                final DiffUtil.DiffResult diff = oldWindow == null || newWindow == null
+                        ? null : DiffUtil.calculateDiff(new ItemDiffCallback(oldWindow, newWindow));
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration || mClosed)
+                            return;
+                        mCount = count;
+                        mPages.clear();
+                        mPageStarts.clear();
+                        if (newWindow != null)
+                            putWindow(diff == null ? 0 : firstPage, anchor, newWindow, requested);
+                        if (diff == null) {
+                            mCallback.onPagesChanged();
+                            return;
+                        }
+                        diff.dispatchUpdatesTo(new OffsetCallback(firstPage * PAGE_SIZE));
+                        // Rows past the run were never loaded; just fix up the count at the end.
+                        int dispatchedCount = oldCount + newWindow.size() - oldWindow.size();
+                        if (count > dispatchedCount)
+                            mCallback.onInserted(dispatchedCount, count - dispatchedCount);
+                        else if (count < dispatchedCount)
+                            mCallback.onRemoved(count, dispatchedCount - count);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Switches to the matches of the query, or back to all items when it is null or blank.
+     */
+    public void setQuery(String query) {
+        if (query != null && query.trim().isEmpty())
+            query = null;
+        if (query == null ? mQuery == null : query.equals(mQuery))
+            return;
+        mQuery = query;
+        mPages.clear();
+        mPageStarts.clear();
+        reload();
+    }
+
+    /**
+     * Switches to only the items at or below their reorder threshold, within the search
+     * matches if a query is set, or back to all of them.
+     */
+    public void setLowStockOnly(boolean lowStockOnly) {
+        if (lowStockOnly == mLowStockOnly)
+            return;
+        mLowStockOnly = lowStockOnly;
+        mPages.clear();
+        mPageStarts.clear();
+        reload();
+    }
+
+    private boolean isSearching() {
+        return mQuery != null;
+    }
+
+    public void close() {
+        mClosed = true;
+    }
+
+    /**
+     * Splits consecutive rows starting at the page into pages. A trailing partial page is kept
+     * only if it is the real end of the list, i.e. fewer rows came back than were requested.
+     */
+    private void putWindow(int firstPage, Item start, List<Item> items, int requested) {
+        for (int offset = 0; offset < items.size(); offset += PAGE_SIZE) {
+            List<Item> page = items.subList(offset, Math.min(offset + PAGE_SIZE, items.size()));
+            if (page.size() < PAGE_SIZE && items.size() >= requested)
+                break;
+            putPage(firstPage + offset / PAGE_SIZE, start, page);
+            start = page.get(page.size() - 1);
+        }
+        if (items.isEmpty() && firstPage == 0)
+            putPage(0, null, items);
+    }
+
+    /**
+     * Loads just the page. If its start key is not known, e.g. after a fast scroll, the page is
+     * read at an offset from the closest known start below it; the provider skips the rows in
+     * between on the name index, without reading them. One extra row in front of the page
+     * brings back its start key, so the pages around it can be read by key again.
+     */
+    private void requestPage(final int page) {
+        if (mClosed || mRequestedPages.contains(page))
+            return;
+        int first = page;
+        while (first > 0 && mPageStarts.get(first) == null)
+            first--;
+        final Item firstStart = mPageStarts.get(first);
+        final int skip = (page - first) * PAGE_SIZE;
+        final boolean lowStockOnly = mLowStockOnly;
+        final int generation = mGeneration;
+        mRequestedPages.add(page);
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mGeneration)
+                    return;
+                final Item start;
+                final List<Item> items;
+                if (skip == 0) {
+                    start = firstStart;
+                    items = queryItems(firstStart, lowStockOnly, PAGE_SIZE);
+                } else {
+                    List<Item> rows = queryItems(firstStart, lowStockOnly, skip - 1, PAGE_SIZE + 1);
+                    start = rows.isEmpty() ? null : rows.get(0);
+                    items = rows.isEmpty() ? rows : new ArrayList<>(rows.subList(1, rows.size()));
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration || mClosed)
+                            return;
+                        mRequestedPages.remove(page);
+                        if (start == null && page > 0) {
+                            // The list is shorter than it was counted; the next reload fixes the count.
+                            return;
+                        }
+                        putPage(page, start, items);
+                        // Only rows that were placeholders until now need binding.
+                        int position = page * PAGE_SIZE;
+                        int count = Math.min(items.size(), mCount - position);
+                        if (count > 0)
+                            mCallback.onChanged(position, count, null);
+                    }
+                });
+            }
+        });
+    }
+
+    private void putPage(int page, Item start, List<Item> items) {
+        mPages.put(page, items);
+        if (page > 0)
+            mPageStarts.put(page, start);
+        if (items.size() == PAGE_SIZE)
+            mPageStarts.put(page + 1, items.get(PAGE_SIZE - 1));
+    }
+
+    private List<Item> queryItems(Item start, boolean lowStockOnly, int limit) {
+        return queryItems(start, lowStockOnly, 0, limit);
+    }
+
+    private List<Item> queryItems(Item start, boolean lowStockOnly, int offset, int limit) {
+        String afterName = start == null ? null : start.name;
+        long afterId = start == null ? 0 : start.id;
+        return readItems(mResolver.query(lowStockOnly
+                        ? ItemEntry.buildLowStockPageUri(afterName, afterId, offset, limit)
+                        : ItemEntry.buildPageUri(afterName, afterId, offset, limit),
+                PROJECTION, null, null, null));
+    }
+
+    private Cursor querySearch(String query, boolean lowStockOnly) {
+        return mResolver.query(ItemEntry.buildSearchUri(query), PROJECTION,
+                lowStockOnly ? ItemEntry.LOW_STOCK_SELECTION : null, null, null);
+    }
+
+    private static List<Item> readItems(Cursor cursor) {
+        List<Item> items = new ArrayList<>(PAGE_SIZE);
+        if (cursor == null) {
+            Log.e(LOG_TAG, "No cursor for items");
+            return items;
+        }
+        try {
+            int idColumnIndex = cursor.getColumnIndex(ItemEntry._ID);
+            int nameColumnIndex = cursor.getColumnIndex(ItemEntry.COLUMN_ITEM_NAME);
+            int priceColumnIndex = cursor.getColumnIndex(ItemEntry.COLUMN_ITEM_PRICE);
+            int quantityColumnIndex = cursor.getColumnIndex(ItemEntry.COLUMN_ITEM_QUANTITY);
+            int imageColumnIndex = cursor.getColumnIndex(ItemEntry.COLUMN_ITEM_IMAGE);
+            while (cursor.moveToNext()) {
+                items.add(new Item(cursor.getLong(idColumnIndex), cursor.getString(nameColumnIndex),
+                        cursor.getLong(priceColumnIndex), cursor.getInt(quantityColumnIndex),
+                        cursor.getString(imageColumnIndex)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return items;
+    }
+
+    /**
+     * Number of listed items sorted at or before the given one, i.e. the position right after it.
+     */
+    private int countUpTo(Item item, boolean lowStockOnly) {
+        String selection = ItemEntry.COLUMN_ITEM_NAME + " <= ? AND (" + ItemEntry.COLUMN_ITEM_NAME
+                + " < ? OR " + ItemEntry._ID + " <= ?)";
+        return queryCount(lowStockOnly ? ItemEntry.LOW_STOCK_SELECTION + " AND " + selection : selection,
+                new String[]{item.name, item.name, String.valueOf(item.id)});
+    }
+
+    /**
+     * The number of items, or of low-stock items, from the summary row rather than a count over
+     * the items.
+     */
+    private int queryItemCount(boolean lowStockOnly) {
+        Cursor cursor = mResolver.query(SummaryEntry.CONTENT_URI, new String[]{lowStockOnly
+                        ? SummaryEntry.COLUMN_LOW_STOCK_COUNT : SummaryEntry.COLUMN_ITEM_COUNT},
+                null, null, null);
+        if (cursor == null)
+            return 0;
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int queryCount(String selection, String[] selectionArgs) {
+        Cursor cursor = mResolver.query(ItemEntry.CONTENT_URI, new String[]{"COUNT(*)"},
+                selection, selectionArgs, null);
+        if (cursor == null)
+            return 0;
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Forwards changes within a run of pages to the callback at the run's position in the list.
+     */
+    private class OffsetCallback implements ListUpdateCallback {
+        private final int mOffset;
+
+        OffsetCallback(int offset) {
+            mOffset = offset;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mCallback.onInserted(mOffset + position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mCallback.onRemoved(mOffset + position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mCallback.onMoved(mOffset + fromPosition, mOffset + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            mCallback.onChanged(mOffset + position, count, payload);
+        }
+    }
+
+    private static class ItemDiffCallback extends DiffUtil.Callback {
+        private final List<Item> mOldItems;
+        private final List<Item> mNewItems;
+
+        ItemDiffCallback(List<Item> oldItems, List<Item> newItems) {
+            mOldItems = oldItems;
+            mNewItems = newItems;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldItems.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewItems.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldItems.get(oldItemPosition).id == mNewItems.get(newItemPosition).id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            Item oldItem = mOldItems.get(oldItemPosition);
+            Item newItem = mNewItems.get(newItemPosition);
+            return oldItem.price == newItem.price && oldItem.quantity == newItem.quantity
+                    && TextUtils.equals(oldItem.name, newItem.name)
+                    && TextUtils.equals(oldItem.image, newItem.image);
+        }
+    }
+}
@@ -1,13 +1,34 @@
 package com.example.android.myinventoryapp.DataFile;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.MergeCursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.util.Log;
+import android.util.LruCache;
+
+import com.example.android.myinventoryapp.BuildConfig;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Created by RajBaba on 22-08-2017.
@@ -17,16 +38,161 @@ public class ItemProvider extends ContentProvider {
     private ItemDbHelper mDbHelper;
     public static final int ITEMS = 100;
     public static final int ITEM_ID = 101;
+    public static final int ITEM_ADJUST = 102;
+    public static final int SEARCH = 103;
+    public static final int SUMMARY = 104;
+    public static final int LOW_STOCK = 105;
+    public static final int SUPPLIERS = 106;
+    public static final int SUPPLIER_ID = 107;
+    public static final int ITEM_HISTORY = 108;
+    public static final int STATS = 109;
+    public static final int CHANGES = 110;
+    // Names of the match codes from ITEMS up, for the stats.
+    private static final String[] MATCH_NAMES = {"items", "item", "adjust", "search", "summary",
+            "low_stock", "suppliers", "supplier", "history", "stats", "changes"};
     private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
+    private static final String SQL_ADJUST_QUANTITY = "UPDATE " + ItemContract.ItemEntry.TABLE_NAME
+            + " SET " + ItemContract.ItemEntry.COLUMN_ITEM_QUANTITY + " = "
+            + ItemContract.ItemEntry.COLUMN_ITEM_QUANTITY + " + ?"
+            + " WHERE " + ItemContract.ItemEntry._ID + " = ?"
+            + " AND " + ItemContract.ItemEntry.COLUMN_ITEM_QUANTITY + " + ? >= 0";
+    private static final String SQL_HISTORY = "SELECT " + ItemContract.StockHistoryEntry.COLUMN_DAY
+            + ", SUM(" + ItemContract.StockHistoryEntry.COLUMN_UNITS_IN + ") AS " + ItemContract.StockHistoryEntry.COLUMN_UNITS_IN
+            + ", SUM(" + ItemContract.StockHistoryEntry.COLUMN_UNITS_OUT + ") AS " + ItemContract.StockHistoryEntry.COLUMN_UNITS_OUT
+            + " FROM (SELECT " + ItemContract.StockHistoryEntry.COLUMN_DAY + ", "
+            + ItemContract.StockHistoryEntry.COLUMN_UNITS_IN + ", " + ItemContract.StockHistoryEntry.COLUMN_UNITS_OUT
+            + " FROM " + ItemContract.StockHistoryEntry.SNAPSHOTS_TABLE_NAME
+            + " WHERE " + ItemContract.StockHistoryEntry.COLUMN_ITEM_ID + " = ?"
+            + " AND " + ItemContract.StockHistoryEntry.COLUMN_DAY + " >= ?"
+            + " UNION ALL SELECT " + ItemContract.StockHistoryEntry.COLUMN_CREATED_AT + " / " + StockLedger.DAY_MS
+            + ", MAX(" + ItemContract.StockHistoryEntry.COLUMN_DELTA + ", 0)"
+            + ", MAX(-" + ItemContract.StockHistoryEntry.COLUMN_DELTA + ", 0)"
+            + " FROM " + ItemContract.StockHistoryEntry.MOVEMENTS_TABLE_NAME
+            + " WHERE " + ItemContract.StockHistoryEntry.COLUMN_ITEM_ID + " = ?"
+            + " AND " + ItemContract.StockHistoryEntry.COLUMN_CREATED_AT + " >= ? * " + StockLedger.DAY_MS + ")"
+            + " GROUP BY " + ItemContract.StockHistoryEntry.COLUMN_DAY
+            + " ORDER BY " + ItemContract.StockHistoryEntry.COLUMN_DAY;
+    private static final String[] ITEM_COLUMNS = {
+            ItemContract.ItemEntry._ID,
+            ItemContract.ItemEntry.COLUMN_ITEM_NAME,
+            ItemContract.ItemEntry.COLUMN_ITEM_PRICE,
+            ItemContract.ItemEntry.COLUMN_ITEM_QUANTITY,
+            ItemContract.ItemEntry.COLUMN_ITEM_IMAGE,
+            ItemContract.ItemEntry.COLUMN_ITEM_SUPPLIER,
+            ItemContract.ItemEntry.COLUMN_SUPPLIER_EMAIL,
+            ItemContract.ItemEntry.COLUMN_REORDER_THRESHOLD,
+            ItemContract.ItemEntry.COLUMN_SUPPLIER_ID};
+    // Shorter names first. A heuristic, not a relevance score: of two names matching the same
+    // words, the shorter one has less else in it, e.g. "Laptop" before "Laptop stand".
+    private static final String SEARCH_SORT_ORDER = "length(" + ItemContract.ItemEntry.COLUMN_ITEM_NAME + "), "
+            + ItemContract.ItemEntry.COLUMN_ITEM_NAME;
+    private static final String SEARCH_MATCH_SELECTION = ItemContract.ItemEntry.FTS_TABLE_NAME + " MATCH ?";
+    // The first matches in docid order, at most as many as the second argument.
+    private static final String SEARCH_CANDIDATES_SELECTION = ItemContract.ItemEntry._ID + " IN (SELECT docid FROM "
+            + ItemContract.ItemEntry.FTS_TABLE_NAME + " WHERE " + SEARCH_MATCH_SELECTION + " LIMIT ?)";
+    // Like SEARCH_CANDIDATES_SELECTION, for matches of the first argument that are not also
+    // matches of the second, to fill up the results after the name matches.
+    private static final String SEARCH_OTHER_CANDIDATES_SELECTION = ItemContract.ItemEntry._ID
+            + " IN (SELECT docid FROM " + ItemContract.ItemEntry.FTS_TABLE_NAME + " WHERE "
+            + SEARCH_MATCH_SELECTION + " AND docid NOT IN (SELECT docid FROM "
+            + ItemContract.ItemEntry.FTS_TABLE_NAME + " WHERE " + SEARCH_MATCH_SELECTION + ") LIMIT ?)";
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+    // Matches read from the FTS index per part of a search, the most that are ever sorted.
+    private static final int SEARCH_CANDIDATE_LIMIT = 1000;
+    // Joined to the base tables rather than the view, whose join SQLite would have to
+    // materialize whole as the right side of a LEFT JOIN; tombstones have no item row.
+    private static final String CHANGES_TABLES = ItemContract.ItemChangeEntry.TABLE_NAME + " c LEFT JOIN "
+            + ItemContract.ItemEntry.TABLE_NAME + " i ON i." + ItemContract.ItemEntry._ID + " = c."
+            + ItemContract.ItemChangeEntry.COLUMN_ITEM_ID + " LEFT JOIN " + ItemContract.SupplierEntry.TABLE_NAME
+            + " s ON s." + ItemContract.SupplierEntry._ID + " = i." + ItemContract.ItemEntry.COLUMN_SUPPLIER_ID;
+    private static final String[] CHANGE_COLUMNS = {
+            ItemContract.ItemChangeEntry.COLUMN_SEQUENCE,
+            ItemContract.ItemChangeEntry.COLUMN_DELETED,
+            ItemContract.ItemEntry._ID,
+            ItemContract.ItemEntry.COLUMN_ITEM_NAME,
+            ItemContract.ItemEntry.COLUMN_ITEM_PRICE,
+            ItemContract.ItemEntry.COLUMN_ITEM_QUANTITY,
+            ItemContract.ItemEntry.COLUMN_ITEM_IMAGE,
+            ItemContract.ItemEntry.COLUMN_ITEM_SUPPLIER,
+            ItemContract.ItemEntry.COLUMN_SUPPLIER_EMAIL,
+            ItemContract.ItemEntry.COLUMN_REORDER_THRESHOLD,
+            ItemContract.ItemEntry.COLUMN_SUPPLIER_ID};
+    private static final Map<String, String> sChangesProjectionMap = new HashMap<>();
+    private static final String SQL_FIND_SUPPLIER = "SELECT " + ItemContract.SupplierEntry._ID + " FROM "
+            + ItemContract.SupplierEntry.TABLE_NAME + " WHERE " + ItemContract.SupplierEntry.COLUMN_SUPPLIER_NAME
+            + " = ? AND " + ItemContract.SupplierEntry.COLUMN_SUPPLIER_EMAIL + " = ?";
+    private static final String PAGE_SORT_ORDER = ItemContract.ItemEntry.COLUMN_ITEM_NAME + ", "
+            + ItemContract.ItemEntry._ID;
+    // Rows after the (name, _id) key, written so that the name >= ? term can drive a range search
+    // on the name index.
+    private static final String PAGE_AFTER_KEY_SELECTION = ItemContract.ItemEntry.COLUMN_ITEM_NAME
+            + " >= ? AND (" + ItemContract.ItemEntry.COLUMN_ITEM_NAME + " > ? OR "
+            + ItemContract.ItemEntry._ID + " > ?)";
+    /**
+     * Set while {@link #applyBatch} runs on the calling thread: the URIs changed so far by the
+     * batch, notified together once it commits. Null outside of a batch.
+     */
+    private final ThreadLocal<Set<Uri>> mBatchChanges = new ThreadLocal<>();
+    private static final int ROW_CACHE_SIZE = 256;
+    /**
+     * Recently read items by _id, each row holding all of {@link #ITEM_COLUMNS}, so reopening an
+     * item never touches the database. Entries are dropped after every write that changes them.
+     */
+    private final LruCache<Long, Object[]> mRowCache = new LruCache<>(ROW_CACHE_SIZE);
+    // Bumped on every invalidation, under the mRowCache lock. A row read from the database is
+    // only cached if no invalidation happened since the read started, as it may predate a write.
+    private long mRowCacheGeneration;
+    // Debug builds only: the clock reads and atomic adds are not worth it for every user.
+    private final ProviderStats mStats = new ProviderStats(ITEMS, MATCH_NAMES, BuildConfig.DEBUG);
 
     static {
         sUriMatcher.addURI(ItemContract.CONTENT_AUTHORITY, ItemContract.PATH_ITEMS, ITEMS);
         sUriMatcher.addURI(ItemContract.CONTENT_AUTHORITY, ItemContract.PATH_ITEMS + "/#", ITEM_ID);
+        sUriMatcher.addURI(ItemContract.CONTENT_AUTHORITY,
+                ItemContract.PATH_ITEMS + "/#/" + ItemContract.PATH_ADJUST, ITEM_ADJUST);
+        sUriMatcher.addURI(ItemContract.CONTENT_AUTHORITY,
+                ItemContract.PATH_ITEMS + "/#/" + ItemContract.PATH_HISTORY, ITEM_HISTORY);
+        sUriMatcher.addURI(ItemContract.CONTENT_AUTHORITY, ItemContract.PATH_STATS, STATS);
+        sUriMatcher.addURI(ItemContract.CONTENT_AUTHORITY,
+                ItemContract.PATH_ITEMS + "/" + ItemContract.PATH_SEARCH + "/*", SEARCH);
+        sUriMatcher.addURI(ItemContract.CONTENT_AUTHORITY,
+                ItemContract.PATH_ITEMS + "/" + ItemContract.PATH_SUMMARY, SUMMARY);
+        sUriMatcher.addURI(ItemContract.CONTENT_AUTHORITY,
+                ItemContract.PATH_ITEMS + "/" + ItemContract.PATH_LOW_STOCK, LOW_STOCK);
+        sUriMatcher.addURI(ItemContract.CONTENT_AUTHORITY,
+                ItemContract.PATH_ITEMS + "/" + ItemContract.PATH_CHANGES, CHANGES);
+        sUriMatcher.addURI(ItemContract.CONTENT_AUTHORITY, ItemContract.PATH_SUPPLIERS, SUPPLIERS);
+        sUriMatcher.addURI(ItemContract.CONTENT_AUTHORITY, ItemContract.PATH_SUPPLIERS + "/#", SUPPLIER_ID);
+        String sequence = ItemContract.ItemChangeEntry.COLUMN_SEQUENCE;
+        String deleted = ItemContract.ItemChangeEntry.COLUMN_DELETED;
+        sChangesProjectionMap.put(sequence, "c." + sequence + " AS " + sequence);
+        sChangesProjectionMap.put(deleted, "c." + deleted + " AS " + deleted);
+        sChangesProjectionMap.put(ItemContract.ItemEntry._ID, "c." + ItemContract.ItemChangeEntry.COLUMN_ITEM_ID
+                + " AS " + ItemContract.ItemEntry._ID);
+        sChangesProjectionMap.put(ItemContract.ItemEntry.COLUMN_ITEM_SUPPLIER, "s."
+                + ItemContract.SupplierEntry.COLUMN_SUPPLIER_NAME + " AS " + ItemContract.ItemEntry.COLUMN_ITEM_SUPPLIER);
+        sChangesProjectionMap.put(ItemContract.ItemEntry.COLUMN_SUPPLIER_EMAIL, "s."
+                + ItemContract.SupplierEntry.COLUMN_SUPPLIER_EMAIL + " AS " + ItemContract.ItemEntry.COLUMN_SUPPLIER_EMAIL);
+        for (String column : CHANGE_COLUMNS) {
+            if (!sChangesProjectionMap.containsKey(column))
+                sChangesProjectionMap.put(column, "i." + column + " AS " + column);
+        }
+    }
+
+    public ItemProvider() {
+    }
+
+    /**
+     * Serves the helper's database instead of the app's, for tests.
+     */
+    ItemProvider(ItemDbHelper dbHelper) {
+        mDbHelper = dbHelper;
     }
 
     @Override
     public boolean onCreate() {// ContentProvider methods.
-        mDbHelper = new ItemDbHelper(getContext());
+        if (mDbHelper == null)
+            mDbHelper = ItemDbHelper.getInstance(getContext());
         return true;
     }
 
@@ -34,95 +200,721 @@ public class ItemProvider extends ContentProvider {
     public Cursor query(Uri uri, String[] projection,
                         String selection, String[] selectionArgs,
                         String sortOrder) {
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+        Cursor cursor = null;
+        try {
+            cursor = queryMatch(match, uri, projection, selection, selectionArgs, sortOrder);
+            return cursor;
+        } finally {
+            // Counting runs the query, which ContentResolver.query does before returning anyway.
+            mStats.record(ProviderStats.QUERY, match, start, cursor != null ? cursor.getCount() : 0,
+                    cursor == null);
+        }
+    }
+
+    private Cursor queryMatch(int match, Uri uri, String[] projection, String selection,
+                              String[] selectionArgs, String sortOrder) {
         SQLiteDatabase database = mDbHelper.getReadableDatabase();
         Cursor cursor = null;
-        int match = sUriMatcher.match(uri);
+        Uri notificationUri = uri;
         switch (match) {
             case ITEMS:
-                cursor = database.query(ItemContract.ItemEntry.TABLE_NAME, projection, selection,
+                String limit = uri.getQueryParameter(ItemContract.ItemEntry.QUERY_PARAMETER_LIMIT);
+                if (limit != null) {
+                    cursor = queryPage(database, uri, projection, null, selection, selectionArgs, limit);
+                    break;
+                }
+                cursor = database.query(ItemContract.ItemEntry.VIEW_NAME, projection, selection,
                         selectionArgs, null, null, sortOrder);
                 break;
             case ITEM_ID:
+                cursor = queryCachedItem(database, ContentUris.parseId(uri), projection);
+                if (cursor != null)
+                    break;
                 selection = ItemContract.ItemEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                cursor = database.query(ItemContract.ItemEntry.TABLE_NAME, projection, selection, selectionArgs,
+                cursor = database.query(ItemContract.ItemEntry.VIEW_NAME, projection, selection, selectionArgs,
                         null, null, sortOrder);
                 break;
+            case SEARCH:
+                cursor = querySearch(database, uri, projection, selection, selectionArgs);
+                // Any item change may change the matches.
+                notificationUri = ItemContract.ItemEntry.CONTENT_URI;
+                break;
+            case SUMMARY:
+                // A single row maintained by triggers, so this never scans items.
+                cursor = database.query(ItemContract.SummaryEntry.TABLE_NAME, projection, null, null,
+                        null, null, null);
+                notificationUri = ItemContract.ItemEntry.CONTENT_URI;
+                break;
+            case LOW_STOCK:
+                // Same WHERE term as the partial low-stock index, so only that index is read.
+                String lowStockLimit = uri.getQueryParameter(ItemContract.ItemEntry.QUERY_PARAMETER_LIMIT);
+                if (lowStockLimit != null) {
+                    cursor = queryPage(database, uri, projection, ItemContract.ItemEntry.LOW_STOCK_SELECTION,
+                            selection, selectionArgs, lowStockLimit);
+                } else {
+                    cursor = database.query(ItemContract.ItemEntry.VIEW_NAME, projection,
+                            DatabaseUtils.concatenateWhere(ItemContract.ItemEntry.LOW_STOCK_SELECTION, selection),
+                            selectionArgs, null, null, sortOrder != null ? sortOrder : PAGE_SORT_ORDER);
+                }
+                notificationUri = ItemContract.ItemEntry.CONTENT_URI;
+                break;
+            case ITEM_HISTORY:
+                cursor = queryHistory(database, uri);
+                // Movements are appended by triggers whenever the item's quantity changes.
+                notificationUri = ContentUris.withAppendedId(ItemContract.ItemEntry.CONTENT_URI,
+                        Long.parseLong(uri.getPathSegments().get(1)));
+                break;
+            case SUPPLIERS:
+                cursor = database.query(ItemContract.SupplierEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder);
+                break;
+            case CHANGES:
+                cursor = queryChanges(database, uri, projection, selection, selectionArgs);
+                notificationUri = ItemContract.ItemEntry.CONTENT_URI;
+                break;
+            case STATS:
+                cursor = mStats.toCursor();
+                break;
+            case SUPPLIER_ID:
+                selection = ItemContract.SupplierEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                cursor = database.query(ItemContract.SupplierEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder);
+                break;
             default:
                 throw new IllegalArgumentException("Unknown URI " + uri);
         }
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        cursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
+        return cursor;
+    }
+
+    /**
+     * Serves a single item from {@link #mRowCache}, reading and caching the whole row on a miss.
+     * Returns null if the projection asks for anything but plain item columns, which the caller
+     * then queries from the database as usual.
+     */
+    private Cursor queryCachedItem(SQLiteDatabase database, long id, String[] projection) {
+        String[] columns = projection != null ? projection : ITEM_COLUMNS;
+        int[] columnIndexes = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            columnIndexes[i] = Arrays.asList(ITEM_COLUMNS).indexOf(columns[i]);
+            if (columnIndexes[i] == -1)
+                return null;
+        }
+        Object[] row = mRowCache.get(id);
+        if (row == null) {
+            long generation;
+            synchronized (mRowCache) {
+                generation = mRowCacheGeneration;
+            }
+            row = readItemRow(database, id);
+            if (row != null) {
+                synchronized (mRowCache) {
+                    if (generation == mRowCacheGeneration)
+                        mRowCache.put(id, row);
+                }
+            }
+        }
+        MatrixCursor cursor = new MatrixCursor(columns, 1);
+        if (row != null) {
+            Object[] values = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++)
+                values[i] = row[columnIndexes[i]];
+            cursor.addRow(values);
+        }
         return cursor;
     }
 
+    private Object[] readItemRow(SQLiteDatabase database, long id) {
+        Cursor cursor = database.query(ItemContract.ItemEntry.VIEW_NAME, ITEM_COLUMNS,
+                ItemContract.ItemEntry._ID + "=?", new String[]{String.valueOf(id)}, null, null, null);
+        try {
+            if (!cursor.moveToFirst())
+                return null;
+            Object[] row = new Object[ITEM_COLUMNS.length];
+            for (int i = 0; i < row.length; i++) {
+                switch (cursor.getType(i)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        row[i] = cursor.getLong(i);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        row[i] = cursor.getDouble(i);
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        row[i] = cursor.getBlob(i);
+                        break;
+                    case Cursor.FIELD_TYPE_NULL:
+                        row[i] = null;
+                        break;
+                    default:
+                        row[i] = cursor.getString(i);
+                }
+            }
+            return row;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Drops the cached row of the item URI, or every cached row for any other URI, since a
+     * supplier change shows in all of that supplier's items.
+     */
+    private void invalidateRowCache(Uri uri) {
+        synchronized (mRowCache) {
+            mRowCacheGeneration++;
+            if (sUriMatcher.match(uri) == ITEM_ID)
+                mRowCache.remove(ContentUris.parseId(uri));
+            else
+                mRowCache.evictAll();
+        }
+    }
+
+    /**
+     * Full-text matches from the FTS index, read back from the items view for the row values.
+     * Items whose name matches every word come first, then, only if those don't reach the
+     * limit, the items matched through their supplier. Each part takes at most
+     * {@link #SEARCH_CANDIDATE_LIMIT} matches from the index, the first ones by docid, and only
+     * sorts those by {@link #SEARCH_SORT_ORDER}; a word more common than that may miss a
+     * shorter name. A selection narrows the matches after they have been taken.
+     */
+    private Cursor querySearch(SQLiteDatabase database, Uri uri, String[] projection,
+                               String selection, String[] selectionArgs) {
+        String match = toPrefixMatch(uri.getLastPathSegment());
+        if (match == null) {
+            return new MatrixCursor(projection != null ? projection : ITEM_COLUMNS);
+        }
+        String limitParameter = uri.getQueryParameter(ItemContract.ItemEntry.QUERY_PARAMETER_LIMIT);
+        int limit = limitParameter != null ? Integer.parseInt(limitParameter) : DEFAULT_SEARCH_LIMIT;
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid search limit in " + uri);
+        }
+        String nameMatch = toColumnMatch(ItemContract.ItemEntry.COLUMN_ITEM_NAME, match);
+        String candidates = String.valueOf(Math.max(limit, SEARCH_CANDIDATE_LIMIT));
+        Cursor nameMatches = querySearchMatches(database, projection, SEARCH_CANDIDATES_SELECTION,
+                new String[]{nameMatch, candidates}, selection, selectionArgs, limit);
+        int remaining = limit - nameMatches.getCount();
+        if (remaining <= 0)
+            return nameMatches;
+        Cursor otherMatches = querySearchMatches(database, projection, SEARCH_OTHER_CANDIDATES_SELECTION,
+                new String[]{match, nameMatch, candidates}, selection, selectionArgs, remaining);
+        return new MergeCursor(new Cursor[]{nameMatches, otherMatches});
+    }
+
+    private Cursor querySearchMatches(SQLiteDatabase database, String[] projection, String matchSelection,
+                                      String[] matchArgs, String selection, String[] selectionArgs, int limit) {
+        return database.query(ItemContract.ItemEntry.VIEW_NAME, projection,
+                DatabaseUtils.concatenateWhere(matchSelection, selection),
+                DatabaseUtils.appendSelectionArgs(matchArgs, selectionArgs), null, null, SEARCH_SORT_ORDER,
+                String.valueOf(limit));
+    }
+
+    /**
+     * Units in and out per day for one item: compacted days come from the snapshots, recent ones
+     * are summed from the movements. Both are read through their (item_id, day) and
+     * (item_id, created_at) indexes, so the cost follows the item's history, not the table's.
+     */
+    private Cursor queryHistory(SQLiteDatabase database, Uri uri) {
+        String id = uri.getPathSegments().get(1);
+        String days = uri.getQueryParameter(ItemContract.ItemEntry.QUERY_PARAMETER_DAYS);
+        long sinceDay = days == null ? 0
+                : System.currentTimeMillis() / StockLedger.DAY_MS - Integer.parseInt(days) + 1;
+        String since = String.valueOf(Math.max(sinceDay, 0));
+        return database.rawQuery(SQL_HISTORY, new String[]{id, since, id, since});
+    }
+
+    /**
+     * The items changed after the since token, oldest change first, read by a range search on
+     * the sequence key with each item found by its _id, so the cost follows the number of
+     * changes returned. The caller's sort order is ignored, since a sync relies on this one.
+     */
+    private Cursor queryChanges(SQLiteDatabase database, Uri uri, String[] projection,
+                                String selection, String[] selectionArgs) {
+        String since = uri.getQueryParameter(ItemContract.ItemChangeEntry.QUERY_PARAMETER_SINCE);
+        long sinceSequence = since != null ? Long.parseLong(since) : 0;
+        if (sinceSequence < 0) {
+            throw new IllegalArgumentException("Invalid since token in " + uri);
+        }
+        String limit = uri.getQueryParameter(ItemContract.ItemChangeEntry.QUERY_PARAMETER_LIMIT);
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(CHANGES_TABLES);
+        builder.setProjectionMap(sChangesProjectionMap);
+        return builder.query(database, projection != null ? projection : CHANGE_COLUMNS,
+                DatabaseUtils.concatenateWhere("c." + ItemContract.ItemChangeEntry.COLUMN_SEQUENCE + " > ?", selection),
+                DatabaseUtils.appendSelectionArgs(new String[]{String.valueOf(sinceSequence)}, selectionArgs),
+                null, null, "c." + ItemContract.ItemChangeEntry.COLUMN_SEQUENCE,
+                limit != null ? String.valueOf(Integer.parseInt(limit)) : null);
+    }
+
+    /**
+     * Turns typed text into an FTS query in which every word must match as a prefix, e.g.
+     * "lap h" into "lap* h*". Anything but letters and digits only separates words, so user
+     * input can never form FTS operators. Returns null when there is no word.
+     */
+    static String toPrefixMatch(String text) {
+        StringBuilder match = new StringBuilder();
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                match.append(c);
+                inWord = true;
+            } else if (inWord) {
+                match.append("* ");
+                inWord = false;
+            }
+        }
+        if (inWord)
+            match.append('*');
+        return match.length() == 0 ? null : match.toString().trim();
+    }
+
+    /**
+     * Restricts every word of a {@link #toPrefixMatch} query to the column, e.g. "lap* h*" to
+     * "name:lap* name:h*".
+     */
+    static String toColumnMatch(String column, String match) {
+        StringBuilder columnMatch = new StringBuilder();
+        for (String word : match.split(" ")) {
+            if (columnMatch.length() != 0)
+                columnMatch.append(' ');
+            columnMatch.append(column).append(':').append(word);
+        }
+        return columnMatch.toString();
+    }
+
+    /**
+     * Keyset pagination over the name index: the rows ordered by name and _id that come after
+     * the (after_name, after_id) key of the URI. Unlike OFFSET, the cost of a page does not grow
+     * with its depth. The caller's sort order is ignored since the key defines the order.
+     * <p>
+     * An offset skips that many rows after the key first, for jumping far down the list. The
+     * skipped rows are counted on items_name_idx alone, without reading them, and the row found
+     * becomes the key of an ordinary page query.
+     * <p>
+     * A row selection, e.g. the low-stock one, limits both queries to the rows of an index on
+     * name with the same WHERE term. It may only use columns of the items table.
+     */
+    private Cursor queryPage(SQLiteDatabase database, Uri uri, String[] projection, String rowSelection,
+                             String selection, String[] selectionArgs, String limit) {
+        if (Integer.parseInt(limit) <= 0) {
+            throw new IllegalArgumentException("Invalid page limit in " + uri);
+        }
+        String afterName = uri.getQueryParameter(ItemContract.ItemEntry.QUERY_PARAMETER_AFTER_NAME);
+        String afterId = afterName == null ? null : String.valueOf(Long.parseLong(
+                uri.getQueryParameter(ItemContract.ItemEntry.QUERY_PARAMETER_AFTER_ID)));
+        String offset = uri.getQueryParameter(ItemContract.ItemEntry.QUERY_PARAMETER_OFFSET);
+        if (offset != null && Integer.parseInt(offset) > 0) {
+            if (selection != null) {
+                throw new IllegalArgumentException("A page offset can't be combined with a selection: " + uri);
+            }
+            Cursor key = database.query(ItemContract.ItemEntry.TABLE_NAME,
+                    new String[]{ItemContract.ItemEntry.COLUMN_ITEM_NAME, ItemContract.ItemEntry._ID},
+                    afterName == null ? rowSelection
+                            : DatabaseUtils.concatenateWhere(rowSelection, PAGE_AFTER_KEY_SELECTION),
+                    afterName == null ? null : new String[]{afterName, afterName, afterId},
+                    null, null, PAGE_SORT_ORDER, (Integer.parseInt(offset) - 1) + ",1");
+            try {
+                if (!key.moveToFirst()) {
+                    // Fewer rows than the offset: the page is past the end.
+                    return new MatrixCursor(projection != null ? projection : ITEM_COLUMNS);
+                }
+                afterName = key.getString(0);
+                afterId = String.valueOf(key.getLong(1));
+            } finally {
+                key.close();
+            }
+        }
+        if (rowSelection != null)
+            selection = DatabaseUtils.concatenateWhere(rowSelection, selection);
+        if (afterName != null) {
+            selection = DatabaseUtils.concatenateWhere(selection, PAGE_AFTER_KEY_SELECTION);
+            selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                    new String[]{afterName, afterName, afterId});
+        }
+        return database.query(ItemContract.ItemEntry.VIEW_NAME, projection, selection, selectionArgs,
+                null, null, PAGE_SORT_ORDER, limit);
+    }
+
     @Override
     public Uri insert(Uri uri, ContentValues contentValues) {
-        final int match = sUriMatcher.match(uri);
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+        boolean failed = true;
+        Uri insertedUri = null;
+        try {
+            insertedUri = insertMatch(match, uri, contentValues);
+            failed = false;
+            return insertedUri;
+        } finally {
+            mStats.record(ProviderStats.INSERT, match, start, insertedUri != null ? 1 : 0, failed);
+        }
+    }
+
+    private Uri insertMatch(int match, Uri uri, ContentValues contentValues) {
         switch (match) {
             case ITEMS:
                 return insertItem(uri, contentValues);
+            case SUPPLIERS:
+                return insertSupplier(uri, contentValues);
             default:
                 throw new IllegalArgumentException("Insertion is not supported for " + uri);
         }
     }
 
     private Uri insertItem(Uri uri, ContentValues values) {
-        String name = values.getAsString(ItemContract.ItemEntry.COLUMN_ITEM_NAME);
-        String price = values.getAsString(ItemContract.ItemEntry.COLUMN_ITEM_PRICE);
-        String quantity = values.getAsString(ItemContract.ItemEntry.COLUMN_ITEM_QUANTITY);
-        String image = values.getAsString(ItemContract.ItemEntry.COLUMN_ITEM_IMAGE);
+        validateItem(values);
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        Set<Uri> newSuppliers = new HashSet<>();
+        long id;
+        // A supplier created for the item only stays if the item goes in too.
+        db.beginTransaction();
+        try {
+            id = db.insert(ItemContract.ItemEntry.TABLE_NAME, null,
+                    toItemRow(db, values, new HashMap<String, Long>(), newSuppliers));
+            if (id != -1)
+                db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+        for (Uri supplierUri : newSuppliers)
+            notifyChange(supplierUri);
+        Uri itemUri = ContentUris.withAppendedId(uri, id);
+        notifyChange(itemUri);
+        return itemUri;
+    }
+
+    private Uri insertSupplier(Uri uri, ContentValues values) {
+        validateSupplier(values, true);
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        long id = db.insert(ItemContract.SupplierEntry.TABLE_NAME, null, values);
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+        Uri supplierUri = ContentUris.withAppendedId(uri, id);
+        notifyChange(supplierUri);
+        return supplierUri;
+    }
+
+    private void validateSupplier(ContentValues values, boolean complete) {
+        if ((complete || values.containsKey(ItemContract.SupplierEntry.COLUMN_SUPPLIER_NAME))
+                && values.getAsString(ItemContract.SupplierEntry.COLUMN_SUPPLIER_NAME) == null) {
+            throw new IllegalArgumentException("Supplier requires a name");
+        }
+        if ((complete || values.containsKey(ItemContract.SupplierEntry.COLUMN_SUPPLIER_EMAIL))
+                && values.getAsString(ItemContract.SupplierEntry.COLUMN_SUPPLIER_EMAIL) == null) {
+            throw new IllegalArgumentException("Supplier requires an email");
+        }
+    }
+
+    /**
+     * Returns the values to write to the items table: a supplier given by name and email is
+     * replaced by its supplier_id, creating the supplier if there is none with both yet. Must
+     * run inside the transaction of the write, so the supplier is rolled back along with it.
+     *
+     * @param supplierIds  ids already resolved in the transaction, by name and email
+     * @param newSuppliers gets the URIs of the suppliers created, to notify once it commits
+     */
+    private ContentValues toItemRow(SQLiteDatabase db, ContentValues values, Map<String, Long> supplierIds,
+                                    Set<Uri> newSuppliers) {
+        if (!values.containsKey(ItemContract.ItemEntry.COLUMN_ITEM_SUPPLIER)
+                && !values.containsKey(ItemContract.ItemEntry.COLUMN_SUPPLIER_EMAIL)) {
+            return values;
+        }
         String supplier = values.getAsString(ItemContract.ItemEntry.COLUMN_ITEM_SUPPLIER);
         String email = values.getAsString(ItemContract.ItemEntry.COLUMN_SUPPLIER_EMAIL);
+        if (supplier == null || email == null) {
+            throw new IllegalArgumentException("Item requires both a supplier and an email");
+        }
+        ContentValues row = new ContentValues(values);
+        row.remove(ItemContract.ItemEntry.COLUMN_ITEM_SUPPLIER);
+        row.remove(ItemContract.ItemEntry.COLUMN_SUPPLIER_EMAIL);
+        String key = supplier + '\n' + email;
+        Long supplierId = supplierIds.get(key);
+        if (supplierId == null) {
+            supplierId = findOrInsertSupplier(db, supplier, email, newSuppliers);
+            supplierIds.put(key, supplierId);
+        }
+        row.put(ItemContract.ItemEntry.COLUMN_SUPPLIER_ID, supplierId);
+        return row;
+    }
+
+    private long findOrInsertSupplier(SQLiteDatabase db, String name, String email, Set<Uri> newSuppliers) {
+        String[] args = {name, email};
+        try {
+            return DatabaseUtils.longForQuery(db, SQL_FIND_SUPPLIER, args);
+        } catch (SQLiteDoneException e) {
+            // A new supplier.
+        }
+        ContentValues supplier = new ContentValues();
+        supplier.put(ItemContract.SupplierEntry.COLUMN_SUPPLIER_NAME, name);
+        supplier.put(ItemContract.SupplierEntry.COLUMN_SUPPLIER_EMAIL, email);
+        long id = db.insert(ItemContract.SupplierEntry.TABLE_NAME, null, supplier);
+        if (id == -1) {
+            // Another thread inserted it since the lookup.
+            return DatabaseUtils.longForQuery(db, SQL_FIND_SUPPLIER, args);
+        }
+        newSuppliers.add(ContentUris.withAppendedId(ItemContract.SupplierEntry.CONTENT_URI, id));
+        return id;
+    }
+
+    /**
+     * Inserts all rows inside a single transaction and sends one change notification at the end,
+     * instead of one implicit transaction and one notification per row.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+        boolean failed = true;
+        int rowsInserted = 0;
+        try {
+            rowsInserted = bulkInsertMatch(match, uri, values);
+            failed = false;
+            return rowsInserted;
+        } finally {
+            mStats.record(ProviderStats.BULK_INSERT, match, start, rowsInserted, failed);
+        }
+    }
+
+    private int bulkInsertMatch(int match, Uri uri, ContentValues[] values) {
+        if (match != ITEMS) {
+            throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+        for (ContentValues value : values) {
+            validateItem(value);
+        }
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        int rowsInserted = 0;
+        // Most rows of a batch share a few suppliers, so each is looked up once.
+        Map<String, Long> supplierIds = new HashMap<>();
+        Set<Uri> newSuppliers = new HashSet<>();
+        db.beginTransaction();
+        try {
+            for (ContentValues value : values) {
+                if (db.insert(ItemContract.ItemEntry.TABLE_NAME, null,
+                        toItemRow(db, value, supplierIds, newSuppliers)) != -1)
+                    rowsInserted++;
+                else
+                    Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        for (Uri supplierUri : newSuppliers)
+            notifyChange(supplierUri);
+        if (rowsInserted != 0)
+            notifyChange(uri);
+        return rowsInserted;
+    }
 
-        if (price == null) {
-            throw new IllegalArgumentException("Item requires a price");
+    /**
+     * Runs every operation inside a single transaction. Notifications from the individual
+     * operations are held back and replaced by one notification once the transaction has
+     * committed: on the changed URI if there is just one, otherwise on the items URI and, if
+     * suppliers changed too, the suppliers URI.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        ContentProviderResult[] results;
+        Set<Uri> changes = new HashSet<>();
+        mBatchChanges.set(changes);
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mBatchChanges.remove();
+            // Rows read on other connections while the batch ran have the old values, rows read
+            // by the batch itself its uncommitted ones, so they go whether it committed or not.
+            for (Uri changed : changes)
+                invalidateRowCache(changed);
+        }
+        if (changes.size() == 1) {
+            notifyChange(changes.iterator().next());
+        } else {
+            Set<Uri> collections = new HashSet<>();
+            for (Uri changed : changes) {
+                collections.add(ItemContract.BASE_CONTENT_URI.buildUpon()
+                        .appendPath(changed.getPathSegments().get(0)).build());
+            }
+            for (Uri collection : collections)
+                notifyChange(collection);
         }
-        if (quantity == null || Integer.parseInt(quantity) < 0) {
+        return results;
+    }
+
+    /**
+     * Checks the values of a new item. {@link ItemCsvImporter} inserts without the provider and
+     * checks its rows here too, so both accept the same items.
+     *
+     * @throws IllegalArgumentException naming the first value that is missing or invalid
+     */
+    static void validateItem(ContentValues values) {
+        Long price = values.getAsLong(ItemContract.ItemEntry.COLUMN_ITEM_PRICE);
+        if (price == null || price < 0) {
+            throw new IllegalArgumentException("Item requires a price in minor units");
+        }
+        Integer quantity = values.getAsInteger(ItemContract.ItemEntry.COLUMN_ITEM_QUANTITY);
+        if (quantity == null || quantity < 0) {
             throw new IllegalArgumentException("Item requires a quantity");
         }
-        if (name == null) {
+        if (values.getAsString(ItemContract.ItemEntry.COLUMN_ITEM_NAME) == null) {
             throw new IllegalArgumentException("Item requires a name");
         }
-        if (image == null) {
+        if (values.getAsString(ItemContract.ItemEntry.COLUMN_ITEM_IMAGE) == null) {
             throw new IllegalArgumentException("Item requires an image");
         }
-        if (supplier == null) {
-            throw new IllegalArgumentException("Item requires a supplier");
-        }
-        if (email == null) {
-            throw new IllegalArgumentException("Item requires an email");
+        if (values.getAsLong(ItemContract.ItemEntry.COLUMN_SUPPLIER_ID) == null) {
+            if (values.getAsString(ItemContract.ItemEntry.COLUMN_ITEM_SUPPLIER) == null) {
+                throw new IllegalArgumentException("Item requires a supplier");
+            }
+            if (values.getAsString(ItemContract.ItemEntry.COLUMN_SUPPLIER_EMAIL) == null) {
+                throw new IllegalArgumentException("Item requires an email");
+            }
         }
+        validateReorderThreshold(values);
+    }
 
-        SQLiteDatabase db = mDbHelper.getWritableDatabase();
-        long id = db.insert(ItemContract.ItemEntry.TABLE_NAME, null, values);
+    private static void validateReorderThreshold(ContentValues values) {
+        if (values.containsKey(ItemContract.ItemEntry.COLUMN_REORDER_THRESHOLD)) {
+            Integer threshold = values.getAsInteger(ItemContract.ItemEntry.COLUMN_REORDER_THRESHOLD);
+            if (threshold == null || threshold < 0) {
+                throw new IllegalArgumentException("Item requires valid reorder threshold");
+            }
+        }
+    }
 
-        if (id == 1) {
-            Log.e(LOG_TAG, "Failed to insert row for " + uri);
-            return null;
-        } else if (id != 0)
+    /**
+     * Drops the affected cached rows, then notifies observers of the URI, or adds it to the batch
+     * running on this thread. Observers of the items URI with notifyForDescendants also hear
+     * about changes to single items. Must be called after the write it reports.
+     */
+    private void notifyChange(Uri uri) {
+        invalidateRowCache(uri);
+        Set<Uri> batchChanges = mBatchChanges.get();
+        if (batchChanges != null)
+            batchChanges.add(uri);
+        else
             getContext().getContentResolver().notifyChange(uri, null);
-        return ContentUris.withAppendedId(uri, id);
     }
 
     @Override
     public int update(Uri uri, ContentValues contentValues, String selection,
                       String[] selectionArgs) {
-        final int match = sUriMatcher.match(uri);
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+        boolean failed = true;
+        int rowsUpdated = 0;
+        try {
+            rowsUpdated = updateMatch(match, uri, contentValues, selection, selectionArgs);
+            failed = false;
+            return rowsUpdated;
+        } finally {
+            mStats.record(ProviderStats.UPDATE, match, start, rowsUpdated, failed);
+        }
+    }
+
+    private int updateMatch(int match, Uri uri, ContentValues contentValues, String selection,
+                            String[] selectionArgs) {
+        int rowsUpdated;
         switch (match) {
             case ITEMS:
-                return updateItem(uri, contentValues, selection, selectionArgs);
+                rowsUpdated = updateItem(uri, contentValues, itemSelection(selection), selectionArgs);
+                if (rowsUpdated != 0)
+                    notifyChange(uri);
+                return rowsUpdated;
             case ITEM_ID:
                 selection = ItemContract.ItemEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                int rowsUpdated = updateItem(uri, contentValues, selection, selectionArgs);
+                rowsUpdated = updateItem(uri, contentValues, selection, selectionArgs);
                 if (rowsUpdated != 0)
-                    getContext().getContentResolver().notifyChange(uri, null);
+                    notifyChange(uri);
                 return rowsUpdated;
+            case ITEM_ADJUST:
+                return adjustQuantity(contentValues, Long.parseLong(uri.getPathSegments().get(1)));
+            case SUPPLIERS:
+                return updateSupplier(uri, contentValues, selection, selectionArgs);
+            case SUPPLIER_ID:
+                selection = ItemContract.SupplierEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                return updateSupplier(uri, contentValues, selection, selectionArgs);
             default:
                 throw new IllegalArgumentException("Update is not supported for " + uri);
         }
     }
 
+    /**
+     * Updates supplier rows only; their items pick up the change through the join, so observers
+     * of the items are notified as well.
+     */
+    private int updateSupplier(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        validateSupplier(values, false);
+        if (values.size() == 0) {
+            return 0;
+        }
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        int rowsUpdated = database.update(ItemContract.SupplierEntry.TABLE_NAME, values, selection, selectionArgs);
+        if (rowsUpdated != 0) {
+            notifyChange(uri);
+            notifyChange(ItemContract.ItemEntry.CONTENT_URI);
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * Selections over the items URI may name the supplier columns, which only the view has, so
+     * writes to the table pick their rows through it.
+     */
+    private static String itemSelection(String selection) {
+        if (selection == null)
+            return null;
+        return ItemContract.ItemEntry._ID + " IN (SELECT " + ItemContract.ItemEntry._ID + " FROM "
+                + ItemContract.ItemEntry.VIEW_NAME + " WHERE " + selection + ")";
+    }
+
+    /**
+     * Adds {@link ItemContract.ItemEntry#ADJUST_DELTA} to the quantity of one item in a single
+     * statement, so concurrent callers never lose each other's changes. The row is left untouched
+     * and 0 is returned when the quantity would drop below zero.
+     */
+    private int adjustQuantity(ContentValues values, long id) {
+        Integer delta = values.getAsInteger(ItemContract.ItemEntry.ADJUST_DELTA);
+        if (delta == null) {
+            throw new IllegalArgumentException("Adjustment requires a delta");
+        }
+        if (delta == 0) {
+            return 0;
+        }
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        SQLiteStatement statement = database.compileStatement(SQL_ADJUST_QUANTITY);
+        int rowsUpdated;
+        try {
+            statement.bindLong(1, delta);
+            statement.bindLong(2, id);
+            statement.bindLong(3, delta);
+            rowsUpdated = statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+        if (rowsUpdated != 0)
+            notifyChange(ContentUris.withAppendedId(ItemContract.ItemEntry.CONTENT_URI, id));
+        return rowsUpdated;
+    }
+
     private int updateItem(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         if (values.containsKey(ItemContract.ItemEntry.COLUMN_ITEM_NAME)) {
             String name = values.getAsString(ItemContract.ItemEntry.COLUMN_ITEM_NAME);
@@ -132,55 +924,129 @@ public class ItemProvider extends ContentProvider {
         }
         if (values.containsKey(ItemContract.ItemEntry.COLUMN_ITEM_QUANTITY)) {
             Integer quantity = values.getAsInteger(ItemContract.ItemEntry.COLUMN_ITEM_QUANTITY);
-            if (quantity == null) {
+            if (quantity == null || quantity < 0) {
                 throw new IllegalArgumentException("Item requires valid quantity");
             }
         }
         if (values.containsKey(ItemContract.ItemEntry.COLUMN_ITEM_PRICE)) {
-            // Check that the weight is greater than or equal to 0 kg
-            Integer price = values.getAsInteger(ItemContract.ItemEntry.COLUMN_ITEM_PRICE);
-            if (price != null && price < 0) {
+            Long price = values.getAsLong(ItemContract.ItemEntry.COLUMN_ITEM_PRICE);
+            if (price == null || price < 0) {
                 throw new IllegalArgumentException("Item requires valid price");
             }
         }
+        validateReorderThreshold(values);
         if (values.size() == 0) {
             return 0;
         }
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
-        return database.update(ItemContract.ItemEntry.TABLE_NAME, values, selection, selectionArgs);
+        Set<Uri> newSuppliers = new HashSet<>();
+        int rowsUpdated;
+        // A new supplier is rolled back if the update fails. It is kept when no row matched, as
+        // leaving this transaction unsuccessful would also roll back a batch it is part of.
+        database.beginTransaction();
+        try {
+            rowsUpdated = database.update(ItemContract.ItemEntry.TABLE_NAME,
+                    toItemRow(database, values, new HashMap<String, Long>(), newSuppliers), selection, selectionArgs);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        for (Uri supplierUri : newSuppliers)
+            notifyChange(supplierUri);
+        return rowsUpdated;
     }
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+        boolean failed = true;
+        int rowsDeleted = 0;
+        try {
+            rowsDeleted = deleteMatch(match, uri, selection, selectionArgs);
+            failed = false;
+            return rowsDeleted;
+        } finally {
+            mStats.record(ProviderStats.DELETE, match, start, rowsDeleted, failed);
+        }
+    }
+
+    private int deleteMatch(int match, Uri uri, String selection, String[] selectionArgs) {
+        if (match == STATS) {
+            mStats.reset();
+            return 0;
+        }
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
-        final int match = sUriMatcher.match(uri);
         int rowsDeleted;
         switch (match) {
             case ITEMS:
-                rowsDeleted = database.delete(ItemContract.ItemEntry.TABLE_NAME, selection, selectionArgs);
+                rowsDeleted = database.delete(ItemContract.ItemEntry.TABLE_NAME, itemSelection(selection),
+                        selectionArgs);
                 if (rowsDeleted != 0)
-                    getContext().getContentResolver().notifyChange(uri, null);
+                    notifyChange(uri);
                 return rowsDeleted;
             case ITEM_ID:
                 selection = ItemContract.ItemEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
                 rowsDeleted = database.delete(ItemContract.ItemEntry.TABLE_NAME, selection, selectionArgs);
                 if (rowsDeleted != 0)
-                    getContext().getContentResolver().notifyChange(uri, null);
+                    notifyChange(uri);
+                return rowsDeleted;
+            case SUPPLIERS:
+                // Fails with a constraint error while items still refer to one of the suppliers.
+                rowsDeleted = database.delete(ItemContract.SupplierEntry.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted != 0)
+                    notifyChange(uri);
+                return rowsDeleted;
+            case SUPPLIER_ID:
+                selection = ItemContract.SupplierEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                rowsDeleted = database.delete(ItemContract.SupplierEntry.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted != 0)
+                    notifyChange(uri);
                 return rowsDeleted;
             default:
                 throw new IllegalArgumentException("Deletion is not supported for " + uri);
         }
     }
 
+    /**
+     * Prints the row cache counters and the call stats, e.g. with
+     * {@code adb shell dumpsys activity provider com.example.android.myinventoryapp}.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        synchronized (mRowCache) {
+            writer.println("Row cache: " + mRowCache.size() + "/" + mRowCache.maxSize() + " rows, "
+                    + mRowCache.hitCount() + " hits, " + mRowCache.missCount() + " misses, "
+                    + mRowCache.evictionCount() + " evictions");
+        }
+        mStats.dump(writer);
+    }
+
     @Override
     public String getType(Uri uri) {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case ITEMS:
+            case SEARCH:
+            case LOW_STOCK:
                 return ItemContract.ItemEntry.CONTENT_LIST_TYPE;
             case ITEM_ID:
+            case ITEM_ADJUST:
                 return ItemContract.ItemEntry.CONTENT_ITEM_TYPE;
+            case SUPPLIERS:
+                return ItemContract.SupplierEntry.CONTENT_LIST_TYPE;
+            case SUPPLIER_ID:
+                return ItemContract.SupplierEntry.CONTENT_ITEM_TYPE;
+            case SUMMARY:
+                return ItemContract.SummaryEntry.CONTENT_ITEM_TYPE;
+            case ITEM_HISTORY:
+                return ItemContract.StockHistoryEntry.CONTENT_TYPE;
+            case STATS:
+                return ItemContract.StatsEntry.CONTENT_TYPE;
+            case CHANGES:
+                return ItemContract.ItemChangeEntry.CONTENT_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI " + uri + " with match " + match);
         }
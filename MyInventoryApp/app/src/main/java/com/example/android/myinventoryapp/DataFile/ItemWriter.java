@@ -0,0 +1,122 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs item inserts, updates and deletes on a background thread, one at a time in the order
+ * they were issued, and reports each outcome on the main thread. Screens can close as soon as
+ * they have handed over a write; callbacks should then hold on to the application context only.
+ */
+public class ItemWriter {
+
+    public static final String LOG_TAG = ItemWriter.class.getSimpleName();
+    private static ItemWriter sInstance;
+
+    /**
+     * Outcome of one write, called on the main thread. Null callbacks are allowed.
+     */
+    public interface Callback {
+        /**
+         * @param uri  the new item for inserts, otherwise the URI written to
+         * @param rows rows inserted, updated or deleted; 0 if the provider rejected the write
+         */
+        void onWriteFinished(Uri uri, int rows);
+
+        /**
+         * The provider threw, e.g. because the values were invalid. Already logged.
+         */
+        void onWriteFailed(Uri uri, RuntimeException e);
+    }
+
+    private final ContentResolver mResolver;
+    private final Executor mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private ItemWriter(Context context) {
+        this(context.getContentResolver());
+    }
+
+    ItemWriter(ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    public static synchronized ItemWriter getInstance(Context context) {
+        if (sInstance == null)
+            sInstance = new ItemWriter(context.getApplicationContext());
+        return sInstance;
+    }
+
+    public void insert(final ContentValues values, final Callback callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Uri newUri = mResolver.insert(ItemEntry.CONTENT_URI, values);
+                    finished(callback, newUri, newUri != null ? 1 : 0);
+                } catch (RuntimeException e) {
+                    failed(callback, ItemEntry.CONTENT_URI, e);
+                }
+            }
+        });
+    }
+
+    public void update(final Uri uri, final ContentValues values, final Callback callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    finished(callback, uri, mResolver.update(uri, values, null, null));
+                } catch (RuntimeException e) {
+                    failed(callback, uri, e);
+                }
+            }
+        });
+    }
+
+    public void delete(final Uri uri, final Callback callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    finished(callback, uri, mResolver.delete(uri, null, null));
+                } catch (RuntimeException e) {
+                    failed(callback, uri, e);
+                }
+            }
+        });
+    }
+
+    private void finished(final Callback callback, final Uri uri, final int rows) {
+        if (callback == null)
+            return;
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onWriteFinished(uri, rows);
+            }
+        });
+    }
+
+    private void failed(final Callback callback, final Uri uri, final RuntimeException e) {
+        Log.e(LOG_TAG, "Write to " + uri + " failed", e);
+        if (callback == null)
+            return;
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onWriteFailed(uri, e);
+            }
+        });
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.text.ParsePosition;
+import java.util.Locale;
+
+/**
+ * Converts between the integer minor units stored in {@link ItemContract.ItemEntry#COLUMN_ITEM_PRICE}
+ * and the text shown to and typed by the user. Parsing and formatting only happen at the UI edges;
+ * SQL always sees the integer.
+ */
+public final class PriceUtils {
+
+    /**
+     * Number of decimal places kept in the stored price: 100 minor units per major unit.
+     */
+    public static final int FRACTION_DIGITS = 2;
+
+    private PriceUtils() {
+    }
+
+    /**
+     * Parses a price typed in the given locale, e.g. "45,000" or "12.50" in en_US, "12,50" in de_DE.
+     *
+     * @return the price in minor units
+     * @throws NumberFormatException if the text is not a non-negative number
+     */
+    public static long parse(String text, Locale locale) {
+        String trimmed = text.trim();
+        NumberFormat format = NumberFormat.getNumberInstance(locale);
+        if (format instanceof DecimalFormat)
+            ((DecimalFormat) format).setParseBigDecimal(true);
+        ParsePosition position = new ParsePosition(0);
+        Number number = format.parse(trimmed, position);
+        if (number == null || trimmed.isEmpty() || position.getIndex() != trimmed.length()) {
+            throw new NumberFormatException("Invalid price: " + text);
+        }
+        BigDecimal value = number instanceof BigDecimal ? (BigDecimal) number : new BigDecimal(number.toString());
+        if (value.signum() < 0) {
+            throw new NumberFormatException("Negative price: " + text);
+        }
+        return value.setScale(FRACTION_DIGITS, RoundingMode.HALF_UP).unscaledValue().longValue();
+    }
+
+    public static long parse(String text) {
+        return parse(text, Locale.getDefault());
+    }
+
+    /**
+     * Formats minor units for display, with grouping separators, e.g. "45,000.00".
+     */
+    public static String format(long minorUnits, Locale locale) {
+        return newFormat(locale, true).format(toMajorUnits(minorUnits));
+    }
+
+    public static String format(long minorUnits) {
+        return format(minorUnits, Locale.getDefault());
+    }
+
+    /**
+     * Formats minor units for an input field, without grouping separators, e.g. "45000.00".
+     */
+    public static String formatPlain(long minorUnits, Locale locale) {
+        return newFormat(locale, false).format(toMajorUnits(minorUnits));
+    }
+
+    public static String formatPlain(long minorUnits) {
+        return formatPlain(minorUnits, Locale.getDefault());
+    }
+
+    private static BigDecimal toMajorUnits(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, FRACTION_DIGITS);
+    }
+
+    private static NumberFormat newFormat(Locale locale, boolean grouping) {
+        NumberFormat format = NumberFormat.getNumberInstance(locale);
+        format.setGroupingUsed(grouping);
+        format.setMinimumFractionDigits(FRACTION_DIGITS);
+        format.setMaximumFractionDigits(FRACTION_DIGITS);
+        return format;
+    }
+}
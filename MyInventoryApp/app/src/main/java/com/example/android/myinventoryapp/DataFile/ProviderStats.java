@@ -0,0 +1,181 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.StatsEntry;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Call counts, latency histograms and rows touched for each provider operation and URI match.
+ * Everything lives in preallocated atomic arrays, so {@link #record} neither allocates nor locks
+ * and costs two clock reads and a handful of atomic adds per call.
+ * <p>
+ * Latencies go into power-of-two microsecond buckets, so percentiles are upper bounds that are
+ * at most twice the true value; the maximum is exact.
+ * <p>
+ * Stats that are not enabled record nothing, so release builds don't pay for them.
+ */
+final class ProviderStats {
+
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int BULK_INSERT = 2;
+    static final int UPDATE = 3;
+    static final int DELETE = 4;
+    private static final String[] OPERATIONS = {"query", "insert", "bulk_insert", "update", "delete"};
+    // Bucket b holds latencies below 2^b microseconds; the last one everything from ~4 s up.
+    private static final int BUCKETS = 24;
+
+    private final boolean mEnabled;
+    private final String[] mMatchNames;
+    private final int mFirstMatch;
+    // One slot per operation and match; the last match slot collects unknown URIs.
+    private final int mSlots;
+    private final AtomicLongArray mCounts;
+    private final AtomicLongArray mErrors;
+    private final AtomicLongArray mRows;
+    private final AtomicLongArray mTotalNanos;
+    private final AtomicLongArray mMaxNanos;
+    private final AtomicLongArray mHistogram;
+
+    /**
+     * @param firstMatch the lowest URI match code
+     * @param matchNames names of the match codes from {@code firstMatch} up, for reports
+     * @param enabled    whether calls are recorded at all
+     */
+    ProviderStats(int firstMatch, String[] matchNames, boolean enabled) {
+        mEnabled = enabled;
+        mFirstMatch = firstMatch;
+        mMatchNames = matchNames;
+        mSlots = OPERATIONS.length * (matchNames.length + 1);
+        mCounts = new AtomicLongArray(mSlots);
+        mErrors = new AtomicLongArray(mSlots);
+        mRows = new AtomicLongArray(mSlots);
+        mTotalNanos = new AtomicLongArray(mSlots);
+        mMaxNanos = new AtomicLongArray(mSlots);
+        mHistogram = new AtomicLongArray(mSlots * BUCKETS);
+    }
+
+    /**
+     * Records one call that started at {@code startNanos}, from {@link System#nanoTime()}.
+     *
+     * @param rows rows returned, inserted, updated or deleted; ignored for failed calls
+     */
+    void record(int operation, int match, long startNanos, int rows, boolean failed) {
+        if (!mEnabled)
+            return;
+        long nanos = System.nanoTime() - startNanos;
+        int slot = slot(operation, match);
+        mCounts.incrementAndGet(slot);
+        if (failed)
+            mErrors.incrementAndGet(slot);
+        else
+            mRows.addAndGet(slot, rows);
+        mTotalNanos.addAndGet(slot, nanos);
+        long max = mMaxNanos.get(slot);
+        while (nanos > max && !mMaxNanos.compareAndSet(slot, max, nanos))
+            max = mMaxNanos.get(slot);
+        mHistogram.incrementAndGet(slot * BUCKETS + bucket(nanos / 1000));
+    }
+
+    /**
+     * Clears all counters. Calls recorded while this runs may be partly lost.
+     */
+    void reset() {
+        for (int i = 0; i < mSlots; i++) {
+            mCounts.set(i, 0);
+            mErrors.set(i, 0);
+            mRows.set(i, 0);
+            mTotalNanos.set(i, 0);
+            mMaxNanos.set(i, 0);
+        }
+        for (int i = 0; i < mHistogram.length(); i++)
+            mHistogram.set(i, 0);
+    }
+
+    /**
+     * One {@link StatsEntry} row per operation and URI match that was called at least once.
+     */
+    Cursor toCursor() {
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                StatsEntry.COLUMN_OPERATION,
+                StatsEntry.COLUMN_URI_MATCH,
+                StatsEntry.COLUMN_COUNT,
+                StatsEntry.COLUMN_ERRORS,
+                StatsEntry.COLUMN_ROWS,
+                StatsEntry.COLUMN_MEAN_US,
+                StatsEntry.COLUMN_P50_US,
+                StatsEntry.COLUMN_P90_US,
+                StatsEntry.COLUMN_P99_US,
+                StatsEntry.COLUMN_MAX_US});
+        for (int slot = 0; slot < mSlots; slot++) {
+            long count = mCounts.get(slot);
+            if (count == 0)
+                continue;
+            cursor.addRow(new Object[]{
+                    OPERATIONS[slot % OPERATIONS.length],
+                    matchName(slot / OPERATIONS.length),
+                    count,
+                    mErrors.get(slot),
+                    mRows.get(slot),
+                    mTotalNanos.get(slot) / count / 1000,
+                    percentile(slot, count, 50),
+                    percentile(slot, count, 90),
+                    percentile(slot, count, 99),
+                    mMaxNanos.get(slot) / 1000});
+        }
+        return cursor;
+    }
+
+    void dump(PrintWriter writer) {
+        if (!mEnabled) {
+            writer.println("Calls: not recorded, stats are disabled in this build");
+            return;
+        }
+        Cursor cursor = toCursor();
+        try {
+            writer.println("Calls: operation uri count errors rows mean/p50/p90/p99/max us");
+            while (cursor.moveToNext()) {
+                writer.println("  " + cursor.getString(0) + " " + cursor.getString(1) + " "
+                        + cursor.getLong(2) + " " + cursor.getLong(3) + " " + cursor.getLong(4) + " "
+                        + cursor.getLong(5) + "/" + cursor.getLong(6) + "/" + cursor.getLong(7) + "/"
+                        + cursor.getLong(8) + "/" + cursor.getLong(9));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int slot(int operation, int match) {
+        int matchSlot = match - mFirstMatch;
+        if (matchSlot < 0 || matchSlot >= mMatchNames.length)
+            matchSlot = mMatchNames.length;
+        return matchSlot * OPERATIONS.length + operation;
+    }
+
+    private String matchName(int matchSlot) {
+        return matchSlot < mMatchNames.length ? mMatchNames[matchSlot] : "unknown";
+    }
+
+    /**
+     * Upper bound in microseconds of the bucket holding the given percentile of the calls.
+     */
+    private long percentile(int slot, long count, int percent) {
+        long rank = (count * percent + 99) / 100;
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += mHistogram.get(slot * BUCKETS + b);
+            if (seen >= rank)
+                return 1L << b;
+        }
+        return 1L << BUCKETS;
+    }
+
+    static int bucket(long micros) {
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return bucket < BUCKETS ? bucket : BUCKETS - 1;
+    }
+}
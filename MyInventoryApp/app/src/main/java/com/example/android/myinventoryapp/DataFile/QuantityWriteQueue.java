@@ -0,0 +1,222 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.RemoteException;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Background queue for quantity adjustments coming from the sell/buy buttons.
+ * Deltas are merged per item id for a short window and then written through
+ * {@link ItemProvider#applyBatch} as one transaction with one change notification.
+ * Until a delta is handed to the provider, {@link #getPendingDelta} lets the UI show it
+ * optimistically. It stops counting as pending before the write rather than after, since the
+ * provider notifies before the write call returns and a reload then already sees it. A reload
+ * that reads just before the commit misses it briefly, until the notification that follows.
+ * <p>
+ * No delta is dropped on the way. If the batch fails, its adjustments are written one at a
+ * time so one bad item can't hold back the others, and those that still fail are queued again
+ * with a growing delay until they go through. Adjustments the provider turns down, e.g. a sale
+ * of more than is in stock or of an item deleted meanwhile, are reported to the
+ * {@link Listener}s instead.
+ */
+public class QuantityWriteQueue {
+
+    public static final String LOG_TAG = QuantityWriteQueue.class.getSimpleName();
+    private static final long FLUSH_DELAY_MS = 300;
+    private static final long MAX_RETRY_DELAY_MS = 60 * 1000;
+    private static QuantityWriteQueue sInstance;
+
+    /**
+     * Told on the main thread about adjustments that were not applied and never will be.
+     */
+    public interface Listener {
+        void onAdjustmentRejected(long itemId, int delta);
+    }
+
+    private final ContentResolver mResolver;
+    private final Handler mHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // Only touched on the main thread.
+    private final List<Listener> mListeners = new ArrayList<>();
+    // Deltas not yet handed to the provider. Guarded by this.
+    private LongSparseArray<Integer> mPending = new LongSparseArray<>();
+    private boolean mFlushScheduled;
+    // Flushes in a row that left adjustments to retry; only touched on the queue's thread.
+    private int mFailedAttempts;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushPending();
+        }
+    };
+
+    private QuantityWriteQueue(Context context) {
+        this(context.getContentResolver());
+    }
+
+    QuantityWriteQueue(ContentResolver resolver) {
+        mResolver = resolver;
+        HandlerThread thread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    public static synchronized QuantityWriteQueue getInstance(Context context) {
+        if (sInstance == null)
+            sInstance = new QuantityWriteQueue(context.getApplicationContext());
+        return sInstance;
+    }
+
+    /**
+     * Must be called on the main thread, like {@link #removeListener}.
+     */
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Queues a quantity change for the item. The write happens on the queue's own thread
+     * within {@link #FLUSH_DELAY_MS}, merged with any other change made in the meantime.
+     */
+    public synchronized void adjust(long itemId, int delta) {
+        mPending.put(itemId, mPending.get(itemId, 0) + delta);
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mHandler.postDelayed(mFlushRunnable, FLUSH_DELAY_MS);
+        }
+    }
+
+    /**
+     * Returns the change queued for the item that has not been handed to the provider yet.
+     */
+    public synchronized int getPendingDelta(long itemId) {
+        return mPending.get(itemId, 0);
+    }
+
+    /**
+     * Writes the queued changes right away instead of waiting for the window to close.
+     */
+    public synchronized void flush() {
+        if (mPending.size() == 0)
+            return;
+        mHandler.removeCallbacks(mFlushRunnable);
+        mFlushScheduled = true;
+        mHandler.post(mFlushRunnable);
+    }
+
+    private void flushPending() {
+        LongSparseArray<Integer> batch;
+        synchronized (this) {
+            mFlushScheduled = false;
+            batch = mPending;
+            mPending = new LongSparseArray<>();
+        }
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            int delta = batch.valueAt(i);
+            if (delta != 0)
+                operations.add(ContentProviderOperation
+                        .newUpdate(ItemEntry.buildAdjustUri(batch.keyAt(i)))
+                        .withValue(ItemEntry.ADJUST_DELTA, delta)
+                        .build());
+        }
+        if (!operations.isEmpty()) {
+            try {
+                ContentProviderResult[] results = mResolver.applyBatch(ItemContract.CONTENT_AUTHORITY, operations);
+                for (int i = 0; i < results.length; i++) {
+                    if (results[i].count == null || results[i].count == 0)
+                        rejected(operations.get(i).getUri(), batch);
+                }
+            } catch (RemoteException | OperationApplicationException | RuntimeException e) {
+                // The batch is one transaction, so none of it was applied.
+                Log.e(LOG_TAG, "Failed to write quantity adjustments, writing them one by one", e);
+                applyOneByOne(batch);
+                return;
+            }
+        }
+        mFailedAttempts = 0;
+    }
+
+    /**
+     * Writes the adjustments of a failed batch one at a time. Those the provider throws on for a
+     * reason that may pass, like a locked or full database, are queued again with backoff.
+     */
+    private void applyOneByOne(LongSparseArray<Integer> batch) {
+        LongSparseArray<Integer> retries = new LongSparseArray<>();
+        for (int i = 0; i < batch.size(); i++) {
+            long itemId = batch.keyAt(i);
+            int delta = batch.valueAt(i);
+            if (delta != 0) {
+                Uri uri = ItemEntry.buildAdjustUri(itemId);
+                ContentValues values = new ContentValues();
+                values.put(ItemEntry.ADJUST_DELTA, delta);
+                try {
+                    if (mResolver.update(uri, values, null, null) == 0)
+                        rejected(uri, batch);
+                } catch (IllegalArgumentException e) {
+                    // Invalid for the provider, so retrying can't help.
+                    Log.e(LOG_TAG, "Quantity adjustment invalid for " + uri, e);
+                    rejected(uri, batch);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Failed to write quantity adjustment for " + uri, e);
+                    retries.put(itemId, delta);
+                }
+            }
+        }
+        if (retries.size() != 0) {
+            mFailedAttempts++;
+            requeue(retries, Math.min(FLUSH_DELAY_MS << Math.min(mFailedAttempts, 16), MAX_RETRY_DELAY_MS));
+        } else {
+            mFailedAttempts = 0;
+        }
+    }
+
+    private void rejected(Uri adjustUri, LongSparseArray<Integer> batch) {
+        final long itemId = Long.parseLong(adjustUri.getPathSegments().get(1));
+        final int delta = batch.get(itemId, 0);
+        Log.w(LOG_TAG, "Quantity adjustment of " + delta + " rejected for " + adjustUri);
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener listener : new ArrayList<>(mListeners))
+                    listener.onAdjustmentRejected(itemId, delta);
+            }
+        });
+    }
+
+    private void requeue(LongSparseArray<Integer> retries, long delayMs) {
+        synchronized (this) {
+            for (int i = 0; i < retries.size(); i++) {
+                long itemId = retries.keyAt(i);
+                mPending.put(itemId, mPending.get(itemId, 0) + retries.valueAt(i));
+            }
+            // Replaces a flush scheduled sooner, so retries back off even while new taps come in.
+            mHandler.removeCallbacks(mFlushRunnable);
+            mFlushScheduled = true;
+            mHandler.postDelayed(mFlushRunnable, delayMs);
+        }
+        // Rows reloaded since the batch was taken show the quantity without these deltas.
+        mResolver.notifyChange(ItemEntry.CONTENT_URI, null);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.text.TextUtils;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns every item at or below its reorder threshold into one purchase order per supplier. All
+ * low-stock items come from a single query sorted by supplier, so each order is complete as soon
+ * as the next supplier's rows start and is handed over right away; only one order is held in
+ * memory at a time.
+ * <p>
+ * Runs on the calling thread, which must not be the main thread.
+ */
+public final class ReorderEngine {
+
+    private static final String[] PROJECTION = {
+            ItemEntry.COLUMN_ITEM_NAME,
+            ItemEntry.COLUMN_ITEM_QUANTITY,
+            ItemEntry.COLUMN_REORDER_THRESHOLD,
+            ItemEntry.COLUMN_ITEM_SUPPLIER,
+            ItemEntry.COLUMN_SUPPLIER_EMAIL};
+    // Orders go to an address, so a supplier listed with two addresses gets two orders.
+    private static final String SORT_ORDER = ItemEntry.COLUMN_ITEM_SUPPLIER + ", "
+            + ItemEntry.COLUMN_SUPPLIER_EMAIL + ", " + ItemEntry.COLUMN_ITEM_NAME;
+
+    /**
+     * Called on the generating thread once per supplier, in supplier order.
+     */
+    public interface Listener {
+        void onPurchaseOrder(PurchaseOrder order) throws IOException;
+    }
+
+    public static class OrderLine {
+        public final String name;
+        public final int quantityInStock;
+        public final int orderQuantity;
+
+        OrderLine(String name, int quantityInStock, int orderQuantity) {
+            this.name = name;
+            this.quantityInStock = quantityInStock;
+            this.orderQuantity = orderQuantity;
+        }
+    }
+
+    public static class PurchaseOrder {
+        public final String supplier;
+        public final String email;
+        public final List<OrderLine> lines = new ArrayList<>();
+
+        PurchaseOrder(String supplier, String email) {
+            this.supplier = supplier;
+            this.email = email;
+        }
+
+        public String getSubject() {
+            return "Order For: " + supplier;
+        }
+
+        /**
+         * The order as the text of an email to the supplier.
+         */
+        public String getBody() {
+            StringBuilder body = new StringBuilder("Please send:\n\n");
+            for (OrderLine line : lines)
+                body.append(line.orderQuantity).append(" units of ").append(line.name).append('\n');
+            return body.append("\nThank you.").toString();
+        }
+    }
+
+    private ReorderEngine() {
+    }
+
+    /**
+     * Hands one purchase order per supplier of low-stock items to the listener.
+     *
+     * @return the number of orders generated
+     * @throws IOException if the listener fails; orders handed over before stay handed over
+     */
+    public static int generate(ContentResolver resolver, Listener listener) throws IOException {
+        Cursor cursor = resolver.query(ItemEntry.LOW_STOCK_URI, PROJECTION, null, null, SORT_ORDER);
+        if (cursor == null)
+            throw new IOException("No cursor for " + ItemEntry.LOW_STOCK_URI);
+        int orders = 0;
+        try {
+            PurchaseOrder order = null;
+            while (cursor.moveToNext()) {
+                String supplier = cursor.getString(3);
+                String email = cursor.getString(4);
+                if (order == null || !TextUtils.equals(order.supplier, supplier)
+                        || !TextUtils.equals(order.email, email)) {
+                    if (order != null) {
+                        listener.onPurchaseOrder(order);
+                        orders++;
+                    }
+                    order = new PurchaseOrder(supplier, email);
+                }
+                int quantity = cursor.getInt(1);
+                order.lines.add(new OrderLine(cursor.getString(0), quantity,
+                        orderQuantity(quantity, cursor.getInt(2))));
+            }
+            if (order != null) {
+                listener.onPurchaseOrder(order);
+                orders++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return orders;
+    }
+
+    /**
+     * Enough units to bring the item back up to twice its reorder threshold, and at least one.
+     */
+    static int orderQuantity(int quantity, int reorderThreshold) {
+        return Math.max(2 * reorderThreshold - quantity, 1);
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Replays shop traffic against the catalog from several threads at once and measures how long
+ * each kind of operation takes through {@link ItemProvider}:
+ * <ul>
+ * <li>sale: bursts of one to five sales of one to three units, mostly of popular items</li>
+ * <li>delivery: one batch restocking five to twenty items</li>
+ * <li>search: a typed search for the start of a brand or product name</li>
+ * <li>browse: a page of the list from a random letter on</li>
+ * <li>edit: a new price and reorder threshold for one item</li>
+ * </ul>
+ * Each thread draws from its own random generator seeded from the run's seed, so the same seed
+ * issues the same operations on the same catalog. The catalog is changed for real; run it on
+ * generated data, e.g. from {@link CatalogGenerator}.
+ * <p>
+ * Runs on the calling thread, which must not be the main thread.
+ */
+public final class ScenarioRunner {
+
+    public static final String LOG_TAG = ScenarioRunner.class.getSimpleName();
+    private static final int SALE = 0;
+    private static final int DELIVERY = 1;
+    private static final int SEARCH = 2;
+    private static final int BROWSE = 3;
+    private static final int EDIT = 4;
+    private static final String[] OPERATIONS = {"sale", "delivery", "search", "browse", "edit"};
+    // Relative frequency of each operation above; a sale counts once per burst.
+    private static final int[] WEIGHTS = {40, 5, 25, 20, 10};
+    // Sales follow a Zipf distribution over the items in a per-run random order.
+    private static final double POPULARITY_EXPONENT = 0.9;
+
+    /**
+     * Latencies of one kind of operation over the whole run.
+     */
+    public static class Result {
+        public final String operation;
+        public final int count;
+        public final int errors;
+        public final long p50Micros;
+        public final long p99Micros;
+        public final long maxMicros;
+
+        Result(String operation, long[] latencies, int count, int errors) {
+            this.operation = operation;
+            this.count = count;
+            this.errors = errors;
+            Arrays.sort(latencies, 0, count);
+            p50Micros = count == 0 ? 0 : latencies[(count - 1) / 2] / 1000;
+            p99Micros = count == 0 ? 0 : latencies[(count - 1) * 99 / 100] / 1000;
+            maxMicros = count == 0 ? 0 : latencies[count - 1] / 1000;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-8s %7d ops %5d errors  p50 %8d us  p99 %8d us  max %8d us",
+                    operation, count, errors, p50Micros, p99Micros, maxMicros);
+        }
+    }
+
+    /**
+     * All results of a run: sale, delivery, search, browse and edit, in that order.
+     */
+    public static class Report {
+        public final int threads;
+        public final long elapsedMillis;
+        public final Result[] results;
+
+        Report(int threads, long elapsedMillis, Result[] results) {
+            this.threads = threads;
+            this.elapsedMillis = elapsedMillis;
+            this.results = results;
+        }
+
+        @Override
+        public String toString() {
+            int operations = 0;
+            for (Result result : results)
+                operations += result.count;
+            StringBuilder report = new StringBuilder(String.format(Locale.US,
+                    "%d operations on %d threads in %d ms%n", operations, threads, elapsedMillis));
+            for (Result result : results)
+                report.append(result).append('\n');
+            return report.toString();
+        }
+    }
+
+    private final ContentResolver mResolver;
+    private final long mSeed;
+    private final int mThreads;
+    private final int mOperationsPerThread;
+
+    /**
+     * @param operationsPerThread how many operations each thread issues, a burst of sales
+     *                            counting once
+     */
+    public ScenarioRunner(ContentResolver resolver, long seed, int threads, int operationsPerThread) {
+        if (threads < 1 || operationsPerThread < 1)
+            throw new IllegalArgumentException("Needs at least one thread and one operation");
+        mResolver = resolver;
+        mSeed = seed;
+        mThreads = threads;
+        mOperationsPerThread = operationsPerThread;
+    }
+
+    /**
+     * Runs the scenario to the end, all threads at once.
+     *
+     * @throws IllegalStateException if the catalog is empty
+     */
+    public Report run() throws InterruptedException {
+        long[] itemIds = readItemIds();
+        if (itemIds.length == 0)
+            throw new IllegalStateException("No items to run the scenario on");
+        // Which items sell best is part of the scenario, so it comes from the seed too.
+        shuffle(itemIds, new Random(mSeed));
+        double[] popularity = CatalogGenerator.zipf(itemIds.length, POPULARITY_EXPONENT);
+
+        Worker[] workers = new Worker[mThreads];
+        Thread[] threads = new Thread[mThreads];
+        long start = System.nanoTime();
+        for (int i = 0; i < mThreads; i++) {
+            workers[i] = new Worker(new Random(mSeed + i + 1), itemIds, popularity);
+            threads[i] = new Thread(workers[i], LOG_TAG + "-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        Result[] results = new Result[OPERATIONS.length];
+        for (int operation = 0; operation < OPERATIONS.length; operation++) {
+            int count = 0;
+            int errors = 0;
+            for (Worker worker : workers) {
+                count += worker.mCounts[operation];
+                errors += worker.mErrors[operation];
+            }
+            long[] latencies = new long[count];
+            int offset = 0;
+            for (Worker worker : workers) {
+                System.arraycopy(worker.mLatencies[operation], 0, latencies, offset, worker.mCounts[operation]);
+                offset += worker.mCounts[operation];
+            }
+            results[operation] = new Result(OPERATIONS[operation], latencies, count, errors);
+        }
+        return new Report(mThreads, elapsedMillis, results);
+    }
+
+    private long[] readItemIds() {
+        Cursor cursor = mResolver.query(ItemEntry.CONTENT_URI, new String[]{ItemEntry._ID}, null, null, null);
+        if (cursor == null)
+            return new long[0];
+        try {
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++)
+                ids[i] = cursor.getLong(0);
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void shuffle(long[] values, Random random) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+
+    private class Worker implements Runnable {
+        private final Random mRandom;
+        private final long[] mItemIds;
+        private final double[] mPopularity;
+        private final long[][] mLatencies = new long[OPERATIONS.length][];
+        private final int[] mCounts = new int[OPERATIONS.length];
+        private final int[] mErrors = new int[OPERATIONS.length];
+
+        Worker(Random random, long[] itemIds, double[] popularity) {
+            mRandom = random;
+            mItemIds = itemIds;
+            mPopularity = popularity;
+            for (int i = 0; i < OPERATIONS.length; i++)
+                mLatencies[i] = new long[64];
+        }
+
+        @Override
+        public void run() {
+            int totalWeight = 0;
+            for (int weight : WEIGHTS)
+                totalWeight += weight;
+            for (int i = 0; i < mOperationsPerThread; i++) {
+                int pick = mRandom.nextInt(totalWeight);
+                int operation = 0;
+                while (pick >= WEIGHTS[operation])
+                    pick -= WEIGHTS[operation++];
+                int repeat = operation == SALE ? 1 + mRandom.nextInt(5) : 1;
+                for (int r = 0; r < repeat; r++)
+                    measure(operation);
+            }
+        }
+
+        private void measure(int operation) {
+            long start = System.nanoTime();
+            boolean failed = false;
+            try {
+                perform(operation);
+            } catch (RuntimeException | RemoteException | OperationApplicationException e) {
+                Log.w(LOG_TAG, "Failed " + OPERATIONS[operation], e);
+                failed = true;
+            }
+            long latency = System.nanoTime() - start;
+            int count = mCounts[operation];
+            if (count == mLatencies[operation].length)
+                mLatencies[operation] = Arrays.copyOf(mLatencies[operation], count * 2);
+            mLatencies[operation][count] = latency;
+            mCounts[operation]++;
+            if (failed)
+                mErrors[operation]++;
+        }
+
+        private void perform(int operation) throws RemoteException, OperationApplicationException {
+            switch (operation) {
+                case SALE:
+                    ContentValues sale = new ContentValues();
+                    sale.put(ItemEntry.ADJUST_DELTA, -1 - mRandom.nextInt(3));
+                    // Selling more than is in stock changes nothing, as at the till.
+                    mResolver.update(ItemEntry.buildAdjustUri(popularItem()), sale, null, null);
+                    break;
+                case DELIVERY:
+                    ArrayList<ContentProviderOperation> delivery = new ArrayList<>();
+                    int lines = 5 + mRandom.nextInt(16);
+                    for (int i = 0; i < lines; i++) {
+                        delivery.add(ContentProviderOperation.newUpdate(ItemEntry.buildAdjustUri(popularItem()))
+                                .withValue(ItemEntry.ADJUST_DELTA, 10 + mRandom.nextInt(41))
+                                .build());
+                    }
+                    mResolver.applyBatch(ItemContract.CONTENT_AUTHORITY, delivery);
+                    break;
+                case SEARCH:
+                    readAll(mResolver.query(ItemEntry.buildSearchUri(CatalogGenerator.searchTerm(mRandom)),
+                            ItemPager.PROJECTION, null, null, null));
+                    break;
+                case BROWSE:
+                    String afterName = String.valueOf((char) ('A' + mRandom.nextInt(26)));
+                    readAll(mResolver.query(ItemEntry.buildPageUri(afterName, 0, ItemPager.PAGE_SIZE),
+                            ItemPager.PROJECTION, null, null, null));
+                    break;
+                case EDIT:
+                    ContentValues edit = new ContentValues();
+                    edit.put(ItemEntry.COLUMN_ITEM_PRICE, 99 + 100L * mRandom.nextInt(1000));
+                    edit.put(ItemEntry.COLUMN_REORDER_THRESHOLD, 2 + mRandom.nextInt(9));
+                    mResolver.update(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, randomItem()), edit,
+                            null, null);
+                    break;
+            }
+        }
+
+        private long popularItem() {
+            return mItemIds[CatalogGenerator.sample(mRandom, mPopularity)];
+        }
+
+        private long randomItem() {
+            return mItemIds[mRandom.nextInt(mItemIds.length)];
+        }
+
+        private void readAll(Cursor cursor) {
+            if (cursor == null)
+                return;
+            try {
+                while (cursor.moveToNext())
+                    cursor.getString(1);
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.android.myinventoryapp.DataFile;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.StockHistoryEntry;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the stock ledger bounded: movements older than {@link #RETENTION_DAYS} whole days are
+ * rolled up into one snapshot row per item and day, and deleted. History and velocity read the
+ * snapshots for those days, so they stay exact to the day while the movements table only holds
+ * the recent past.
+ */
+public final class StockLedger {
+
+    public static final String LOG_TAG = StockLedger.class.getSimpleName();
+    public static final int RETENTION_DAYS = 30;
+    static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final String PREFS_NAME = "stock_ledger";
+    private static final String PREF_LAST_COMPACTION = "last_compaction";
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+    private static final String SQL_SNAPSHOT = "INSERT INTO " + StockHistoryEntry.SNAPSHOTS_TABLE_NAME + " ("
+            + StockHistoryEntry.COLUMN_ITEM_ID + ", " + StockHistoryEntry.COLUMN_DAY + ", "
+            + StockHistoryEntry.COLUMN_UNITS_IN + ", " + StockHistoryEntry.COLUMN_UNITS_OUT + ") SELECT "
+            + StockHistoryEntry.COLUMN_ITEM_ID + ", " + StockHistoryEntry.COLUMN_CREATED_AT + " / " + DAY_MS + ", "
+            + "SUM(MAX(" + StockHistoryEntry.COLUMN_DELTA + ", 0)), SUM(MAX(-" + StockHistoryEntry.COLUMN_DELTA + ", 0))"
+            + " FROM " + StockHistoryEntry.MOVEMENTS_TABLE_NAME + " WHERE " + StockHistoryEntry.COLUMN_CREATED_AT
+            + " < ? GROUP BY 1, 2";
+    private static final String SQL_DELETE_COMPACTED = "DELETE FROM " + StockHistoryEntry.MOVEMENTS_TABLE_NAME
+            + " WHERE " + StockHistoryEntry.COLUMN_CREATED_AT + " < ?";
+
+    private StockLedger() {
+    }
+
+    /**
+     * Compacts the ledger in the background if that has not happened for a day. Cheap to call,
+     * e.g. whenever the app starts.
+     */
+    public static void compactIfDue(Context context) {
+        final Context appContext = context.getApplicationContext();
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                SharedPreferences prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+                long now = System.currentTimeMillis();
+                long lastCompaction = prefs.getLong(PREF_LAST_COMPACTION, 0);
+                if (now >= lastCompaction && now - lastCompaction < DAY_MS)
+                    return;
+                compact(ItemDbHelper.getInstance(appContext).getWritableDatabase(), now);
+                prefs.edit().putLong(PREF_LAST_COMPACTION, now).apply();
+            }
+        });
+    }
+
+    /**
+     * Rolls the movements of every day before the retention window into snapshots, in one
+     * transaction, so readers see either the movements or their snapshots.
+     *
+     * @return the number of movements compacted
+     */
+    static int compact(SQLiteDatabase db, long now) {
+        // Whole days only, so a day's movements are never split between snapshots and movements.
+        long cutoff = (now / DAY_MS - RETENTION_DAYS) * DAY_MS;
+        SQLiteStatement snapshot = db.compileStatement(SQL_SNAPSHOT);
+        SQLiteStatement delete = db.compileStatement(SQL_DELETE_COMPACTED);
+        int compacted;
+        db.beginTransactionNonExclusive();
+        try {
+            snapshot.bindLong(1, cutoff);
+            snapshot.executeInsert();
+            delete.bindLong(1, cutoff);
+            compacted = delete.executeUpdateDelete();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            snapshot.close();
+            delete.close();
+        }
+        Log.i(LOG_TAG, "Compacted " + compacted + " stock movements");
+        return compacted;
+    }
+}
@@ -2,6 +2,7 @@ package com.example.android.myinventoryapp;
 
 import android.app.Activity;
 import android.app.LoaderManager;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.CursorLoader;
@@ -9,10 +10,7 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
-import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
 import android.support.v4.app.NavUtils;
@@ -23,18 +21,27 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
-import android.view.ViewTreeObserver;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.AutoCompleteTextView;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ImageView;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.android.myinventoryapp.DataFile.ImageStore;
 import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.StockHistoryEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.SupplierEntry;
+import com.example.android.myinventoryapp.DataFile.ItemWriter;
+import com.example.android.myinventoryapp.DataFile.PriceUtils;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class EditorActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
 
@@ -43,20 +50,30 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     private Button mIncreaseBtn;
     private Button mDecreaseBtn;
     private EditText mQuantityEditText;
+    private EditText mReorderThresholdEditText;
+    private TextView mVelocityTextView;
     private Button mOrderButton;
     private EditText mPriceEditText;
-    private EditText mSupplierEditText;
+    private AutoCompleteTextView mSupplierEditText;
+    private ArrayAdapter<String> mSupplierAdapter;
+    // Email of each known supplier name, filled in when the name is picked.
+    private final Map<String, String> mSupplierEmails = new HashMap<>();
     private EditText mSupplierEmailEditText;
     private ImageView mAddImage;
     private Uri mCurrentItemUri;
     private static final int EXISTING_ITEM_LOADER = 0;
+    private static final int SUPPLIERS_LOADER = 1;
+    private static final int HISTORY_LOADER = 2;
+    private static final int VELOCITY_DAYS = 30;
     private static final int PICTURE_GALLERY_REQUEST = 5;
     private String picturePath;
-    private Bitmap picture;
     final Context mContext = this;
     private static final String STATE_PICTURE_URI = "STATE_PICTURE_URI";
+    private static final String STATE_IMPORTING_IMAGE = "STATE_IMPORTING_IMAGE";
     private boolean mItemHasChanged = false;
     private Uri pictureUri;
+    // The picked image while it is being copied into the store, otherwise null.
+    private Uri mImportingImage;
     private int currentQuantity = 0;
 
     @Override
@@ -71,12 +88,15 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         } else {
             setTitle(getString(R.string.editor_activity_title_edit_item));
             getLoaderManager().initLoader(EXISTING_ITEM_LOADER, null, this);
+            getLoaderManager().initLoader(HISTORY_LOADER, null, this);
         }
         mNameEditText = (EditText) findViewById(R.id.edit_item_name);
         mQuantityEditText = (EditText) findViewById(R.id.edit_item_quantity);
+        mReorderThresholdEditText = (EditText) findViewById(R.id.edit_item_reorder_threshold);
+        mVelocityTextView = (TextView) findViewById(R.id.edit_item_velocity_tv);
         mPriceEditText = (EditText) findViewById(R.id.edit_item_price);
         mAddImage = (ImageView) findViewById(R.id.edit_item_image_upload_iv);
-        mSupplierEditText = (EditText) findViewById(R.id.edit_supplier);
+        mSupplierEditText = (AutoCompleteTextView) findViewById(R.id.edit_supplier);
         mSupplierEmailEditText = (EditText) findViewById(R.id.edit_supplier_email);
         mOrderButton = (Button) findViewById(R.id.edit_order_btn);
         mIncreaseBtn = (Button) findViewById(R.id.editor_increase_button);
@@ -84,6 +104,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         mNameEditText.setOnTouchListener(mTouchListener);
 
         mQuantityEditText.setOnTouchListener(mTouchListener);
+        mReorderThresholdEditText.setOnTouchListener(mTouchListener);
         mPriceEditText.setOnTouchListener(mTouchListener);
         mAddImage.setOnTouchListener(mTouchListener);
         mSupplierEditText.setOnTouchListener(mTouchListener);
@@ -92,6 +113,18 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         mDecreaseBtn.setOnTouchListener(mTouchListener);
         mIncreaseBtn.setOnTouchListener(mTouchListener);
 
+        mSupplierAdapter = new ArrayAdapter<>(this, android.R.layout.simple_dropdown_item_1line);
+        mSupplierEditText.setAdapter(mSupplierAdapter);
+        mSupplierEditText.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                String email = mSupplierEmails.get((String) parent.getItemAtPosition(position));
+                if (email != null)
+                    mSupplierEmailEditText.setText(email);
+            }
+        });
+        getLoaderManager().initLoader(SUPPLIERS_LOADER, null, this);
+
         mAddImage.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -160,72 +193,40 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent resultData) {
         if (requestCode == PICTURE_GALLERY_REQUEST && resultCode == Activity.RESULT_OK) {
-            if (resultData != null) {
-                try {
-                    pictureUri = resultData.getData();
-                    int takeFlags = resultData.getFlags();
-                    takeFlags &= (Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
-                    picturePath = pictureUri.toString();
-                    InputStream inputStream;
-                    inputStream = getContentResolver().openInputStream(pictureUri);
-                    picture = BitmapFactory.decodeStream(inputStream);
-                    mAddImage.setImageBitmap(picture);
-                    picturePath = pictureUri.toString();
-                    try {
-                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                            getContentResolver().takePersistableUriPermission(pictureUri, takeFlags);
-                        }
-                    } catch (SecurityException e) {
-                        e.printStackTrace();
-                    }
-                    mAddImage.setImageBitmap(getBitmapFromUri(pictureUri, mContext, mAddImage));
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    Toast.makeText(EditorActivity.this, "Unable to open image", Toast.LENGTH_LONG).show();
-                }
+            // Some pickers report success without a document.
+            if (resultData != null && resultData.getData() != null) {
+                // Shown straight from the picker while it is copied into the store.
+                importImage(resultData.getData());
+                ImageLoader.getInstance(this).load(mImportingImage, mAddImage);
             }
         }
     }
 
-    public Bitmap getBitmapFromUri(Uri uri, Context mContext, ImageView imageView) {
-
-        if (uri == null || uri.toString().isEmpty())
-            return null;
-        int targetW = imageView.getWidth();
-        int targetH = imageView.getHeight();
-        InputStream input = null;
-        try {
-            input = this.getContentResolver().openInputStream(uri);
-            BitmapFactory.Options bmOptions = new BitmapFactory.Options();
-            bmOptions.inJustDecodeBounds = true;
-            BitmapFactory.decodeStream(input, null, bmOptions);
-            if (input != null)
-                input.close();
-            int photoW = bmOptions.outWidth;
-            int photoH = bmOptions.outHeight;
-            int scaleFactor = Math.min(photoW / targetW, photoH / targetH);
-            bmOptions.inJustDecodeBounds = false;
-            bmOptions.inSampleSize = scaleFactor;
-            bmOptions.inPurgeable = true;
-            input = this.getContentResolver().openInputStream(uri);
-            Bitmap bitmap = BitmapFactory.decodeStream(input, null, bmOptions);
-            Bitmap.createScaledBitmap(bitmap, 88, 88, false);
-            input.close();
-            return bitmap;
-
-        } catch (FileNotFoundException fne) {
-            Log.e(LOG_TAG, "Failed to load image.", fne);
-            return null;
-        } catch (Exception e) {
-            Log.e(LOG_TAG, "Failed to load image.", e);
-            return null;
-        } finally {
-            try {
-                input.close();
-            } catch (IOException ioe) {
+    /**
+     * Copies the picked image into the {@link ImageStore}; the item is saved with the stored copy
+     * once that is done, so it never depends on a permission to the picked document.
+     */
+    private void importImage(Uri source) {
+        mImportingImage = source;
+        ImageStore.getInstance(this).importImage(source, new ImageStore.Callback() {
+            @Override
+            public void onImageImported(Uri source, Uri image) {
+                // Another image may have been picked in the meantime.
+                if (source.equals(mImportingImage)) {
+                    mImportingImage = null;
+                    pictureUri = image;
+                }
+            }
 
+            @Override
+            public void onImageImportFailed(Uri source) {
+                if (!source.equals(mImportingImage) || isFinishing())
+                    return;
+                mImportingImage = null;
+                Toast.makeText(mContext, R.string.editor_image_import_failed, Toast.LENGTH_SHORT).show();
+                ImageLoader.getInstance(mContext).load(pictureUri, mAddImage);
             }
-        }
+        });
     }
 
     private void showDeleteConfirmationDialog() {
@@ -242,16 +243,37 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     }
 
     private void deleteItem() {
-        int rowsDeleted = 0;
         if (mCurrentItemUri != null) {
-            rowsDeleted = getContentResolver().delete(mCurrentItemUri, null, null);
+            ItemWriter.getInstance(this).delete(mCurrentItemUri,
+                    new WriteResultToast(this, R.string.item_deleted, R.string.no_item_deleted));
         }
-        if (rowsDeleted == 0)
-            Toast.makeText(this, R.string.no_item_deleted, Toast.LENGTH_SHORT).show();
-        else
-            Toast.makeText(this, R.string.item_deleted, Toast.LENGTH_SHORT).show();
         finish();
+    }
+
+    /**
+     * Tells how a write went once it is done, usually after the editor has closed, so it only
+     * holds on to the application context.
+     */
+    private static class WriteResultToast implements ItemWriter.Callback {
+        private final Context mContext;
+        private final int mSuccessMessage;
+        private final int mFailureMessage;
+
+        WriteResultToast(Context context, int successMessage, int failureMessage) {
+            mContext = context.getApplicationContext();
+            mSuccessMessage = successMessage;
+            mFailureMessage = failureMessage;
+        }
 
+        @Override
+        public void onWriteFinished(Uri uri, int rows) {
+            Toast.makeText(mContext, rows != 0 ? mSuccessMessage : mFailureMessage, Toast.LENGTH_SHORT).show();
+        }
+
+        @Override
+        public void onWriteFailed(Uri uri, RuntimeException e) {
+            Toast.makeText(mContext, mFailureMessage, Toast.LENGTH_SHORT).show();
+        }
     }
 
     @Override
@@ -311,6 +333,8 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
         if (pictureUri != null)
             outState.putString(STATE_PICTURE_URI, pictureUri.toString());
+        if (mImportingImage != null)
+            outState.putString(STATE_IMPORTING_IMAGE, mImportingImage.toString());
     }
 
     @Override
@@ -321,6 +345,9 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
                 !savedInstanceState.getString(STATE_PICTURE_URI).equals("")) {
             pictureUri = Uri.parse(savedInstanceState.getString(STATE_PICTURE_URI));
         }
+        // The import went with the old activity; the copy it left behind makes this one quick.
+        if (savedInstanceState.containsKey(STATE_IMPORTING_IMAGE))
+            importImage(Uri.parse(savedInstanceState.getString(STATE_IMPORTING_IMAGE)));
     }
 
     @Override
@@ -330,42 +357,47 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     }
 
     private void saveItem() {
+        if (mImportingImage != null) {
+            Toast.makeText(this, R.string.editor_image_importing, Toast.LENGTH_SHORT).show();
+            return;
+        }
         if (pictureUri != null) {
             String nameString = mNameEditText.getText().toString().trim();
             String quantityString = mQuantityEditText.getText().toString().trim();
             String priceString = mPriceEditText.getText().toString().trim();
             String supplierString = mSupplierEditText.getText().toString().trim();
             String supplierEmailString = mSupplierEmailEditText.getText().toString().trim();
+            String reorderThresholdString = mReorderThresholdEditText.getText().toString().trim();
             if (nameString.isEmpty() || quantityString.isEmpty() ||
                     priceString.isEmpty() || pictureUri.toString().isEmpty() ||
                     supplierEmailString.isEmpty() || supplierString.isEmpty()) {
                 Toast.makeText(this, R.string.editor_give_all_the_informations, Toast.LENGTH_SHORT).show();
             } else {
+                long price;
+                try {
+                    price = PriceUtils.parse(priceString);
+                } catch (NumberFormatException e) {
+                    Toast.makeText(this, R.string.editor_invalid_price, Toast.LENGTH_SHORT).show();
+                    return;
+                }
                 int quantity = Integer.parseInt(quantityString);
                 picturePath = pictureUri.toString().trim();
                 ContentValues values = new ContentValues();
                 values.put(ItemEntry.COLUMN_ITEM_NAME, nameString);
-                values.put(ItemEntry.COLUMN_ITEM_PRICE, priceString);
+                values.put(ItemEntry.COLUMN_ITEM_PRICE, price);
                 values.put(ItemEntry.COLUMN_ITEM_QUANTITY, quantity);
                 values.put(ItemEntry.COLUMN_ITEM_IMAGE, picturePath);
                 values.put(ItemEntry.COLUMN_ITEM_SUPPLIER, supplierString);
                 values.put(ItemEntry.COLUMN_SUPPLIER_EMAIL, supplierEmailString);
+                values.put(ItemEntry.COLUMN_REORDER_THRESHOLD, reorderThresholdString.isEmpty()
+                        ? ItemEntry.DEFAULT_REORDER_THRESHOLD : Integer.parseInt(reorderThresholdString));
+                // The list shows the change once it is written; failures are reported after closing.
                 if (mCurrentItemUri == null) {
-                    Uri newUri = getContentResolver().insert(ItemEntry.CONTENT_URI, values);
-                    if (newUri == null) {
-                        Toast.makeText(this, R.string.editor_insert_item_failed, Toast.LENGTH_SHORT).show();
-                    } else {
-                        Toast.makeText(this, getString(R.string.editor_insert_item_successful) + newUri, Toast.LENGTH_SHORT).show();
-
-                    }
-                    finish();
+                    ItemWriter.getInstance(this).insert(values, new WriteResultToast(this,
+                            R.string.editor_insert_item_successful, R.string.editor_insert_item_failed));
                 } else {
-                    int rowsAffected = getContentResolver().update(mCurrentItemUri, values, null, null);
-                    if (rowsAffected == 0) {
-                        Toast.makeText(this, getString(R.string.editor_update_item_failed), Toast.LENGTH_SHORT).show();
-                    } else {
-                        Toast.makeText(this, getString(R.string.editor_update_item_successful), Toast.LENGTH_SHORT).show();
-                    }
+                    ItemWriter.getInstance(this).update(mCurrentItemUri, values, new WriteResultToast(this,
+                            R.string.editor_update_item_successful, R.string.editor_update_item_failed));
                 }
                 finish();
             }
@@ -403,6 +435,17 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
+        if (i == SUPPLIERS_LOADER) {
+            String[] supplierProjection = {
+                    SupplierEntry.COLUMN_SUPPLIER_NAME,
+                    SupplierEntry.COLUMN_SUPPLIER_EMAIL};
+            return new CursorLoader(this, SupplierEntry.CONTENT_URI, supplierProjection, null, null,
+                    SupplierEntry.COLUMN_SUPPLIER_NAME);
+        }
+        if (i == HISTORY_LOADER) {
+            return new CursorLoader(this, ItemEntry.buildHistoryUri(ContentUris.parseId(mCurrentItemUri),
+                    VELOCITY_DAYS), null, null, null, null);
+        }
         String[] projection = {
                 ItemEntry._ID,
                 ItemEntry.COLUMN_ITEM_NAME,
@@ -410,25 +453,24 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
                 ItemEntry.COLUMN_ITEM_PRICE,
                 ItemEntry.COLUMN_ITEM_IMAGE,
                 ItemEntry.COLUMN_ITEM_SUPPLIER,
-                ItemEntry.COLUMN_SUPPLIER_EMAIL};
+                ItemEntry.COLUMN_SUPPLIER_EMAIL,
+                ItemEntry.COLUMN_REORDER_THRESHOLD};
         return new CursorLoader(this, mCurrentItemUri, projection, null, null, null);
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+        if (loader.getId() == SUPPLIERS_LOADER) {
+            showSuppliers(cursor);
+            return;
+        }
+        if (loader.getId() == HISTORY_LOADER) {
+            showVelocity(cursor);
+            return;
+        }
         if (cursor == null || cursor.getCount() < 1)
             return;
 
-        ViewTreeObserver viewTreeObserver = mAddImage.getViewTreeObserver();
-        viewTreeObserver.addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
-            @Override
-            public void onGlobalLayout() {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-                    mAddImage.getViewTreeObserver().removeOnGlobalLayoutListener(this);
-                    mAddImage.setImageBitmap(getBitmapFromUri(pictureUri, mContext, mAddImage));
-                }
-            }
-        });
         if (cursor.moveToFirst()) {
             int nameColumnIndex = cursor.getColumnIndex(ItemEntry.COLUMN_ITEM_NAME);
             int priceColumnIndex = cursor.getColumnIndex(ItemEntry.COLUMN_ITEM_PRICE);
@@ -436,35 +478,83 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
             int pictureColumnIndex = cursor.getColumnIndex(ItemEntry.COLUMN_ITEM_IMAGE);
             int supplierColumnIndex = cursor.getColumnIndex(ItemEntry.COLUMN_ITEM_SUPPLIER);
             int supplierEmailColumnIndex = cursor.getColumnIndex(ItemEntry.COLUMN_SUPPLIER_EMAIL);
+            int reorderThresholdColumnIndex = cursor.getColumnIndex(ItemEntry.COLUMN_REORDER_THRESHOLD);
             String name = cursor.getString(nameColumnIndex);
-            String price = cursor.getString(priceColumnIndex);
+            long price = cursor.getLong(priceColumnIndex);
             int quantity = cursor.getInt(quantityColumnIndex);
             String stringUri = cursor.getString(pictureColumnIndex);
             String stringSupplier = cursor.getString(supplierColumnIndex);
             String stringEmailSupplier = cursor.getString(supplierEmailColumnIndex);
             Uri uriData = Uri.parse(stringUri);
             mNameEditText.setText(name);
-            mPriceEditText.setText(price);
+            mPriceEditText.setText(PriceUtils.formatPlain(price));
             mQuantityEditText.setText(Integer.toString(quantity));
+            mReorderThresholdEditText.setText(Integer.toString(cursor.getInt(reorderThresholdColumnIndex)));
             mSupplierEmailEditText.setText(stringEmailSupplier);
             mSupplierEditText.setText(stringSupplier);
             pictureUri = uriData;
-            if (pictureUri.toString().contains("drawable"))
-                mAddImage.setImageURI(uriData);
-            else {
-                Bitmap bM = getBitmapFromUri(pictureUri, mContext, mAddImage);
-                mAddImage.setImageBitmap(bM);
-            }
+            ImageLoader.getInstance(this).load(pictureUri, mAddImage);
         }
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
+        if (loader.getId() == SUPPLIERS_LOADER) {
+            mSupplierEmails.clear();
+            mSupplierAdapter.clear();
+            return;
+        }
+        if (loader.getId() == HISTORY_LOADER) {
+            mVelocityTextView.setVisibility(View.GONE);
+            return;
+        }
         mNameEditText.setText("");
         mPriceEditText.setText("");
         mQuantityEditText.setText("");
+        mReorderThresholdEditText.setText("");
         mAddImage.setImageResource(R.drawable.no_image);
         mSupplierEditText.setText("");
         mSupplierEmailEditText.setText("");
     }
-}
\ No newline at end of file
+
+    /**
+     * Shows how many units went out over the last {@link #VELOCITY_DAYS} days, from the item's
+     * daily stock history. The ledger does not record why stock went down, so corrections count
+     * the same as sales.
+     */
+    private void showVelocity(Cursor cursor) {
+        if (cursor == null) {
+            mVelocityTextView.setVisibility(View.GONE);
+            return;
+        }
+        int unitsOutColumnIndex = cursor.getColumnIndex(StockHistoryEntry.COLUMN_UNITS_OUT);
+        int unitsOut = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext())
+            unitsOut += cursor.getInt(unitsOutColumnIndex);
+        mVelocityTextView.setText(getString(R.string.editor_velocity_text, VELOCITY_DAYS, unitsOut,
+                (double) unitsOut / VELOCITY_DAYS));
+        mVelocityTextView.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Offers the known suppliers when the supplier name is typed. A name listed with several
+     * emails is offered once, with the first of them.
+     */
+    private void showSuppliers(Cursor cursor) {
+        mSupplierEmails.clear();
+        List<String> names = new ArrayList<>();
+        if (cursor != null) {
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                String name = cursor.getString(cursor.getColumnIndex(SupplierEntry.COLUMN_SUPPLIER_NAME));
+                if (!mSupplierEmails.containsKey(name)) {
+                    mSupplierEmails.put(name, cursor.getString(cursor.getColumnIndex(SupplierEntry.COLUMN_SUPPLIER_EMAIL)));
+                    names.add(name);
+                }
+            }
+        }
+        mSupplierAdapter.clear();
+        mSupplierAdapter.addAll(names);
+    }
+}
@@ -0,0 +1,446 @@
+package com.example.android.myinventoryapp;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.ViewTreeObserver;
+import android.widget.ImageView;
+
+import com.example.android.myinventoryapp.DataFile.ImageStore;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads item images into image views. Images are decoded on a background thread, sampled down
+ * to the size of the view, and kept in a memory LRU plus a thumbnail cache on disk, both keyed
+ * by the image URI and the target size. A full-size photo is therefore decoded only the first
+ * time it is shown at a given size, and images in the {@link ImageStore} are decoded from its
+ * scaled variant when that is big enough.
+ * <p>
+ * Thumbnails read back from disk are decoded into bitmaps taken from a {@link BitmapPool}. A
+ * bitmap goes back to the pool once it has left the memory cache and no view shows it, so a
+ * long scroll reuses the same few bitmaps instead of allocating new ones.
+ * <p>
+ * All public methods must be called on the main thread.
+ */
+public class ImageLoader {
+
+    public static final String LOG_TAG = ImageLoader.class.getSimpleName();
+    private static final String DISK_CACHE_DIR = "thumbnails";
+    private static final long MAX_DISK_CACHE_BYTES = 20 * 1024 * 1024;
+    // Most image headers fit in this, so the bounds pass and the decode can share one stream.
+    private static final int MARK_LIMIT = 1024 * 1024;
+    private static final int JPEG_QUALITY = 90;
+    // Prefetches beyond this many are dropped oldest first, so a fling doesn't queue up work
+    // for rows that have already scrolled past.
+    private static final int MAX_PENDING_PREFETCHES = 12;
+    private static ImageLoader sInstance;
+
+    private final ContentResolver mResolver;
+    private final File mDiskCacheDir;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final BitmapPool mPool;
+    private final ImageStore mStore;
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(2);
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Object mDiskLock = new Object();
+    // The rest is only touched on the main thread.
+    // The key each view is waiting for, so a late result never overwrites a newer image.
+    private final Map<ImageView, String> mTargets = new WeakHashMap<>();
+    private final Map<ImageView, Bitmap> mShown = new WeakHashMap<>();
+    private final Map<Bitmap, Boolean> mCached = new IdentityHashMap<>();
+    private final Map<String, Request> mRequests = new HashMap<>();
+    private final ArrayDeque<Request> mPrefetches = new ArrayDeque<>();
+
+    private ImageLoader(Context context) {
+        mResolver = context.getContentResolver();
+        mDiskCacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        // An eighth of the heap for the cache and a sixteenth for the pool, in bytes.
+        mMemoryCache = new LruCache<String, Bitmap>((int) Math.min(Integer.MAX_VALUE, maxMemory / 8)) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (oldValue != newValue) {
+                    mCached.remove(oldValue);
+                    recycleIfUnused(oldValue);
+                }
+            }
+        };
+        mPool = new BitmapPool(maxMemory / 16);
+        mStore = ImageStore.getInstance(context);
+    }
+
+    public static synchronized ImageLoader getInstance(Context context) {
+        if (sInstance == null)
+            sInstance = new ImageLoader(context.getApplicationContext());
+        return sInstance;
+    }
+
+    /**
+     * Shows the image at the URI in the view, sized to the view. Waits for the view to be laid
+     * out if it has no size yet. Shows {@code R.drawable.no_image} while loading and if the
+     * image can't be read. Whatever the view was loading before is cancelled.
+     */
+    public void load(final Uri uri, final ImageView imageView) {
+        if (uri == null || uri.toString().isEmpty()) {
+            clear(imageView);
+            return;
+        }
+        final int width = imageView.getWidth();
+        final int height = imageView.getHeight();
+        if (width == 0 || height == 0) {
+            cancel(imageView);
+            show(imageView, null);
+            mTargets.put(imageView, uri.toString());
+            imageView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    imageView.getViewTreeObserver().removeOnPreDrawListener(this);
+                    // Skip if another image was requested for the view in the meantime.
+                    if (uri.toString().equals(mTargets.get(imageView)))
+                        load(uri, imageView);
+                    return true;
+                }
+            });
+            return;
+        }
+        String key = cacheKey(uri, width, height);
+        if (key.equals(mTargets.get(imageView)))
+            return;
+        cancel(imageView);
+        Bitmap cached = mMemoryCache.get(key);
+        if (cached != null) {
+            show(imageView, cached);
+            return;
+        }
+        // Don't leave the previous item's picture in a recycled row while this one loads.
+        show(imageView, null);
+        mTargets.put(imageView, key);
+        submit(uri, key, width, height);
+    }
+
+    /**
+     * Loads the image at the URI for a view of the given size into the memory cache, so a row
+     * about to scroll into view can show it right away.
+     */
+    public void prefetch(Uri uri, int width, int height) {
+        if (uri == null || uri.toString().isEmpty())
+            return;
+        String key = cacheKey(uri, width, height);
+        if (mMemoryCache.get(key) != null || mRequests.containsKey(key))
+            return;
+        mPrefetches.addLast(submit(uri, key, width, height));
+        while (mPrefetches.size() > MAX_PENDING_PREFETCHES) {
+            Request eldest = mPrefetches.pollFirst();
+            if (!mTargets.containsValue(eldest.key))
+                eldest.cancel();
+        }
+    }
+
+    /**
+     * Cancels any load for the view and shows the placeholder, e.g. for a row without an item.
+     */
+    public void clear(ImageView imageView) {
+        cancel(imageView);
+        show(imageView, null);
+    }
+
+    /**
+     * Starts loading the key unless it is already being loaded, and returns the request for it.
+     */
+    private Request submit(Uri uri, String key, int width, int height) {
+        Request request = mRequests.get(key);
+        if (request == null) {
+            request = new Request(uri, key, width, height);
+            mRequests.put(key, request);
+            request.future = mExecutor.submit(request);
+        }
+        return request;
+    }
+
+    /**
+     * Stops waiting for the view's pending image, and stops loading it if no other view wants it.
+     */
+    private void cancel(ImageView imageView) {
+        String key = mTargets.remove(imageView);
+        if (key == null || mTargets.containsValue(key))
+            return;
+        Request request = mRequests.get(key);
+        if (request != null)
+            request.cancel();
+    }
+
+    private void deliver(Request request, Bitmap bitmap) {
+        if (mRequests.get(request.key) == request)
+            mRequests.remove(request.key);
+        mPrefetches.remove(request);
+        if (bitmap != null) {
+            mCached.put(bitmap, Boolean.TRUE);
+            mMemoryCache.put(request.key, bitmap);
+        }
+        List<ImageView> waiting = new ArrayList<>();
+        for (Map.Entry<ImageView, String> target : mTargets.entrySet()) {
+            if (request.key.equals(target.getValue()))
+                waiting.add(target.getKey());
+        }
+        for (ImageView imageView : waiting) {
+            mTargets.remove(imageView);
+            show(imageView, bitmap);
+        }
+    }
+
+    /**
+     * Sets the bitmap, or the placeholder for null, and releases the bitmap shown before.
+     */
+    private void show(ImageView imageView, Bitmap bitmap) {
+        Bitmap previous = bitmap != null ? mShown.put(imageView, bitmap) : mShown.remove(imageView);
+        if (bitmap != null)
+            imageView.setImageBitmap(bitmap);
+        else
+            imageView.setImageResource(R.drawable.no_image);
+        if (previous != null && previous != bitmap)
+            recycleIfUnused(previous);
+    }
+
+    private void recycleIfUnused(Bitmap bitmap) {
+        if (!mCached.containsKey(bitmap) && !mShown.containsValue(bitmap))
+            mPool.put(bitmap);
+    }
+
+    /**
+     * Runs on the executor: reads the thumbnail from disk, or decodes and stores it there first.
+     */
+    private Bitmap loadBitmap(Uri uri, String key, int width, int height) {
+        File file = new File(mDiskCacheDir, key);
+        Bitmap bitmap = decodeThumbnail(file);
+        if (bitmap != null) {
+            // Marks the thumbnail as recently used for trimDiskCache.
+            file.setLastModified(System.currentTimeMillis());
+            return bitmap;
+        }
+        try {
+            // Stored images have a small variant that is much quicker to decode for list rows.
+            bitmap = decodeSampled(mStore.forSize(uri, width, height), width, height);
+        } catch (IOException | SecurityException e) {
+            Log.e(LOG_TAG, "Failed to load image " + uri, e);
+            return null;
+        }
+        if (bitmap == null) {
+            Log.e(LOG_TAG, "Failed to decode image " + uri);
+            return null;
+        }
+        bitmap = scaleToCover(bitmap, width, height);
+        writeToDisk(file, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Decodes a cached thumbnail into a pooled bitmap of the same size when there is one.
+     */
+    private Bitmap decodeThumbnail(File file) {
+        if (!file.isFile())
+            return null;
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            return null;
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inBitmap = mPool.get(options.outWidth, options.outHeight, Bitmap.Config.ARGB_8888);
+        try {
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap didn't fit after all; decode into a new one.
+            mPool.put(options.inBitmap);
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        }
+    }
+
+    /**
+     * Decodes the image at the smallest power-of-two sample size that still covers the target
+     * size, so at most twice the target in each dimension is ever allocated. The bitmap is
+     * mutable, as it may be shown as it is and later go to the pool.
+     */
+    Bitmap decodeSampled(Uri uri, int width, int height) throws IOException {
+        InputStream input = new BufferedInputStream(mResolver.openInputStream(uri));
+        try {
+            input.mark(MARK_LIMIT);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeStream(input, null, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0)
+                return null;
+            try {
+                input.reset();
+            } catch (IOException e) {
+                // The header was longer than the mark limit; read the image again from the start.
+                input.close();
+                input = new BufferedInputStream(mResolver.openInputStream(uri));
+            }
+            options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, width, height);
+            options.inJustDecodeBounds = false;
+            options.inMutable = true;
+            return BitmapFactory.decodeStream(input, null, options);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Scales the bitmap down, keeping its aspect ratio, until its shorter side just covers the
+     * target. Thumbnails of images with the same aspect ratio thus end up the same size and
+     * share a pool bucket. Scaled copies are new mutable bitmaps, so they can be pooled too.
+     */
+    static Bitmap scaleToCover(Bitmap bitmap, int width, int height) {
+        float scale = Math.max((float) width / bitmap.getWidth(), (float) height / bitmap.getHeight());
+        if (scale >= 1)
+            return bitmap;
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        if (scaled != bitmap)
+            bitmap.recycle();
+        return scaled;
+    }
+
+    static int calculateInSampleSize(int imageWidth, int imageHeight, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        while (imageWidth / (sampleSize * 2) >= targetWidth && imageHeight / (sampleSize * 2) >= targetHeight)
+            sampleSize *= 2;
+        return sampleSize;
+    }
+
+    private void writeToDisk(File file, Bitmap bitmap) {
+        synchronized (mDiskLock) {
+            if (!mDiskCacheDir.isDirectory() && !mDiskCacheDir.mkdirs()) {
+                Log.e(LOG_TAG, "Can't create " + mDiskCacheDir);
+                return;
+            }
+            // Written under a temporary name so a reader never sees half a file.
+            File temp = new File(mDiskCacheDir, file.getName() + ".tmp");
+            try {
+                OutputStream output = new FileOutputStream(temp);
+                try {
+                    bitmap.compress(bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG,
+                            JPEG_QUALITY, output);
+                } finally {
+                    output.close();
+                }
+                if (!temp.renameTo(file))
+                    Log.e(LOG_TAG, "Can't rename " + temp);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to write thumbnail " + file, e);
+            } finally {
+                temp.delete();
+            }
+            trimDiskCache();
+        }
+    }
+
+    /**
+     * Deletes the least recently used thumbnails until the cache fits {@link #MAX_DISK_CACHE_BYTES}.
+     */
+    private void trimDiskCache() {
+        File[] files = mDiskCacheDir.listFiles();
+        if (files == null)
+            return;
+        long total = 0;
+        for (File f : files)
+            total += f.length();
+        if (total <= MAX_DISK_CACHE_BYTES)
+            return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+        for (int i = 0; i < files.length && total > MAX_DISK_CACHE_BYTES; i++) {
+            long length = files[i].length();
+            if (files[i].delete())
+                total -= length;
+        }
+    }
+
+    /**
+     * A file-name-safe key for the image at the URI decoded for the given size.
+     */
+    private static String cacheKey(Uri uri, int width, int height) {
+        String key = uri.toString() + '@' + width + 'x' + height;
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private class Request implements Runnable {
+        final Uri uri;
+        final String key;
+        final int width;
+        final int height;
+        Future<?> future;
+
+        Request(Uri uri, String key, int width, int height) {
+            this.uri = uri;
+            this.key = key;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public void run() {
+            final Bitmap bitmap = loadBitmap(uri, key, width, height);
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(Request.this, bitmap);
+                }
+            });
+        }
+
+        void cancel() {
+            future.cancel(false);
+            if (mRequests.get(key) == this)
+                mRequests.remove(key);
+            mPrefetches.remove(this);
+        }
+    }
+}
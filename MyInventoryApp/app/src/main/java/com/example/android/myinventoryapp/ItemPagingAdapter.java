@@ -0,0 +1,248 @@
+package com.example.android.myinventoryapp;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.ImageView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+import com.example.android.myinventoryapp.DataFile.ItemPager;
+import com.example.android.myinventoryapp.DataFile.PriceUtils;
+import com.example.android.myinventoryapp.DataFile.QuantityWriteQueue;
+
+/**
+ * RecyclerView adapter backed by an {@link ItemPager}, so only a few pages of items are in memory
+ * however large the catalog is. Pages are fetched in the background as rows scroll into view;
+ * until then a row is shown empty. The pager diffs reloaded rows off the main thread and the
+ * adapter forwards only the positions that changed, so a single quantity change rebinds and
+ * animates a single row. Thumbnails come from {@link ImageLoader}, including those of the rows
+ * about to scroll into view.
+ */
+public class ItemPagingAdapter extends RecyclerView.Adapter<ItemPagingAdapter.ViewHolder>
+        implements ItemPager.Callback {
+
+    // About a screenful of rows.
+    private static final int PREFETCH_DISTANCE = 8;
+    // Under a stream of writes the list requeries at most this often.
+    private static final long RELOAD_INTERVAL_MS = 500;
+
+    public interface OnItemClickListener {
+        void onItemClick(long id);
+    }
+
+    private final Context mContext;
+    private final OnItemClickListener mOnItemClickListener;
+    private final ItemPager mPager;
+    private final QuantityWriteQueue mWriteQueue;
+    private final ImageLoader mImageLoader;
+    private final int mImageSize;
+    private int mLastBoundPosition;
+    private final Handler mHandler = new Handler();
+    private long mLastReloadTime = -RELOAD_INTERVAL_MS;
+    private boolean mReloadScheduled;
+    private final Runnable mReloadRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mReloadScheduled = false;
+            mLastReloadTime = SystemClock.uptimeMillis();
+            mPager.reload();
+        }
+    };
+    private final ContentObserver mObserver = new ContentObserver(mHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            scheduleReload();
+        }
+    };
+    private final QuantityWriteQueue.Listener mRejectionListener = new QuantityWriteQueue.Listener() {
+        @Override
+        public void onAdjustmentRejected(long itemId, int delta) {
+            Toast.makeText(mContext, mContext.getString(R.string.quantity_adjustment_rejected, delta),
+                    Toast.LENGTH_SHORT).show();
+            // Nothing changed in the database, so no reload comes; rebind to drop the shown delta.
+            notifyDataSetChanged();
+        }
+    };
+
+    public ItemPagingAdapter(Context context, OnItemClickListener onItemClickListener) {
+        mContext = context;
+        mOnItemClickListener = onItemClickListener;
+        mPager = new ItemPager(context, this);
+        mWriteQueue = QuantityWriteQueue.getInstance(context);
+        mWriteQueue.addListener(mRejectionListener);
+        mImageLoader = ImageLoader.getInstance(context);
+        mImageSize = context.getResources().getDimensionPixelSize(R.dimen.list_item_image_size);
+        context.getContentResolver().registerContentObserver(ItemEntry.CONTENT_URI, true, mObserver);
+        mPager.reload();
+    }
+
+    /**
+     * Shows only the items matching the query, or all items again when it is empty.
+     */
+    public void setSearchQuery(String query) {
+        mPager.setQuery(query);
+    }
+
+    /**
+     * Shows only the items at or below their reorder threshold, or all items again.
+     */
+    public void setLowStockOnly(boolean lowStockOnly) {
+        mPager.setLowStockOnly(lowStockOnly);
+    }
+
+    /**
+     * Reloads right away if the last reload was at least {@link #RELOAD_INTERVAL_MS} ago, and
+     * otherwise once that much time has passed. Changes arriving in between share the reload.
+     */
+    private void scheduleReload() {
+        if (mReloadScheduled)
+            return;
+        mReloadScheduled = true;
+        long delay = mLastReloadTime + RELOAD_INTERVAL_MS - SystemClock.uptimeMillis();
+        if (delay <= 0)
+            mReloadRunnable.run();
+        else
+            mHandler.postDelayed(mReloadRunnable, delay);
+    }
+
+    /**
+     * Stops listening for changes; call from the activity's onDestroy.
+     */
+    public void close() {
+        mHandler.removeCallbacks(mReloadRunnable);
+        mContext.getContentResolver().unregisterContentObserver(mObserver);
+        mWriteQueue.removeListener(mRejectionListener);
+        mPager.close();
+    }
+
+    @Override
+    public void onPagesChanged() {
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public void onInserted(int position, int count) {
+        notifyItemRangeInserted(position, count);
+    }
+
+    @Override
+    public void onRemoved(int position, int count) {
+        notifyItemRangeRemoved(position, count);
+    }
+
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+        notifyItemMoved(fromPosition, toPosition);
+    }
+
+    @Override
+    public void onChanged(int position, int count, Object payload) {
+        notifyItemRangeChanged(position, count, payload);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mPager.getCount();
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        return new ViewHolder(LayoutInflater.from(mContext).inflate(R.layout.list_item, parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        holder.bind(mPager.getItem(position));
+        prefetchImages(position);
+    }
+
+    /**
+     * Starts loading the thumbnails of the rows just past the one bound, in the direction the
+     * list is scrolling, so they are in memory by the time those rows appear.
+     */
+    private void prefetchImages(int position) {
+        int step = position >= mLastBoundPosition ? 1 : -1;
+        mLastBoundPosition = position;
+        for (int i = 1; i <= PREFETCH_DISTANCE; i++) {
+            int prefetchPosition = position + i * step;
+            if (prefetchPosition < 0 || prefetchPosition >= mPager.getCount())
+                break;
+            ItemPager.Item item = mPager.getItem(prefetchPosition);
+            if (item != null && item.image != null)
+                mImageLoader.prefetch(Uri.parse(item.image), mImageSize, mImageSize);
+        }
+    }
+
+    class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView tvName;
+        final TextView tvPrice;
+        final TextView tvQuantity;
+        final ImageView image;
+        final Button sellBtn;
+        final Button buyBtn;
+        ItemPager.Item item;
+
+        ViewHolder(View view) {
+            super(view);
+            view.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    if (item != null)
+                        mOnItemClickListener.onItemClick(item.id);
+                }
+            });
+            tvName = (TextView) view.findViewById(R.id.item_name);
+            tvPrice = (TextView) view.findViewById(R.id.item_price);
+            tvQuantity = (TextView) view.findViewById(R.id.item_quantity);
+            image = (ImageView) view.findViewById(R.id.item_image);
+            sellBtn = (Button) view.findViewById(R.id.item_sell_btn);
+            buyBtn = (Button) view.findViewById(R.id.item_buy_btn);
+            // Set once per row view; the listeners act on whichever item is bound at the time.
+            sellBtn.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    int shownQuantity = item.quantity + mWriteQueue.getPendingDelta(item.id);
+                    if (shownQuantity > 0) {
+                        mWriteQueue.adjust(item.id, -1);
+                        tvQuantity.setText(mContext.getString(R.string.quantity_setting_text) + (shownQuantity - 1));
+                    }
+                }
+            });
+            buyBtn.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    int shownQuantity = item.quantity + mWriteQueue.getPendingDelta(item.id);
+                    mWriteQueue.adjust(item.id, 1);
+                    tvQuantity.setText(mContext.getString(R.string.quantity_setting_text) + (shownQuantity + 1));
+                }
+            });
+        }
+
+        void bind(ItemPager.Item item) {
+            this.item = item;
+            sellBtn.setEnabled(item != null);
+            buyBtn.setEnabled(item != null);
+            if (item == null) {
+                tvName.setText("");
+                tvPrice.setText("");
+                tvQuantity.setText("");
+                mImageLoader.clear(image);
+                return;
+            }
+            tvName.setText(item.name);
+            tvPrice.setText(PriceUtils.format(item.price));
+            tvQuantity.setText(mContext.getString(R.string.quantity_setting_text)
+                    + (item.quantity + mWriteQueue.getPendingDelta(item.id)));
+            mImageLoader.load(item.image != null ? Uri.parse(item.image) : null, image);
+        }
+    }
+}
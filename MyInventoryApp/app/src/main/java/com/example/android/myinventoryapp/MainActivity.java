@@ -1,32 +1,77 @@
 package com.example.android.myinventoryapp;
 
+import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.LoaderManager;
 import android.content.ContentResolver;
 import android.content.ContentUris;
-import android.content.ContentValues;
+import android.content.Context;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
+import android.widget.EditText;
 import android.widget.ImageView;
-import android.widget.ListView;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.android.myinventoryapp.DataFile.CatalogGenerator;
+import com.example.android.myinventoryapp.DataFile.ImageStore;
 import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+import com.example.android.myinventoryapp.DataFile.ItemContract.SummaryEntry;
+import com.example.android.myinventoryapp.DataFile.ItemCsv;
+import com.example.android.myinventoryapp.DataFile.ItemCsvImporter;
+import com.example.android.myinventoryapp.DataFile.ItemWriter;
+import com.example.android.myinventoryapp.DataFile.PriceUtils;
+import com.example.android.myinventoryapp.DataFile.QuantityWriteQueue;
+import com.example.android.myinventoryapp.DataFile.ReorderEngine;
+import com.example.android.myinventoryapp.DataFile.ScenarioRunner;
+import com.example.android.myinventoryapp.DataFile.StockLedger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
-    private static final int ITEM_LOADER = 0;
-    ItemCursorAdapter mCursorAdapter;
+    public static final String LOG_TAG = MainActivity.class.getSimpleName();
+    private static final int IMPORT_CSV_REQUEST = 1;
+    private static final int EXPORT_CSV_REQUEST = 2;
+    private static final int SUMMARY_LOADER = 0;
+    private static final String CSV_MIME_TYPE = "text/csv";
+    private static final String PURCHASE_ORDER_DIRECTORY = "purchase_orders";
+    private static final String SCENARIO_DIRECTORY = "scenarios";
+    private static final int DUMMY_ITEM_COUNT = 100;
+    private static final long SCENARIO_SEED = 1;
+    private static final int SCENARIO_THREADS = 4;
+    private static final int SCENARIO_OPERATIONS_PER_THREAD = 500;
+    // Imports, exports, purchase orders, dummy data and scenarios run one at a time, off the main thread.
+    private static final Executor sCsvExecutor = Executors.newSingleThreadExecutor();
+    ItemPagingAdapter mAdapter;
+    private View mEmptyView;
+    private TextView mSummaryText;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -40,86 +85,374 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
                 startActivity(intent);
             }
         });
-        mCursorAdapter = new ItemCursorAdapter(this, null);
-        ListView itemListView = (ListView) findViewById(R.id.list_view);
-        itemListView.setAdapter(mCursorAdapter);
-        getLoaderManager().initLoader(ITEM_LOADER, null, this);
-        View emptyView = findViewById(R.id.empty_view);
-        itemListView.setEmptyView(emptyView);
-        itemListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        mAdapter = new ItemPagingAdapter(this, new ItemPagingAdapter.OnItemClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+            public void onItemClick(long id) {
                 Intent editIntent = new Intent(MainActivity.this, EditorActivity.class);
                 Uri currentItemUri = ContentUris.withAppendedId(ItemEntry.CONTENT_URI, id);
                 editIntent.setData(currentItemUri);
                 startActivity(editIntent);
             }
         });
+        RecyclerView itemListView = (RecyclerView) findViewById(R.id.list_view);
+        itemListView.setLayoutManager(new LinearLayoutManager(this));
+        itemListView.addItemDecoration(new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
+        itemListView.setHasFixedSize(true);
+        itemListView.setAdapter(mAdapter);
+        mEmptyView = findViewById(R.id.empty_view);
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+        });
+        updateEmptyView();
+        EditText searchEditText = (EditText) findViewById(R.id.search_edit_text);
+        searchEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mAdapter.setSearchQuery(s.toString());
+            }
+        });
+        mSummaryText = (TextView) findViewById(R.id.summary_text);
+        getLoaderManager().initLoader(SUMMARY_LOADER, null, this);
+        StockLedger.compactIfDue(this);
+        ImageStore.getInstance(this).collectGarbageIfDue();
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
         String[] projection = {
-                ItemEntry._ID,
-                ItemEntry.COLUMN_ITEM_NAME,
-                ItemEntry.COLUMN_ITEM_PRICE,
-                ItemEntry.COLUMN_ITEM_QUANTITY};
-        return new CursorLoader(this, ItemEntry.CONTENT_URI, projection, null, null, null);
+                SummaryEntry.COLUMN_ITEM_COUNT,
+                SummaryEntry.COLUMN_TOTAL_UNITS,
+                SummaryEntry.COLUMN_TOTAL_VALUE,
+                SummaryEntry.COLUMN_LOW_STOCK_COUNT};
+        return new CursorLoader(this, SummaryEntry.CONTENT_URI, projection, null, null, null);
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        mCursorAdapter.swapCursor(data);
+    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+        if (cursor == null || !cursor.moveToFirst()) {
+            mSummaryText.setText("");
+            return;
+        }
+        mSummaryText.setText(getString(R.string.main_summary_text,
+                cursor.getInt(cursor.getColumnIndex(SummaryEntry.COLUMN_ITEM_COUNT)),
+                cursor.getLong(cursor.getColumnIndex(SummaryEntry.COLUMN_TOTAL_UNITS)),
+                PriceUtils.format(cursor.getLong(cursor.getColumnIndex(SummaryEntry.COLUMN_TOTAL_VALUE))),
+                cursor.getInt(cursor.getColumnIndex(SummaryEntry.COLUMN_LOW_STOCK_COUNT))));
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
-        mCursorAdapter.swapCursor(null);
+        mSummaryText.setText("");
+    }
+
+    private void updateEmptyView() {
+        mEmptyView.setVisibility(mAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        QuantityWriteQueue.getInstance(this).flush();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mAdapter.close();
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_main, menu);
+        // The document picker needs KitKat.
+        boolean documentsAvailable = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+        menu.findItem(R.id.action_import_csv).setVisible(documentsAvailable);
+        menu.findItem(R.id.action_export_csv).setVisible(documentsAvailable);
+        // The scenario changes the catalog for real, so it is for sizing runs on debug builds.
+        menu.findItem(R.id.action_run_scenario).setVisible(BuildConfig.DEBUG);
         return true;
     }
 
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
+            case R.id.action_low_stock_only:
+                item.setChecked(!item.isChecked());
+                mAdapter.setLowStockOnly(item.isChecked());
+                return true;
+            case R.id.action_create_purchase_orders:
+                createPurchaseOrders();
+                return true;
             case R.id.action_insert_data:
                 insertItems();
                 return true;
+            case R.id.action_run_scenario:
+                runScenario();
+                return true;
             case R.id.action_delete_all_entries:
                 showDeleteAllConfirmationDialog();
                 return true;
+            case R.id.action_import_csv:
+                Intent openCsv = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                openCsv.addCategory(Intent.CATEGORY_OPENABLE);
+                // Spreadsheet apps and file managers don't agree on a CSV mime type.
+                openCsv.setType("*/*");
+                openCsv.putExtra(Intent.EXTRA_MIME_TYPES,
+                        new String[]{CSV_MIME_TYPE, "text/comma-separated-values", "text/plain"});
+                startActivityForResult(openCsv, IMPORT_CSV_REQUEST);
+                return true;
+            case R.id.action_export_csv:
+                Intent createCsv = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+                createCsv.addCategory(Intent.CATEGORY_OPENABLE);
+                createCsv.setType(CSV_MIME_TYPE);
+                createCsv.putExtra(Intent.EXTRA_TITLE, getString(R.string.export_csv_file_name));
+                startActivityForResult(createCsv, EXPORT_CSV_REQUEST);
+                return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
-    private void insertItems() {
-        Log.v("MainActivity", "insertItems");
-        insertItem("Laptop Hp", "45,000", 1, R.drawable.laptop_image, "mail@example.com", "raj");
-    }
-
-    private void insertItem(String name, String price, int quantity, int imageId, String email, String supplier) {
-        ContentValues values = new ContentValues();
-        values.put(ItemEntry.COLUMN_ITEM_NAME, name);
-        values.put(ItemEntry.COLUMN_ITEM_QUANTITY, quantity);
-        values.put(ItemEntry.COLUMN_ITEM_PRICE, price);
-        Uri imageUri = Uri.parse(ContentResolver.SCHEME_ANDROID_RESOURCE +
-                "://" + getResources().getResourcePackageName(imageId)
-                + '/' + getResources().getResourceTypeName(imageId) + '/' + getResources().getResourceEntryName(imageId));
-        values.put(ItemEntry.COLUMN_ITEM_IMAGE, imageUri.toString());
-        values.put(ItemEntry.COLUMN_SUPPLIER_EMAIL, email);
-        values.put(ItemEntry.COLUMN_ITEM_SUPPLIER, supplier);
-        Uri newUri = getContentResolver().insert(ItemEntry.CONTENT_URI, values);
-        if (newUri == null) {
-            Toast.makeText(this, getString(R.string.editor_insert_item_failed),
-                    Toast.LENGTH_SHORT).show();
-        } else {
-            Toast.makeText(this, getString(R.string.editor_insert_item_successful),
-                    Toast.LENGTH_SHORT).show();
+    @Override
+    public void onActivityResult(int requestCode, int resultCode, Intent resultData) {
+        if (resultCode != Activity.RESULT_OK || resultData == null || resultData.getData() == null)
+            return;
+        if (requestCode == IMPORT_CSV_REQUEST)
+            importCsv(resultData.getData());
+        else if (requestCode == EXPORT_CSV_REQUEST)
+            exportCsv(resultData.getData());
+    }
+
+    private void importCsv(final Uri uri) {
+        final Context context = getApplicationContext();
+        Toast.makeText(context, R.string.import_csv_started, Toast.LENGTH_SHORT).show();
+        sCsvExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String message;
+                try {
+                    Reader reader = new InputStreamReader(context.getContentResolver().openInputStream(uri), "UTF-8");
+                    try {
+                        ItemCsvImporter.Result result = new ItemCsvImporter(context).importFrom(reader,
+                                new ItemCsvImporter.Listener() {
+                                    @Override
+                                    public void onProgress(int rowsRead, int rowsImported) {
+                                        Log.v(LOG_TAG, "Imported " + rowsImported + " of " + rowsRead + " rows");
+                                    }
+
+                                    @Override
+                                    public void onRowError(int lineNumber, String message) {
+                                        Log.w(LOG_TAG, "Skipped line " + lineNumber + " of " + uri + ": " + message);
+                                    }
+                                });
+                        message = context.getString(R.string.import_csv_finished, result.rowsImported,
+                                result.getRowsSkipped());
+                    } finally {
+                        reader.close();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Log.e(LOG_TAG, "Failed to import " + uri, e);
+                    message = context.getString(R.string.import_csv_failed);
+                }
+                showToast(context, message);
+            }
+        });
+    }
+
+    private void exportCsv(final Uri uri) {
+        final Context context = getApplicationContext();
+        sCsvExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String message;
+                try {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(
+                            context.getContentResolver().openOutputStream(uri), "UTF-8"));
+                    try {
+                        int rows = ItemCsv.export(context.getContentResolver(), writer);
+                        message = context.getString(R.string.export_csv_finished, rows);
+                    } finally {
+                        writer.close();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Log.e(LOG_TAG, "Failed to export to " + uri, e);
+                    message = context.getString(R.string.export_csv_failed);
+                }
+                showToast(context, message);
+            }
+        });
+    }
+
+    /**
+     * Writes one draft per supplier of low-stock items to the app's external files, replacing
+     * the drafts of the last run. The drafts are written to a directory next to it and swapped in
+     * only once all of them are written, so a failed run leaves the last drafts in place.
+     */
+    private void createPurchaseOrders() {
+        final Context context = getApplicationContext();
+        sCsvExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File directory = context.getExternalFilesDir(PURCHASE_ORDER_DIRECTORY);
+                File newDrafts = null;
+                String message;
+                try {
+                    if (directory == null)
+                        throw new IOException("External storage not available");
+                    newDrafts = new File(directory.getParentFile(), PURCHASE_ORDER_DIRECTORY + ".new");
+                    // Left over if the app died during an earlier run.
+                    deleteDirectory(newDrafts);
+                    if (!newDrafts.mkdir())
+                        throw new IOException("Couldn't create " + newDrafts);
+                    final File draftDirectory = newDrafts;
+                    int orders = ReorderEngine.generate(context.getContentResolver(), new ReorderEngine.Listener() {
+                        private int mNumber;
+
+                        @Override
+                        public void onPurchaseOrder(ReorderEngine.PurchaseOrder order) throws IOException {
+                            String fileName = ++mNumber + "-" + order.supplier.replaceAll("[^A-Za-z0-9]+", "_") + ".txt";
+                            Writer writer = new OutputStreamWriter(new FileOutputStream(new File(draftDirectory, fileName)), "UTF-8");
+                            try {
+                                writer.write("To: " + order.email + "\n");
+                                writer.write("Subject: " + order.getSubject() + "\n\n");
+                                writer.write(order.getBody());
+                            } finally {
+                                writer.close();
+                            }
+                        }
+                    });
+                    replaceDirectory(directory, newDrafts);
+                    message = orders == 0 ? context.getString(R.string.purchase_orders_none)
+                            : context.getString(R.string.purchase_orders_created, orders, directory.getPath());
+                } catch (IOException | RuntimeException e) {
+                    Log.e(LOG_TAG, "Failed to create purchase orders", e);
+                    message = context.getString(R.string.purchase_orders_failed);
+                } finally {
+                    // Gone after a successful swap.
+                    if (newDrafts != null)
+                        deleteDirectory(newDrafts);
+                }
+                showToast(context, message);
+            }
+        });
+    }
+
+    /**
+     * Moves the replacement into the directory's place, through a rename of each, and deletes
+     * the old contents. If the second rename fails, the old directory is put back.
+     */
+    private static void replaceDirectory(File directory, File replacement) throws IOException {
+        File old = new File(directory.getParentFile(), directory.getName() + ".old");
+        deleteDirectory(old);
+        if (!directory.renameTo(old))
+            throw new IOException("Couldn't move " + directory + " aside");
+        if (!replacement.renameTo(directory)) {
+            old.renameTo(directory);
+            throw new IOException("Couldn't move " + replacement + " to " + directory);
+        }
+        deleteDirectory(old);
+    }
+
+    /**
+     * Deletes the directory and the files in it, if it exists.
+     */
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
         }
+        directory.delete();
+    }
+
+    private static void showToast(final Context context, final String message) {
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    /**
+     * Adds {@link #DUMMY_ITEM_COUNT} generated items, all showing the laptop picture.
+     */
+    private void insertItems() {
+        final Context context = getApplicationContext();
+        int imageId = R.drawable.laptop_image;
+        final String image = ContentResolver.SCHEME_ANDROID_RESOURCE + "://"
+                + getResources().getResourcePackageName(imageId) + '/'
+                + getResources().getResourceTypeName(imageId) + '/' + getResources().getResourceEntryName(imageId);
+        sCsvExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String message;
+                try {
+                    int inserted = new CatalogGenerator(System.currentTimeMillis(), image)
+                            .generate(context.getContentResolver(), DUMMY_ITEM_COUNT);
+                    message = context.getString(R.string.insert_data_finished, inserted);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Failed to insert dummy data", e);
+                    message = context.getString(R.string.insert_data_failed);
+                }
+                showToast(context, message);
+            }
+        });
+    }
+
+    /**
+     * Replays a fixed mix of sales, deliveries, searches, browsing and edits against the catalog
+     * and writes the latencies to the app's external files and the log.
+     */
+    private void runScenario() {
+        final Context context = getApplicationContext();
+        Toast.makeText(context, R.string.scenario_started, Toast.LENGTH_SHORT).show();
+        sCsvExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String message;
+                try {
+                    File directory = context.getExternalFilesDir(SCENARIO_DIRECTORY);
+                    if (directory == null)
+                        throw new IOException("External storage not available");
+                    ScenarioRunner.Report report = new ScenarioRunner(context.getContentResolver(), SCENARIO_SEED,
+                            SCENARIO_THREADS, SCENARIO_OPERATIONS_PER_THREAD).run();
+                    Log.i(LOG_TAG, "Scenario finished:\n" + report);
+                    File file = new File(directory, "scenario-" + System.currentTimeMillis() + ".txt");
+                    Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+                    try {
+                        writer.write(report.toString());
+                    } finally {
+                        writer.close();
+                    }
+                    message = context.getString(R.string.scenario_finished, file.getPath());
+                } catch (IOException | InterruptedException | RuntimeException e) {
+                    Log.e(LOG_TAG, "Failed to run the scenario", e);
+                    message = context.getString(R.string.scenario_failed);
+                }
+                showToast(context, message);
+            }
+        });
     }
 
     private void showDeleteAllConfirmationDialog() {
@@ -127,8 +460,18 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
         builder.setMessage(R.string.delete_all_dialog_msg);
         builder.setPositiveButton(R.string.delete, new DialogInterface.OnClickListener() {
             public void onClick(DialogInterface dialog, int id) {
-                int rowsDeleted = getContentResolver().delete(ItemEntry.CONTENT_URI, null, null);
-                Log.v("MainActivity", rowsDeleted + " rows deleted from items database");
+                final Context context = getApplicationContext();
+                ItemWriter.getInstance(context).delete(ItemEntry.CONTENT_URI, new ItemWriter.Callback() {
+                    @Override
+                    public void onWriteFinished(Uri uri, int rows) {
+                        Log.v(LOG_TAG, rows + " rows deleted from items database");
+                    }
+
+                    @Override
+                    public void onWriteFailed(Uri uri, RuntimeException e) {
+                        Toast.makeText(context, R.string.delete_all_failed, Toast.LENGTH_SHORT).show();
+                    }
+                });
             }
         });
         builder.setNegativeButton(R.string.cancel, new DialogInterface.OnClickListener() {
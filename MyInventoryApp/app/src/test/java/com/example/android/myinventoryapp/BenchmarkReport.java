@@ -0,0 +1,65 @@
+package com.example.android.myinventoryapp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Collects benchmark results and writes them as JSON, keyed by catalog size and metric, e.g.
+ * {@code 100000.insert_us}. Every metric is a cost, lower is better. Comparing two runs is up to
+ * the reader; results from different machines are not comparable.
+ */
+class BenchmarkReport {
+
+    private static class Result {
+        final int catalogSize;
+        final String metric;
+        final double value;
+
+        Result(int catalogSize, String metric, double value) {
+            this.catalogSize = catalogSize;
+            this.metric = metric;
+            this.value = value;
+        }
+    }
+
+    private final String mName;
+    private final List<Result> mResults = new ArrayList<>();
+
+    BenchmarkReport(String name) {
+        mName = name;
+    }
+
+    void add(int catalogSize, String metric, double value) {
+        mResults.add(new Result(catalogSize, metric, value));
+    }
+
+    /**
+     * Writes {@code <name>.json} into the {@code benchmark.reportDir} directory.
+     */
+    File write() throws IOException {
+        File dir = new File(System.getProperty("benchmark.reportDir", "build/reports/benchmarks"));
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Cannot create " + dir);
+        File file = new File(dir, mName + ".json");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write("{\n  \"benchmark\": \"" + mName + "\",\n  \"results\": [");
+            for (int i = 0; i < mResults.size(); i++) {
+                Result result = mResults.get(i);
+                writer.write(String.format(Locale.US, "%s\n    {\"catalog_size\": %d, \"metric\": \"%s\","
+                                + " \"value\": %.1f}",
+                        i == 0 ? "" : ",", result.catalogSize, result.metric, result.value));
+            }
+            writer.write("\n  ]\n}\n");
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.android.myinventoryapp;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.widget.FrameLayout;
+
+import com.example.android.myinventoryapp.DataFile.ItemContract;
+import com.example.android.myinventoryapp.DataFile.ItemContract.ItemEntry;
+import com.example.android.myinventoryapp.DataFile.ItemPager;
+import com.example.android.myinventoryapp.DataFile.ItemProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Throughput and latency of the {@link ItemProvider} and {@link ItemPagingAdapter} hot paths on
+ * the JVM, against Robolectric's SQLite. The catalog grows through the sizes given in the
+ * {@code benchmark.catalogs} system property (1k items by default, e.g. 1000,100000,1000000 for
+ * a full run) and every metric is measured at each size. Results go to {@link BenchmarkReport}
+ * for comparing runs; no result fails the test, as there are no baselines to hold them to.
+ * Gradle only runs it with {@code -PrunBenchmarks}.
+ * <p>
+ * Times are in microseconds per operation, except for the full list in milliseconds per query.
+ * The synthetic catalog and every random choice are seeded, so runs are comparable.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class InventoryBenchmark {
+
+    private static final String DEFAULT_CATALOG_SIZES = "1000";
+    private static final int BULK_INSERT_CHUNK = 10000;
+    private static final int SUPPLIER_COUNT = 50;
+    private static final int WRITE_OPERATIONS = 1000;
+    private static final int ITEM_QUERIES = 1000;
+    private static final int PAGE_QUERIES = 200;
+    private static final int FULL_LIST_RUNS = 3;
+    private static final int BINDS = 10000;
+    private static final long LOAD_TIMEOUT_MS = 60000;
+    private static final String[] LIST_PROJECTION = {
+            ItemEntry._ID,
+            ItemEntry.COLUMN_ITEM_NAME,
+            ItemEntry.COLUMN_ITEM_PRICE,
+            ItemEntry.COLUMN_ITEM_QUANTITY,
+            ItemEntry.COLUMN_ITEM_IMAGE};
+
+    private final Random mRandom = new Random(42);
+    private ItemProvider mProvider;
+    private int mItemCount;
+    private long[] mItemIds;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(ItemProvider.class, ItemContract.CONTENT_AUTHORITY);
+    }
+
+    @Test
+    public void benchmarkGrowingCatalog() throws Exception {
+        BenchmarkReport report = new BenchmarkReport(getClass().getSimpleName());
+        for (String size : System.getProperty("benchmark.catalogs", DEFAULT_CATALOG_SIZES).split(",")) {
+            int catalogSize = Integer.parseInt(size.trim());
+            report.add(catalogSize, "bulk_insert_us", growCatalog(catalogSize));
+            report.add(catalogSize, "insert_us", insertItems());
+            report.add(catalogSize, "update_us", updateItems());
+            long[] itemLatencies = queryItems();
+            report.add(catalogSize, "query_item_us", mean(itemLatencies));
+            report.add(catalogSize, "query_item_p99_us", itemLatencies[itemLatencies.length * 99 / 100]);
+            report.add(catalogSize, "query_page_us", queryPages());
+            report.add(catalogSize, "query_full_list_ms", queryFullList());
+            report.add(catalogSize, "bind_us", bindRows());
+        }
+        report.write();
+    }
+
+    /**
+     * Bulk inserts items until the catalog has {@code catalogSize} of them.
+     *
+     * @return microseconds per inserted item
+     */
+    private double growCatalog(int catalogSize) {
+        long nanos = 0;
+        int added = 0;
+        while (mItemCount < catalogSize) {
+            ContentValues[] chunk = new ContentValues[Math.min(BULK_INSERT_CHUNK, catalogSize - mItemCount)];
+            for (int i = 0; i < chunk.length; i++)
+                chunk[i] = item(mItemCount + i);
+            long start = System.nanoTime();
+            added += mProvider.bulkInsert(ItemEntry.CONTENT_URI, chunk);
+            nanos += System.nanoTime() - start;
+            mItemCount += chunk.length;
+        }
+        readItemIds();
+        return added == 0 ? 0 : nanos / 1000.0 / added;
+    }
+
+    private void readItemIds() {
+        Cursor cursor = mProvider.query(ItemEntry.CONTENT_URI, new String[]{ItemEntry._ID}, null, null, null);
+        try {
+            mItemIds = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++)
+                mItemIds[i] = cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Inserts items one at a time, then deletes them again so the catalog keeps its size.
+     *
+     * @return microseconds per insert
+     */
+    private double insertItems() {
+        long nanos = 0;
+        long firstId = -1;
+        for (int i = 0; i < WRITE_OPERATIONS; i++) {
+            ContentValues values = item(mItemCount + i);
+            long start = System.nanoTime();
+            Uri uri = mProvider.insert(ItemEntry.CONTENT_URI, values);
+            nanos += System.nanoTime() - start;
+            if (firstId == -1)
+                firstId = ContentUris.parseId(uri);
+        }
+        mProvider.delete(ItemEntry.CONTENT_URI, ItemEntry._ID + " >= ?", new String[]{String.valueOf(firstId)});
+        return nanos / 1000.0 / WRITE_OPERATIONS;
+    }
+
+    /**
+     * Changes the quantity and price of random items, one update each.
+     *
+     * @return microseconds per update
+     */
+    private double updateItems() {
+        long nanos = 0;
+        ContentValues values = new ContentValues();
+        for (int i = 0; i < WRITE_OPERATIONS; i++) {
+            values.put(ItemEntry.COLUMN_ITEM_QUANTITY, mRandom.nextInt(100));
+            values.put(ItemEntry.COLUMN_ITEM_PRICE, mRandom.nextInt(100000));
+            Uri uri = ContentUris.withAppendedId(ItemEntry.CONTENT_URI, randomItemId());
+            long start = System.nanoTime();
+            mProvider.update(uri, values, null, null);
+            nanos += System.nanoTime() - start;
+        }
+        return nanos / 1000.0 / WRITE_OPERATIONS;
+    }
+
+    /**
+     * Reads random single items the way the editor does, row cache included.
+     *
+     * @return the sorted latencies in microseconds
+     */
+    private long[] queryItems() {
+        long[] latencies = new long[ITEM_QUERIES];
+        for (int i = 0; i < ITEM_QUERIES; i++) {
+            Uri uri = ContentUris.withAppendedId(ItemEntry.CONTENT_URI, randomItemId());
+            long start = System.nanoTime();
+            Cursor cursor = mProvider.query(uri, LIST_PROJECTION, null, null, null);
+            try {
+                cursor.moveToFirst();
+            } finally {
+                cursor.close();
+            }
+            latencies[i] = (System.nanoTime() - start) / 1000;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * Reads pages of the list the way {@link ItemPager} does, from random points of the catalog.
+     *
+     * @return microseconds per page
+     */
+    private double queryPages() {
+        long nanos = 0;
+        for (int i = 0; i < PAGE_QUERIES; i++) {
+            Uri uri = ItemEntry.buildPageUri(name(mRandom.nextInt(mItemCount)), 0, ItemPager.PAGE_SIZE);
+            long start = System.nanoTime();
+            readAll(mProvider.query(uri, LIST_PROJECTION, null, null, null));
+            nanos += System.nanoTime() - start;
+        }
+        return nanos / 1000.0 / PAGE_QUERIES;
+    }
+
+    /**
+     * Reads every item in name order, as the list did before it was paged.
+     *
+     * @return the median milliseconds per query
+     */
+    private double queryFullList() {
+        long[] latencies = new long[FULL_LIST_RUNS];
+        for (int i = 0; i < FULL_LIST_RUNS; i++) {
+            long start = System.nanoTime();
+            readAll(mProvider.query(ItemEntry.CONTENT_URI, LIST_PROJECTION, null, null,
+                    ItemEntry.COLUMN_ITEM_NAME));
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies[FULL_LIST_RUNS / 2] / 1000000.0;
+    }
+
+    /**
+     * Binds rows of the loaded first page over and over, the cost paid per row while scrolling.
+     *
+     * @return microseconds per bind
+     */
+    private double bindRows() throws InterruptedException {
+        ItemPagingAdapter adapter = new ItemPagingAdapter(RuntimeEnvironment.application,
+                new ItemPagingAdapter.OnItemClickListener() {
+                    @Override
+                    public void onItemClick(long id) {
+                    }
+                });
+        try {
+            ItemPagingAdapter.ViewHolder holder =
+                    adapter.onCreateViewHolder(new FrameLayout(RuntimeEnvironment.application), 0);
+            // The count and the first page load in the background; binding asks for the page.
+            long deadline = System.currentTimeMillis() + LOAD_TIMEOUT_MS;
+            while (holder.tvName.getText().length() == 0) {
+                if (System.currentTimeMillis() > deadline)
+                    fail("First page not loaded within " + LOAD_TIMEOUT_MS + " ms");
+                Thread.sleep(10);
+                ShadowLooper.idleMainLooper();
+                if (adapter.getItemCount() > 0)
+                    adapter.onBindViewHolder(holder, 0);
+            }
+            int positions = Math.min(ItemPager.PAGE_SIZE, adapter.getItemCount());
+            long start = System.nanoTime();
+            for (int i = 0; i < BINDS; i++)
+                adapter.onBindViewHolder(holder, i % positions);
+            return (System.nanoTime() - start) / 1000.0 / BINDS;
+        } finally {
+            adapter.close();
+        }
+    }
+
+    private static void readAll(Cursor cursor) {
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getLong(0);
+                cursor.getString(1);
+                cursor.getLong(2);
+                cursor.getInt(3);
+                cursor.getString(4);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long randomItemId() {
+        return mItemIds[mRandom.nextInt(mItemIds.length)];
+    }
+
+    private static ContentValues item(int index) {
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_ITEM_NAME, name(index));
+        values.put(ItemEntry.COLUMN_ITEM_PRICE, (index * 7919L) % 100000);
+        values.put(ItemEntry.COLUMN_ITEM_QUANTITY, index % 50);
+        values.put(ItemEntry.COLUMN_ITEM_IMAGE, "");
+        values.put(ItemEntry.COLUMN_ITEM_SUPPLIER, "Supplier " + index % SUPPLIER_COUNT);
+        values.put(ItemEntry.COLUMN_SUPPLIER_EMAIL, "supplier" + index % SUPPLIER_COUNT + "@example.com");
+        return values;
+    }
+
+    private static String name(int index) {
+        return String.format(Locale.US, "Item %07d", index);
+    }
+
+    private static double mean(long[] values) {
+        long sum = 0;
+        for (long value : values)
+            sum += value;
+        return (double) sum / values.length;
+    }
+}